@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按延迟自适应的并发上限
+ * <p>
+ * 加性增、乘性减：平滑后的延迟不超过目标且上限被用到一半以上时，上限每次增加 1/上限，
+ * 约一个上限的请求之后增加 1；延迟超过目标或请求失败时上限乘以 {@link #BACKOFF}。
+ * 获取许可只有一次 CAS，不排队，超过上限立即失败
+ *
+ * @author Leavey
+ */
+public class AdaptiveLimiter {
+    /**
+     * 每次收缩保留的比例
+     */
+    private static final double BACKOFF = 0.9;
+    /**
+     * 延迟平滑时新样本的权重
+     */
+    private static final double SMOOTHING = 0.1;
+    /**
+     * 拥塞后多久之内认为仍然拥塞，之后没有新的请求也会恢复
+     */
+    private static final long CONGESTION_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    /**
+     * 平滑后的延迟，只在锁内修改
+     */
+    private double latency;
+    /**
+     * 拥塞状态的结束时间，不早于当前时间时处于拥塞状态
+     */
+    private volatile long congestedUntil = System.nanoTime();
+
+    /**
+     * @param initialLimit 初始上限
+     * @param minLimit     最小上限
+     * @param maxLimit     最大上限
+     * @param targetNanos  目标延迟
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long targetNanos) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("并发上限需要满足 1 <= 最小上限 <= 初始上限 <= 最大上限");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = targetNanos;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * 尝试获取许可，成功后必须调用一次 {@link #release(long, boolean)} 或 {@link #drop()}
+     *
+     * @return 未超过上限时返回 true
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求完成，释放许可并按延迟调整上限
+     *
+     * @param nanos   请求的耗时
+     * @param success 请求是否成功，超时或下游过载等失败时收缩上限
+     */
+    public void release(long nanos, boolean success) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            latency = latency == 0 ? nanos : latency + (nanos - latency) * SMOOTHING;
+            if (!success || latency > targetNanos) {
+                congestedUntil = System.nanoTime() + CONGESTION_NANOS;
+                limit = Math.max(minLimit, limit * BACKOFF);
+            } else {
+                congestedUntil = System.nanoTime();
+                if (current * 2 >= limit) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放许可，不参与调整上限，用于耗时与负载无关的请求
+     */
+    public void drop() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @param threshold 占用比例
+     * @return 最近的请求没有超过目标延迟，且正在执行的请求低于上限的该比例
+     */
+    public boolean hasHeadroom(double threshold) {
+        return System.nanoTime() - congestedUntil >= 0 && inFlight.get() < limit * threshold;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
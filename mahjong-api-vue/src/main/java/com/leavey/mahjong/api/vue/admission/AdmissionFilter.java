@@ -0,0 +1,222 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 准入控制
+ * <p>
+ * 每类请求有独立的 {@link AdaptiveLimiter}，超过上限时立即返回 429。玩家的操作优先：
+ * 操作的并发接近上限或延迟超过目标时，创建牌局和牌效分析直接返回 503，把资源留给已经在牌局中的玩家。
+ * 异步请求在结果写出后才释放许可，批量分析的耗时与手牌数量有关，只占用许可，不参与调整上限。
+ * 订阅等其他请求不限流
+ *
+ * @author Leavey
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final boolean enabled;
+    private final double shedThreshold;
+    private final Map<Workload, AdaptiveLimiter> limiters = new EnumMap<>(Workload.class);
+    private final Map<Workload, Counter> limited = new EnumMap<>(Workload.class);
+    private final Map<Workload, Counter> shed = new EnumMap<>(Workload.class);
+
+    /**
+     * @param enabled       是否开启
+     * @param shedThreshold 玩家操作的并发超过上限的该比例时拒绝低优先级的请求
+     */
+    public AdmissionFilter(Environment environment, MeterRegistry registry,
+                           @Value("${mahjong.admission.enabled:true}") boolean enabled,
+                           @Value("${mahjong.admission.shed-threshold:0.8}") double shedThreshold) {
+        this.enabled = enabled;
+        this.shedThreshold = shedThreshold;
+        for (Workload workload : Workload.values()) {
+            String prefix = "mahjong.admission." + workload.key() + ".";
+            AdaptiveLimiter limiter = new AdaptiveLimiter(
+                    environment.getProperty(prefix + "initial-limit", Integer.class, workload.getInitialLimit()),
+                    environment.getProperty(prefix + "min-limit", Integer.class, workload.getMinLimit()),
+                    environment.getProperty(prefix + "max-limit", Integer.class, workload.getMaxLimit()),
+                    TimeUnit.MILLISECONDS.toNanos(environment.getProperty(prefix + "target-millis", Long.class, workload.getTargetMillis())));
+            limiters.put(workload, limiter);
+            Gauge.builder("mahjong.admission.limit", limiter, AdaptiveLimiter::getLimit)
+                    .description("当前的并发上限")
+                    .tag("workload", workload.key())
+                    .register(registry);
+            Gauge.builder("mahjong.admission.in-flight", limiter, AdaptiveLimiter::getInFlight)
+                    .description("正在执行的请求")
+                    .tag("workload", workload.key())
+                    .register(registry);
+            limited.put(workload, rejected(registry, workload, "limit"));
+            shed.put(workload, rejected(registry, workload, "shed"));
+        }
+    }
+
+    private static Counter rejected(MeterRegistry registry, Workload workload, String reason) {
+        return Counter.builder("mahjong.admission.rejected")
+                .description("被拒绝的请求")
+                .tag("workload", workload.key())
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || classify(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        Workload workload = classify(request);
+        if (workload != Workload.MOVE && !limiters.get(Workload.MOVE).hasHeadroom(shedThreshold)) {
+            shed.get(workload).increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE);
+            return;
+        }
+        AdaptiveLimiter limiter = limiters.get(workload);
+        if (!limiter.tryAcquire()) {
+            limited.get(workload).increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS);
+            return;
+        }
+        boolean sampled = !isBatch(request);
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new Release(limiter, start, sampled));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release(limiter, start, sampled, !isOverloaded(response));
+            }
+        }
+    }
+
+    private static void release(AdaptiveLimiter limiter, long start, boolean sampled, boolean success) {
+        if (sampled) {
+            limiter.release(System.nanoTime() - start, success);
+        } else {
+            limiter.drop();
+        }
+    }
+
+    /**
+     * 下游返回 503 说明已经过载，其他错误与负载无关，只按延迟调整上限
+     */
+    private static boolean isOverloaded(HttpServletResponse response) {
+        return response.getStatus() == HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status) {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+    }
+
+    /**
+     * @return 请求的类别，不限流时返回 null
+     */
+    private static Workload classify(HttpServletRequest request) {
+        String path = request.getServletPath();
+        String method = request.getMethod();
+        if ("/games".equals(path)) {
+            if ("PUT".equals(method)) {
+                return Workload.MOVE;
+            }
+            if ("POST".equals(method)) {
+                return Workload.CREATE;
+            }
+            return null;
+        }
+        if (isBatch(request) || "GET".equals(method) && path.startsWith("/games/") && path.endsWith("/analysis")) {
+            return Workload.ANALYSIS;
+        }
+        return null;
+    }
+
+    private static boolean isBatch(HttpServletRequest request) {
+        return "POST".equals(request.getMethod()) && "/analysis/batch".equals(request.getServletPath());
+    }
+
+    /**
+     * 异步请求完成后释放许可
+     */
+    private static final class Release implements AsyncListener {
+        private final AdaptiveLimiter limiter;
+        private final long start;
+        private final boolean sampled;
+        private boolean released;
+
+        Release(AdaptiveLimiter limiter, long start, boolean sampled) {
+            this.limiter = limiter;
+            this.start = start;
+            this.sampled = sampled;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(!isOverloaded((HttpServletResponse) event.getSuppliedResponse()));
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(false);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(false);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        /**
+         * 超时或出错之后还会收到完成通知，只释放一次
+         */
+        private synchronized void release(boolean success) {
+            if (!released) {
+                released = true;
+                AdmissionFilter.release(limiter, start, sampled, success);
+            }
+        }
+    }
+}
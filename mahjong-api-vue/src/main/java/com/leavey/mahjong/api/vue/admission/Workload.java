@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.admission;
+
+/**
+ * 需要限流的请求类别，按优先级从高到低排列
+ *
+ * @author Leavey
+ */
+public enum Workload {
+    /**
+     * 已经在牌局中的玩家的操作，优先保证
+     */
+    MOVE(64, 8, 1024, 200),
+    /**
+     * 创建牌局
+     */
+    CREATE(16, 2, 256, 200),
+    /**
+     * 牌效分析，过载时最先被拒绝
+     */
+    ANALYSIS(8, 1, 64, 2000);
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetMillis;
+
+    Workload(int initialLimit, int minLimit, int maxLimit, long targetMillis) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetMillis = targetMillis;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return 默认的目标延迟，平滑后的延迟超过时收缩并发上限
+     */
+    public long getTargetMillis() {
+        return targetMillis;
+    }
+
+    /**
+     * @return 配置项的名称
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+}
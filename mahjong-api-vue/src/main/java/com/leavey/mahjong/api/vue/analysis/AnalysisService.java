@@ -0,0 +1,377 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.analysis;
+
+import com.leavey.mahjong.api.vue.metrics.MicrometerGameMetrics;
+import com.leavey.mahjong.api.vue.vo.AnalysisVo;
+import com.leavey.mahjong.api.vue.vo.DiscardVo;
+import com.leavey.mahjong.api.vue.vo.EfficiencyVo;
+import com.leavey.mahjong.api.vue.vo.TileVo;
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.efficiency.util.EfficiencyUtils;
+import com.leavey.mahjong.engine.analysis.HandSymmetry;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Player;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 牌效分析服务
+ * <p>
+ * 分析在有界线程池中执行，队列满时拒绝请求。每局牌的每个座位缓存最新版本的结果，
+ * 同一个版本的并发请求共享同一次计算，牌局变化后旧版本的结果被新版本替换，
+ * 座位数量超过容量时最近最少使用的座位先淘汰，结束后不再查询的牌局因此不会一直占用内存。
+ * <p>
+ * 每手牌的分析结果另外按 {@link HandSymmetry} 的规范形式缓存，花色互换或正反翻转后相同的手牌共用一个结果，
+ * 命中后把结果中的牌还原到原手牌的花色和方向
+ *
+ * @author Leavey
+ */
+@Component
+public class AnalysisService implements DisposableBean {
+    private final ThreadPoolExecutor executor;
+    /**
+     * 每个座位最新版本的结果，最近最少使用的先淘汰
+     */
+    private final Map<SeatKey, Entry> cache;
+    private final MicrometerGameMetrics metrics;
+    /**
+     * 按规范形式缓存的分析结果，最近最少使用的先淘汰，容量为 0 时不缓存
+     */
+    private final Map<HandKey, EfficiencyVo> hands;
+
+    public AnalysisService(MicrometerGameMetrics metrics,
+                           @Value("${mahjong.analysis.threads:0}") int threads,
+                           @Value("${mahjong.analysis.queue-capacity:64}") int queueCapacity,
+                           @Value("${mahjong.analysis.hand-cache-size:4096}") int handCacheSize,
+                           @Value("${mahjong.analysis.seat-cache-size:4096}") int seatCacheSize) {
+        this.metrics = metrics;
+        //compute 在锁内只比较版本、创建条目，计算在线程池中进行
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SeatKey, Entry> eldest) {
+                return size() > Math.max(seatCacheSize, 1);
+            }
+        });
+        this.hands = handCacheSize > 0 ? Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<HandKey, EfficiencyVo> eldest) {
+                return size() > handCacheSize;
+            }
+        }) : null;
+        int amount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(amount, amount, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "mahjong-analysis-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 分析座位在牌局当前状态下的牌效
+     *
+     * @param gameId 牌局id
+     * @param seat   座位
+     * @return 分析结果
+     */
+    public CompletableFuture<AnalysisVo> analyze(long gameId, int seat) {
+        Game game = GameFactory.get(gameId);
+        if (seat < 0 || seat >= game.getPlayerAmount()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "座位不存在：" + seat);
+        }
+        if (!game.getPlayers()[seat].isHandKnown()) {
+            //客户端请求与牌局状态冲突，不是服务端错误
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "手牌中有未知的暗牌，无法分析");
+        }
+        SeatKey key = new SeatKey(gameId, seat);
+        long version = game.getVersion();
+        Entry entry = cache.compute(key, (k, old) -> old != null && old.version >= version ? old : new Entry(version));
+        if (entry.version != version) {
+            //缓存中已经是更新的版本，客户端的状态过旧，单独计算，不缓存
+            return submit(game, seat);
+        }
+        if (entry.claim()) {
+            submit(game, seat).whenComplete((result, e) -> {
+                if (e != null) {
+                    //失败的结果不缓存，之后的请求重新计算
+                    cache.remove(key, entry);
+                    entry.future.completeExceptionally(e);
+                } else {
+                    entry.future.complete(result);
+                }
+            });
+        }
+        return entry.future;
+    }
+
+    /**
+     * 提交计算，线程池已满时返回失败的结果
+     */
+    private CompletableFuture<AnalysisVo> submit(Game game, int seat) {
+        try {
+            return CompletableFuture.supplyAsync(() -> analyze(game, seat), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "分析任务过多，请稍后再试"));
+        }
+    }
+
+    private AnalysisVo analyze(Game game, int seat) {
+        Player player = game.getPlayers()[seat];
+        int[] counts = new int[Matrix.CODE_BOUND];
+        player.countHand(counts);
+        AnalysisVo vo = new AnalysisVo();
+        vo.setGameId(game.getId());
+        vo.setVersion(game.getVersion());
+        vo.setSeat(seat);
+        analyze(counts, game.getRule(), vo);
+        return vo;
+    }
+
+    /**
+     * 分析一手牌的牌效，结果写入 vo
+     *
+     * @param counts 手牌，下标为牌的编码
+     * @param rule   规则，决定哪些牌可以做将
+     * @param vo     分析结果
+     */
+    public void analyze(int[] counts, Rule rule, EfficiencyVo vo) {
+        if (hands == null) {
+            compute(counts, rule, vo);
+            return;
+        }
+        RuleTemplate template = RuleTemplate.of(rule);
+        HandSymmetry.Canonical canonical = HandSymmetry.of(template).canonicalize(counts);
+        HandKey key = new HandKey(template, canonical.getKey());
+        EfficiencyVo cached = hands.get(key);
+        metrics.recordAnalysisCache(cached != null);
+        if (cached == null) {
+            //并发请求同一手牌时可能重复计算，结果相同，后放入的覆盖先放入的
+            cached = new EfficiencyVo();
+            compute(canonical.getCounts(), rule, cached);
+            hands.put(key, cached);
+        }
+        restore(cached, canonical, vo);
+    }
+
+    private void compute(int[] counts, Rule rule, EfficiencyVo vo) {
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        int size = efficiency(counts, rule, vo);
+        if (timed) {
+            metrics.recordAnalysis(size, vo.getStep(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 把规范形式的分析结果还原到原手牌，排序与直接分析原手牌的结果一致
+     */
+    private static void restore(EfficiencyVo cached, HandSymmetry.Canonical canonical, EfficiencyVo vo) {
+        vo.setStep(cached.getStep());
+        vo.setAccepts(restore(cached.getAccepts(), canonical));
+        List<DiscardVo> discards = new ArrayList<>(cached.getDiscards().size());
+        for (DiscardVo source : cached.getDiscards()) {
+            DiscardVo discard = new DiscardVo();
+            discard.setTile(TileVo.view(Matrix.of(canonical.original(source.getTile().getCode()))));
+            discard.setStep(source.getStep());
+            discard.setAccepts(restore(source.getAccepts(), canonical));
+            discard.setAcceptAmount(source.getAcceptAmount());
+            discards.add(discard);
+        }
+        discards.sort(Comparator.comparingInt(DiscardVo::getStep)
+                .thenComparing(Comparator.comparingInt(DiscardVo::getAcceptAmount).reversed())
+                .thenComparingInt(discard -> discard.getTile().getCode()));
+        vo.setDiscards(discards);
+    }
+
+    private static List<TileVo> restore(List<TileVo> tiles, HandSymmetry.Canonical canonical) {
+        return tiles.stream()
+                .mapToInt(tile -> canonical.original(tile.getCode()))
+                .sorted()
+                .mapToObj(code -> TileVo.view(Matrix.of(code)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return 手牌张数
+     */
+    private static int efficiency(int[] counts, Rule rule, EfficiencyVo vo) {
+        List<Tile> hand = new ArrayList<>();
+        for (int code = 0; code < counts.length; code++) {
+            for (int i = 0; i < counts[code]; i++) {
+                hand.add(Matrix.of(code));
+            }
+        }
+        if (hand.size() % 3 == 1) {
+            Map.Entry<Integer, Set<Tile>> best = best(EfficiencyUtils.analyzeEfficiency(hand, rule::canLeader));
+            vo.setStep(best.getKey());
+            vo.setAccepts(best.getValue().stream().map(TileVo::view).collect(Collectors.toList()));
+            vo.setDiscards(Collections.emptyList());
+            return hand.size();
+        }
+        if (hand.size() % 3 != 2) {
+            throw new IllegalStateException("手牌数量错误：" + hand.size());
+        }
+        List<DiscardVo> discards = new ArrayList<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0) {
+                continue;
+            }
+            List<Tile> rest = new ArrayList<>(hand);
+            rest.remove(Matrix.of(code));
+            Map.Entry<Integer, Set<Tile>> best = best(EfficiencyUtils.analyzeEfficiency(rest, rule::canLeader));
+            DiscardVo discard = new DiscardVo();
+            discard.setTile(TileVo.view(Matrix.of(code)));
+            discard.setStep(best.getKey());
+            discard.setAccepts(best.getValue().stream().map(TileVo::view).collect(Collectors.toList()));
+            int amount = 0;
+            for (Tile tile : best.getValue()) {
+                amount += Math.max(0, 4 - counts[tile.getCode()] + (tile.getCode() == code ? 1 : 0));
+            }
+            discard.setAcceptAmount(amount);
+            discards.add(discard);
+        }
+        discards.sort(Comparator.comparingInt(DiscardVo::getStep).thenComparing(Comparator.comparingInt(DiscardVo::getAcceptAmount).reversed()));
+        vo.setStep(discards.get(0).getStep());
+        vo.setAccepts(Collections.emptyList());
+        vo.setDiscards(discards);
+        return hand.size();
+    }
+
+    /**
+     * @return 步数最少的结果
+     */
+    private static Map.Entry<Integer, Set<Tile>> best(Map<Integer, Set<Tile>> steps) {
+        return steps.entrySet().stream().min(Map.Entry.comparingByKey()).orElseThrow(() -> new IllegalStateException("没有分析结果"));
+    }
+
+    /**
+     * 在分析线程池中执行任务，供批量分析共用同一个线程池。队列已满时在调用线程中执行，
+     * 调用方因此放慢提交，不会被拒绝
+     *
+     * @param task 任务
+     */
+    void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * @return 分析线程数
+     */
+    int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 牌局中的一个座位
+     */
+    private static final class SeatKey {
+        private final long gameId;
+        private final int seat;
+
+        SeatKey(long gameId, int seat) {
+            this.gameId = gameId;
+            this.seat = seat;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeatKey)) {
+                return false;
+            }
+            SeatKey other = (SeatKey) o;
+            return gameId == other.gameId && seat == other.seat;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(gameId) * 31 + seat;
+        }
+    }
+
+    /**
+     * 规则模板与规范形式的手牌，不同规则的将牌不同，结果不能共用
+     */
+    private static final class HandKey {
+        private final RuleTemplate template;
+        private final HandSymmetry.Key hand;
+
+        HandKey(RuleTemplate template, HandSymmetry.Key hand) {
+            this.template = template;
+            this.hand = hand;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HandKey)) {
+                return false;
+            }
+            HandKey other = (HandKey) o;
+            return template == other.template && hand.equals(other.hand);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(template) * 31 + hand.hashCode();
+        }
+    }
+
+    /**
+     * 一个版本的分析结果，第一个请求负责提交计算
+     */
+    private static final class Entry {
+        private final long version;
+        private final CompletableFuture<AnalysisVo> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Entry(long version) {
+            this.version = version;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.analysis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leavey.mahjong.api.vue.vo.BatchAnalysisVo;
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+/**
+ * 批量牌效分析
+ * <p>
+ * 请求和响应都是每行一个 JSON 的流。请求每行一手牌，用两位的牌编码表示（与 {@link Matrix#parse(String)} 相同），
+ * 编码之间可以用空格或逗号分隔，也可以直接相连，例如 {@code 11 12 13 22 22}。
+ * 每行的结果按输入的顺序输出，格式为 {@link BatchAnalysisVo}，一行无法解析或分析时输出错误，不影响其他行。
+ * <p>
+ * 每个请求同时在分析的手牌不超过窗口大小：窗口满时等待最早的一行完成并写出之后才继续读取请求，
+ * 客户端读取变慢时写出阻塞，读取也随之停止，请求和响应都不会整体留在内存中。
+ * <p>
+ * 分析与单个座位的分析共用 {@link AnalysisService} 的有界线程池。全部批量请求同时在排队或执行的手牌不超过分析线程数，
+ * 超出时提交的请求线程等待，给单个座位的分析留出队列；队列仍然满时在请求线程中执行
+ *
+ * @author Leavey
+ */
+@Component
+public class BatchAnalysisService {
+    /**
+     * 一手牌最多的张数
+     */
+    private static final int MAX_HAND = 14;
+
+    private final AnalysisService analysisService;
+    private final ObjectMapper objectMapper;
+    /**
+     * 全部批量请求共用的许可，每个排队或执行中的手牌占用一个
+     */
+    private final Semaphore permits;
+    private final int window;
+
+    public BatchAnalysisService(AnalysisService analysisService, ObjectMapper objectMapper,
+                                @Value("${mahjong.analysis.batch-window:0}") int window) {
+        int amount = analysisService.getThreads();
+        this.analysisService = analysisService;
+        this.objectMapper = objectMapper;
+        this.permits = new Semaphore(amount);
+        this.window = window > 0 ? window : amount * 2;
+    }
+
+    /**
+     * 分析输入中的每一行手牌，按输入顺序写出结果，输入结束并全部写出后返回
+     *
+     * @param rule 规则，决定有哪些牌、哪些牌可以做将
+     * @param in   每行一手牌
+     * @param out  每行一个结果
+     * @throws IOException 读取请求或写出响应失败，例如客户端断开
+     */
+    public void analyze(Rule rule, InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>(window);
+        try {
+            long line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                if (pending.size() == window) {
+                    //等待前先把已经写出的结果发给客户端
+                    out.flush();
+                    write(out, pending.poll());
+                }
+                long index = line;
+                String hand = text;
+                pending.add(submit(() -> encode(rule, index, hand)));
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    write(out, pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.poll());
+            }
+            out.flush();
+        } finally {
+            //客户端断开时放弃还未完成的分析
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * 取得许可后提交到分析线程池，任务完成或被取消时归还许可
+     */
+    private Future<byte[]> submit(Callable<byte[]> task) throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("批量分析被中断");
+        }
+        FutureTask<byte[]> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                permits.release();
+            }
+        };
+        analysisService.execute(future);
+        return future;
+    }
+
+    private static void write(OutputStream out, Future<byte[]> future) throws IOException {
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("批量分析被中断");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("批量分析失败", e.getCause());
+        }
+    }
+
+    /**
+     * 分析一行手牌，编码为一行 JSON
+     */
+    private byte[] encode(Rule rule, long line, String text) throws JsonProcessingException {
+        BatchAnalysisVo vo = new BatchAnalysisVo();
+        vo.setLine(line);
+        try {
+            analysisService.analyze(parse(text, RuleTemplate.of(rule)), rule, vo);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            vo.setError(e.getMessage());
+        }
+        byte[] json = objectMapper.writeValueAsBytes(vo);
+        byte[] bytes = new byte[json.length + 1];
+        System.arraycopy(json, 0, bytes, 0, json.length);
+        bytes[json.length] = '\n';
+        return bytes;
+    }
+
+    /**
+     * 解析一行手牌
+     *
+     * @return 手牌，下标为牌的编码
+     */
+    static int[] parse(String text, RuleTemplate template) {
+        int[] counts = new int[Matrix.CODE_BOUND];
+        int size = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == ',' || c == '\t' || c == '\r') {
+                i++;
+                continue;
+            }
+            if (i + 1 >= text.length() || !isDigit(c) || !isDigit(text.charAt(i + 1))) {
+                throw new IllegalArgumentException("第 " + (i + 1) + " 个字符开始不是两位的牌编码");
+            }
+            String key = text.substring(i, i + 2);
+            int code = Integer.parseInt(key);
+            Tile tile = code < Matrix.CODE_BOUND ? Matrix.parse(key) : null;
+            if (tile == null || template.getPoolAmount(code) == 0) {
+                throw new IllegalArgumentException("牌编码不存在：" + key);
+            }
+            if (++counts[code] > template.getPoolAmount(code)) {
+                throw new IllegalArgumentException("牌的数量超过上限：" + key);
+            }
+            if (++size > MAX_HAND) {
+                throw new IllegalArgumentException("手牌超过 " + MAX_HAND + " 张");
+            }
+            i += 2;
+        }
+        if (size % 3 == 0) {
+            throw new IllegalArgumentException("手牌数量错误：" + size);
+        }
+        return counts;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
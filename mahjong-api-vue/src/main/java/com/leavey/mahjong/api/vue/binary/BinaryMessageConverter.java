@@ -0,0 +1,328 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.binary;
+
+import com.leavey.mahjong.api.vue.vo.*;
+import com.leavey.mahjong.engine.bean.Action;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 二进制格式，请求头 Accept 或 Content-Type 为 {@link #MEDIA_TYPE} 时代替 JSON 写出 {@link Overview}、{@link OverviewDelta}，
+ * 读取 {@link ActionVo}
+ * <p>
+ * 整数为大端序，列表以一个字节的长度开头，可能为 null 的对象和列表前有一个字节的标记，0 为 null，1 为存在：
+ * <pre>
+ * 牌         编码(1) 方式与数量(1)，高 3 位为方式在 {@link #BEHAVIORS} 中的下标，低 5 位为数量
+ * 牌的列表    长度(1) 牌...
+ * 字符串      标记(1) 长度(1) UTF-8
+ * 选择区      标记(1) 万 饼 条 风 中发白，各为牌的列表
+ * 吃牌组合    标记(1) 选中的下标(1，有符号) 组合数量(1) 牌的列表...
+ * 玩家       座位(1) 操作数量(1) 操作在 {@link Action} 中的序号(1)... 手牌 打出的牌 向听数(1，有符号，未知为 -128) 听的牌
+ * 概览       格式版本(1) 概览内容
+ * 概览内容    牌局id(8) 状态版本(8) 规则名称(字符串) 玩家数量(1) 玩家... 吃牌组合 上次操作的选择区 摸牌选择区 打牌选择区
+ * 座位变化    座位(1) 变化标记(1) 操作 手牌 打出的牌，变化标记第 0、1、2 位依次表示后面三项是否存在：
+ *            操作为 操作数量(1) 操作序号(1)...，手牌为 手牌 向听数(1) 听的牌，打出的牌为 起始位置(1) 牌的列表
+ * 变化       格式版本(1) 牌局id(8) 客户端版本(8) 当前版本(8) 是否完整(1)，
+ *            完整时后面是概览内容，否则是 座位数量(1) 座位变化... 吃牌组合 上次操作的选择区 摸牌选择区 打牌选择区，
+ *            与 JSON 一样，没有变化的字段标记为 null
+ * 操作       格式版本(1) 牌局id(8) 玩家(1) 操作序号(1) 吃牌组合 选择区 摸牌选择区 打牌选择区
+ * </pre>
+ * 每张牌 2 个字节，同样的概览比 JSON 小一个数量级。编码的是控制器已经生成的 {@link Overview} 或 {@link OverviewDelta}，
+ * 与 JSON 共用同一份对象，省去的是文本序列化与更大的响应体，而不是对象本身
+ *
+ * @author Leavey
+ */
+public class BinaryMessageConverter extends AbstractHttpMessageConverter<Object> {
+    public static final String MEDIA_TYPE_VALUE = "application/x-mahjong";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+    /**
+     * 格式版本，不兼容的修改需要增加
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final String[] BEHAVIORS = {TileVo.VIEW, TileVo.VIEW_AMOUNT, TileVo.INCR_AMOUNT};
+    private static final int AMOUNT_BITS = 5;
+    private static final int AMOUNT_MASK = (1 << AMOUNT_BITS) - 1;
+    private static final int MAX_LENGTH = 0xFF;
+    private static final int UNKNOWN_SHANTEN = Byte.MIN_VALUE;
+    private static final int ACTIONS_BIT = 0x01;
+    private static final int HAND_BIT = 0x02;
+    private static final int PLAY_TILES_BIT = 0x04;
+    private static final Action[] ACTIONS = Action.values();
+
+    public BinaryMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Overview.class == clazz || OverviewDelta.class == clazz || ActionVo.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return ActionVo.class == clazz && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return (Overview.class == clazz || OverviewDelta.class == clazz) && canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputMessage.getBody()));
+        try {
+            return readAction(in);
+        } catch (EOFException | IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException("无法解析二进制格式的操作：" + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object o, HttpOutputMessage outputMessage) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputMessage.getBody()));
+        try {
+            if (o instanceof OverviewDelta) {
+                writeDelta((OverviewDelta) o, out);
+            } else {
+                writeOverview((Overview) o, out);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotWritableException("无法写出二进制格式的概览：" + e.getMessage(), e);
+        }
+        out.flush();
+    }
+
+    static void writeOverview(Overview overview, DataOutputStream out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeOverviewBody(overview, out);
+    }
+
+    static void writeDelta(OverviewDelta delta, DataOutputStream out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(delta.getGameId());
+        out.writeLong(delta.getSince());
+        out.writeLong(delta.getVersion());
+        out.writeBoolean(delta.isFull());
+        if (delta.isFull()) {
+            writeOverviewBody(delta.getOverview(), out);
+            return;
+        }
+        List<PlayerDelta> players = delta.getPlayers();
+        writeLength(players.size(), out);
+        for (PlayerDelta player : players) {
+            writePlayerDelta(player, out);
+        }
+        writeEatGroups(delta.getEatGroups(), out);
+        writeSelectors(delta.getSelectors(), out);
+        writeSelectors(delta.getDrawSelectors(), out);
+        writeSelectors(delta.getPlaySelectors(), out);
+    }
+
+    private static void writeOverviewBody(Overview overview, DataOutputStream out) throws IOException {
+        out.writeLong(overview.getGameId());
+        out.writeLong(overview.getVersion());
+        writeString(overview.getRule(), out);
+        List<PlayerVo> players = overview.getPlayers();
+        writeLength(players.size(), out);
+        for (PlayerVo player : players) {
+            writePlayer(player, out);
+        }
+        writeEatGroups(overview.getEatGroups(), out);
+        writeSelectors(overview.getSelectors(), out);
+        writeSelectors(overview.getDrawSelectors(), out);
+        writeSelectors(overview.getPlaySelectors(), out);
+    }
+
+    static ActionVo readAction(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("不支持的格式版本：" + version);
+        }
+        ActionVo vo = new ActionVo();
+        vo.setGameId(in.readLong());
+        vo.setPlayer(in.readUnsignedByte());
+        int action = in.readUnsignedByte();
+        if (action >= ACTIONS.length) {
+            throw new IllegalArgumentException("操作不存在：" + action);
+        }
+        vo.setAction(ACTIONS[action]);
+        vo.setEatGroups(readEatGroups(in));
+        vo.setSelectors(readSelectors(in, new Selectors()));
+        vo.setDrawSelectors(readSelectors(in, new PlaySelectors()));
+        vo.setPlaySelectors(readSelectors(in, new PlaySelectors()));
+        return vo;
+    }
+
+    private static void writePlayer(PlayerVo player, DataOutputStream out) throws IOException {
+        out.writeByte(player.getId());
+        writeActions(player.getActions(), out);
+        writeTiles(player.getHandTiles(), out);
+        writeTiles(player.getPlayTiles(), out);
+        out.writeByte(player.getShanten() == null ? UNKNOWN_SHANTEN : player.getShanten());
+        writeTiles(player.getWaits(), out);
+    }
+
+    private static void writePlayerDelta(PlayerDelta player, DataOutputStream out) throws IOException {
+        out.writeByte(player.getId());
+        int flags = (player.getActions() == null ? 0 : ACTIONS_BIT)
+                | (player.getHandTiles() == null ? 0 : HAND_BIT)
+                | (player.getPlayTiles() == null ? 0 : PLAY_TILES_BIT);
+        out.writeByte(flags);
+        if (player.getActions() != null) {
+            writeActions(player.getActions(), out);
+        }
+        if (player.getHandTiles() != null) {
+            writeTiles(player.getHandTiles(), out);
+            out.writeByte(player.getShanten() == null ? UNKNOWN_SHANTEN : player.getShanten());
+            writeTiles(player.getWaits(), out);
+        }
+        if (player.getPlayTiles() != null) {
+            writeLength(player.getPlayTilesFrom(), out);
+            writeTiles(player.getPlayTiles(), out);
+        }
+    }
+
+    private static void writeActions(List<String> actions, DataOutputStream out) throws IOException {
+        writeLength(actions.size(), out);
+        for (String action : actions) {
+            out.writeByte(Action.valueOf(action).ordinal());
+        }
+    }
+
+    private static void writeEatGroups(EatGroups eatGroups, DataOutputStream out) throws IOException {
+        out.writeBoolean(eatGroups != null);
+        if (eatGroups == null) {
+            return;
+        }
+        out.writeByte(eatGroups.getSelected());
+        List<GroupVo> groups = eatGroups.getGroups();
+        writeLength(groups.size(), out);
+        for (GroupVo group : groups) {
+            writeTiles(group.getTiles(), out);
+        }
+    }
+
+    private static EatGroups readEatGroups(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int selected = in.readByte();
+        int length = in.readUnsignedByte();
+        List<GroupVo> groups = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            groups.add(new GroupVo(readTiles(in)));
+        }
+        if (selected < -1 || selected >= length) {
+            throw new IllegalArgumentException("选中的吃牌组合不存在：" + selected);
+        }
+        EatGroups eatGroups = new EatGroups(groups);
+        eatGroups.setSelected(selected);
+        return eatGroups;
+    }
+
+    private static void writeSelectors(Selectors selectors, DataOutputStream out) throws IOException {
+        out.writeBoolean(selectors != null);
+        if (selectors == null) {
+            return;
+        }
+        writeTiles(selectors.getCharacter(), out);
+        writeTiles(selectors.getDot(), out);
+        writeTiles(selectors.getBamboo(), out);
+        writeTiles(selectors.getWind(), out);
+        writeTiles(selectors.getDragon(), out);
+    }
+
+    private static <T extends Selectors> T readSelectors(DataInputStream in, T selectors) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        selectors.setCharacter(readTiles(in));
+        selectors.setDot(readTiles(in));
+        selectors.setBamboo(readTiles(in));
+        selectors.setWind(readTiles(in));
+        selectors.setDragon(readTiles(in));
+        return selectors;
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value == null) {
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLength(bytes.length, out);
+        out.write(bytes);
+    }
+
+    private static void writeTiles(List<TileVo> tiles, DataOutputStream out) throws IOException {
+        if (tiles == null) {
+            out.writeByte(0);
+            return;
+        }
+        writeLength(tiles.size(), out);
+        for (TileVo tile : tiles) {
+            int amount = tile.getAmount();
+            if (amount < 0 || amount > AMOUNT_MASK) {
+                throw new IllegalArgumentException("牌的数量超出范围：" + amount);
+            }
+            out.writeByte(tile.getCode());
+            out.writeByte(behavior(tile.getBehavior()) << AMOUNT_BITS | amount);
+        }
+    }
+
+    private static List<TileVo> readTiles(DataInputStream in) throws IOException {
+        int length = in.readUnsignedByte();
+        List<TileVo> tiles = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            int code = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            int behavior = flags >>> AMOUNT_BITS;
+            if (behavior >= BEHAVIORS.length) {
+                throw new IllegalArgumentException("牌的方式不存在：" + behavior);
+            }
+            tiles.add(new TileVo(code, BEHAVIORS[behavior], flags & AMOUNT_MASK));
+        }
+        return tiles;
+    }
+
+    private static int behavior(String behavior) {
+        for (int i = 0; i < BEHAVIORS.length; i++) {
+            if (BEHAVIORS[i].equals(behavior)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("牌的方式不存在：" + behavior);
+    }
+
+    private static void writeLength(int length, DataOutputStream out) throws IOException {
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("列表长度超出范围：" + length);
+        }
+        out.writeByte(length);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.config;
+
+import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.event.GameEvent;
+import com.leavey.mahjong.engine.event.GameEventBus;
+import com.leavey.mahjong.engine.event.GameEventListener;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 牌局事件配置
+ * <p>
+ * 分析、日志、推送等需要响应牌局变化的逻辑实现 {@link GameEventListener} 并注册为 Bean 即可，
+ * 在各自的线程中按顺序收到事件，不会增加请求的响应时间
+ *
+ * @author Leavey
+ */
+@Slf4j
+@Configuration
+public class EventConfiguration {
+
+    @Bean(destroyMethod = "")
+    public GameEventBus gameEventBus(ObjectProvider<GameEventListener> listeners,
+                                     @Value("${mahjong.event.capacity:16384}") int capacity) {
+        GameEventBus bus = new GameEventBus();
+        listeners.orderedStream().forEach(listener -> bus.subscribe(listener.getClass().getSimpleName(), listener, capacity));
+        GameFactory.setEventBus(bus);
+        return bus;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public EventBusCloser eventBusCloser(GameEventBus bus) {
+        return new EventBusCloser(bus);
+    }
+
+    /**
+     * 记录每次操作的调试日志
+     */
+    @Bean
+    public GameEventListener operationLogger() {
+        return new OperationLogger();
+    }
+
+    /**
+     * 关闭时先停止发布，再等待订阅者处理完已发布的事件
+     */
+    public static class EventBusCloser {
+        private final GameEventBus bus;
+
+        EventBusCloser(GameEventBus bus) {
+            this.bus = bus;
+        }
+
+        public void shutdown() {
+            GameFactory.setEventBus(null);
+            bus.close();
+        }
+    }
+
+    static class OperationLogger implements GameEventListener {
+
+        @Override
+        public void onEvent(GameEvent event, boolean endOfBatch) {
+            Operation operation = event.getOperation();
+            if (log.isDebugEnabled() && operation != null) {
+                log.debug("牌局 {} 第 {} 个事件 {}：玩家 {} {} {}", event.getGameId(), event.getSequence(), event.getKind(),
+                        operation.getPlayer(), operation.getAction(), operation.getKeyTiles());
+            }
+        }
+
+        @Override
+        public void onOverflow(long lost) {
+            log.warn("操作日志处理不及，丢弃了 {} 个事件", lost);
+        }
+
+        @Override
+        public void onError(GameEvent event, RuntimeException e) {
+            log.error("处理牌局 {} 的事件失败", event.getGameId(), e);
+        }
+    }
+}
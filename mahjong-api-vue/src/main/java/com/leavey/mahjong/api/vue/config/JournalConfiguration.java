@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.config;
+
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import com.leavey.mahjong.engine.persist.FsyncPolicy;
+import com.leavey.mahjong.engine.persist.GameJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * 牌局持久化配置，配置了 mahjong.journal.dir 时启用
+ * <p>
+ * 在 Web 服务开始接收请求之前从日志恢复全部牌局，之后定时写入检查点，关闭时再写入一次
+ *
+ * @author Leavey
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "mahjong.journal", name = "dir")
+public class JournalConfiguration {
+
+    @Bean(destroyMethod = "")
+    public GameJournal gameJournal(@Value("${mahjong.journal.dir}") String dir,
+                                   @Value("${mahjong.journal.fsync:ALWAYS}") FsyncPolicy fsync,
+                                   @Value("${mahjong.journal.fsync-interval-millis:10}") long fsyncIntervalMillis,
+                                   @Value("${mahjong.journal.segment-bytes:67108864}") long segmentBytes,
+                                   @Value("${mahjong.journal.recovery-threads:0}") int recoveryThreads) throws IOException {
+        GameJournal journal = new GameJournal(Paths.get(dir), fsync, fsyncIntervalMillis, segmentBytes);
+        int threads = recoveryThreads > 0 ? recoveryThreads : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        List<Game> games = journal.recover(GameJournal::newRule, threads);
+        GameFactory.restore(games);
+        GameFactory.setJournal(journal);
+        log.info("从 {} 恢复了 {} 局牌，耗时 {}ms", dir, games.size(), (System.nanoTime() - start) / 1_000_000);
+        return journal;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Checkpointer checkpointer(GameJournal journal) {
+        return new Checkpointer(journal);
+    }
+
+    /**
+     * 定时写入检查点
+     */
+    public static class Checkpointer {
+        private final GameJournal journal;
+
+        Checkpointer(GameJournal journal) {
+            this.journal = journal;
+        }
+
+        @Scheduled(initialDelayString = "${mahjong.journal.checkpoint-interval-millis:60000}", fixedDelayString = "${mahjong.journal.checkpoint-interval-millis:60000}")
+        public void checkpoint() {
+            try {
+                GameFactory.checkpoint();
+            } catch (IOException e) {
+                log.error("写入检查点失败", e);
+            }
+        }
+
+        /**
+         * 关闭前先停止接受修改，再写入检查点，下次启动不需要执行日志。
+         * 停止之后到达的请求失败返回，不会出现已经返回成功却没有写入日志的操作
+         */
+        public void shutdown() {
+            GameFactory.close();
+            checkpoint();
+            GameFactory.setJournal(null);
+            journal.close();
+        }
+    }
+}
@@ -16,20 +16,36 @@
 
 package com.leavey.mahjong.api.vue.controller;
 
+import com.leavey.mahjong.api.vue.analysis.AnalysisService;
+import com.leavey.mahjong.api.vue.analysis.BatchAnalysisService;
+import com.leavey.mahjong.api.vue.history.OverviewHistory;
+import com.leavey.mahjong.api.vue.metrics.MicrometerGameMetrics;
+import com.leavey.mahjong.api.vue.push.GamePushService;
+import com.leavey.mahjong.api.vue.scheduler.GameScheduler;
 import com.leavey.mahjong.api.vue.vo.*;
 import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.common.bean.Type;
 import com.leavey.mahjong.engine.bean.*;
 import com.leavey.mahjong.engine.factory.GameFactory;
-import com.leavey.mahjong.engine.rule.ChangShaRule;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -38,32 +54,143 @@ import java.util.stream.Collectors;
 @Slf4j
 @RestController
 public class GameController {
+    private final GameScheduler scheduler;
+    private final OverviewHistory history;
+    private final GamePushService push;
+    private final AnalysisService analysis;
+    private final BatchAnalysisService batchAnalysis;
+    private final MicrometerGameMetrics metrics;
 
+    public GameController(GameScheduler scheduler, OverviewHistory history, GamePushService push,
+                          AnalysisService analysis, BatchAnalysisService batchAnalysis, MicrometerGameMetrics metrics) {
+        this.scheduler = scheduler;
+        this.history = history;
+        this.push = push;
+        this.analysis = analysis;
+        this.batchAnalysis = batchAnalysis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 创建牌局，规则实例由 {@link RuleRegistry} 共享，同一规则的牌局复用同一个编译后的规则模板
+     *
+     * @param rule 规则名称
+     * @return 牌局
+     */
     @PostMapping("/games")
-    public Overview newGame() {
-        return Overview.of(GameFactory.newGame(new ChangShaRule()));
+    public CompletableFuture<Overview> newGame(@RequestParam(defaultValue = RuleRegistry.DEFAULT) String rule) {
+        Game game = GameFactory.newGame(rule(rule));
+        Overview overview = metrics.overview(game);
+        history.record(overview);
+        return GameFactory.whenDurable(game.getId()).thenApply(v -> overview);
     }
 
+    /**
+     * 执行操作，同一局牌的请求在该局的线程中依次执行，日志落盘后返回
+     */
     @PutMapping("/games")
-    public Overview action(@RequestBody ActionVo actionVo) {
+    public CompletableFuture<Overview> action(@RequestBody ActionVo actionVo) {
+        long gameId = actionVo.getGameId();
+        return scheduler.submit(gameId, () -> {
+                    Overview overview = execute(actionVo);
+                    history.record(overview);
+                    return overview;
+                })
+                .thenCompose(overview -> GameFactory.whenDurable(gameId).thenApply(v -> overview));
+    }
+
+    /**
+     * 执行操作，只返回相对于客户端已有版本的变化
+     *
+     * @param actionVo 操作
+     * @param since    客户端已有的版本，即上一次返回的 version 或推送帧的 id
+     * @return 变化
+     */
+    @PutMapping(value = "/games", params = "since")
+    public CompletableFuture<OverviewDelta> action(@RequestBody ActionVo actionVo, @RequestParam long since) {
+        long gameId = actionVo.getGameId();
+        return scheduler.submit(gameId, () -> history.delta(since, execute(actionVo)))
+                .thenCompose(delta -> GameFactory.whenDurable(gameId).thenApply(v -> delta));
+    }
+
+    /**
+     * 订阅牌局的变化，先推送一次当前状态，之后每次变化推送一次完整的牌局，事件id为状态版本
+     *
+     * @param gameId 牌局id
+     * @return SSE 连接
+     */
+    @GetMapping(value = "/games/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(long gameId) {
+        return push.subscribe(gameId);
+    }
+
+    /**
+     * 分析座位在当前状态下的牌效：需要打牌时给出每种打法的步数与可进的牌，否则给出当前的步数与可进的牌
+     *
+     * @param gameId 牌局id
+     * @param seat   座位
+     * @return 分析结果，同一状态的结果会被缓存
+     */
+    @GetMapping("/games/{gameId}/players/{seat}/analysis")
+    public CompletableFuture<AnalysisVo> analysis(@PathVariable long gameId, @PathVariable int seat) {
+        return analysis.analyze(gameId, seat);
+    }
+
+    /**
+     * 批量分析手牌，请求每行一手牌，响应每行一个结果，顺序与请求相同，边读边分析边写出
+     *
+     * @param rule     规则名称
+     * @param request  请求
+     * @param response 响应
+     * @throws IOException 读取请求或写出响应失败
+     */
+    @PostMapping(value = "/analysis/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void batchAnalysis(@RequestParam(defaultValue = RuleRegistry.DEFAULT) String rule,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Rule selected = rule(rule);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        batchAnalysis.analyze(selected, request.getInputStream(), response.getOutputStream());
+    }
+
+    /**
+     * @return 可选的规则名称
+     */
+    @GetMapping("/rules")
+    public Set<String> rules() {
+        return RuleRegistry.ids();
+    }
+
+    private static Rule rule(String id) {
+        try {
+            return RuleRegistry.get(id);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private Overview execute(ActionVo actionVo) {
         long gameId = actionVo.getGameId();
         int player = actionVo.getPlayer();
+        //一次请求可能包含多个操作，先全部组装好，再原子地执行
+        List<ActionRequest> requests = new ArrayList<>(3);
         if (Action.DRAW == actionVo.getAction()) {
             List<Tile> tiles = actionVo.getDrawSelectors().toTiles();
             //摸牌，前端将摸牌与开杠摸牌组合了，这里需要判断是什么摸牌
-            if (GameFactory.get(gameId).getPrevAction() == Action.GANG) {
-                GameFactory.play(gameId, new ActionRequest(player, Action.GANG_DRAW, tiles));
-                executeGangPlayIfNecessary(gameId, player, actionVo.getPlaySelectors());
+            Game game = GameFactory.get(gameId);
+            if (game.getPrevAction() == Action.GANG) {
+                requests.add(new ActionRequest(player, Action.GANG_DRAW, tiles));
+                addGangPlayIfNecessary(requests, game, player, actionVo.getPlaySelectors());
             } else {
-                GameFactory.play(gameId, new ActionRequest(player, Action.DRAW, tiles));
-                executePlayIfNecessary(gameId, player, actionVo.getPlaySelectors());
+                requests.add(new ActionRequest(player, Action.DRAW, tiles));
+                addPlayIfNecessary(requests, player, actionVo.getPlaySelectors());
             }
         } else if (Action.PLAY == actionVo.getAction()) {
             //打牌，前端将打牌与开杠后打牌组合了，这里需要判断是什么打牌
-            if (GameFactory.get(gameId).getPrevAction() == Action.GANG_DRAW) {
-                GameFactory.play(gameId, new ActionRequest(player, Action.GANG_PLAY, actionVo.getPlaySelectors().toTiles()));
+            Game game = GameFactory.get(gameId);
+            if (game.getPrevAction() == Action.GANG_DRAW && !game.getTemplate().isGangDrawToHand()) {
+                requests.add(new ActionRequest(player, Action.GANG_PLAY, actionVo.getPlaySelectors().toTiles()));
             } else {
-                GameFactory.play(gameId, new ActionRequest(player, Action.PLAY, actionVo.getPlaySelectors().toTiles()));
+                requests.add(new ActionRequest(player, Action.PLAY, actionVo.getPlaySelectors().toTiles()));
             }
         } else if (Action.PEN == actionVo.getAction()) {
             //碰牌
@@ -77,8 +204,8 @@ public class GameController {
             }
             target = tiles.get(0);
             //执行碰牌
-            GameFactory.play(gameId, new ActionRequest(player, actionVo.getAction(), List.of(target)));
-            executePlayIfNecessary(gameId, player, actionVo.getPlaySelectors());
+            requests.add(new ActionRequest(player, actionVo.getAction(), List.of(target)));
+            addPlayIfNecessary(requests, player, actionVo.getPlaySelectors());
         } else if (Action.GANG == actionVo.getAction()) {
             //杠牌
             Tile target;
@@ -91,10 +218,10 @@ public class GameController {
             }
             target = tiles.get(0);
             //执行杠牌
-            GameFactory.play(gameId, new ActionRequest(player, actionVo.getAction(), List.of(target)));
+            requests.add(new ActionRequest(player, actionVo.getAction(), List.of(target)));
             //自动摸x张杠牌
-            GameFactory.play(gameId, new ActionRequest(player, Action.GANG_DRAW));
-            executeGangPlayIfNecessary(gameId, player, actionVo.getPlaySelectors());
+            requests.add(new ActionRequest(player, Action.GANG_DRAW));
+            addGangPlayIfNecessary(requests, GameFactory.get(gameId), player, actionVo.getPlaySelectors());
         } else if (Action.EAT == actionVo.getAction()) {
             GroupVo selectedGroup = actionVo.getEatGroups().getSelectedGroup();
             Tile tile;
@@ -115,8 +242,8 @@ public class GameController {
                     eatPosition = EatPosition.MIDDLE;
                 }
             }
-            GameFactory.play(gameId, new ActionRequest(player, Action.EAT, tile, eatPosition));
-            executePlayIfNecessary(gameId, player, actionVo.getPlaySelectors());
+            requests.add(new ActionRequest(player, Action.EAT, tile, eatPosition));
+            addPlayIfNecessary(requests, player, actionVo.getPlaySelectors());
         } else if (Action.WIN == actionVo.getAction()) {
             //胡牌
             Tile target;
@@ -127,27 +254,33 @@ public class GameController {
                 tiles = GameFactory.get(gameId).getPrevKeyTiles();
                 Assert.isTrue(tiles.size() == 1, "无法从之前的打出牌中找到要胡的牌");
             }
-            GameFactory.play(gameId, new ActionRequest(player, Action.WIN, tiles));
+            requests.add(new ActionRequest(player, Action.WIN, tiles));
         } else if (Action.SHOW == actionVo.getAction()) {
-            GameFactory.play(gameId, new ActionRequest(player, Action.SHOW, actionVo.getPlaySelectors().toTiles()));
+            requests.add(new ActionRequest(player, Action.SHOW, actionVo.getPlaySelectors().toTiles()));
         }
-        return Overview.of(GameFactory.get(gameId));
+        Game game = requests.isEmpty() ? GameFactory.get(gameId) : GameFactory.play(gameId, requests);
+        return metrics.overview(game);
     }
 
-    private void executePlayIfNecessary(long gameId, int player, Selectors paySelectors) {
+    private static void addPlayIfNecessary(List<ActionRequest> requests, int player, Selectors paySelectors) {
         List<Tile> playTiles = paySelectors.toTiles();
         Assert.isTrue(playTiles.size() <= 1, "仅能打出一张牌");
         if (!playTiles.isEmpty()) {
             //打出牌
-            GameFactory.play(gameId, new ActionRequest(player, Action.PLAY, playTiles));
+            requests.add(new ActionRequest(player, Action.PLAY, playTiles));
         }
     }
 
-    private void executeGangPlayIfNecessary(long gameId, int player, Selectors paySelectors) {
+    private static void addGangPlayIfNecessary(List<ActionRequest> requests, Game game, int player, Selectors paySelectors) {
+        if (game.getTemplate().isGangDrawToHand()) {
+            //杠后摸的牌补进手牌，之后与摸牌后一样打牌
+            addPlayIfNecessary(requests, player, paySelectors);
+            return;
+        }
         List<Tile> playTiles = paySelectors.toTiles();
         if (!playTiles.isEmpty()) {
             //打出牌
-            GameFactory.play(gameId, new ActionRequest(player, Action.GANG_PLAY, playTiles));
+            requests.add(new ActionRequest(player, Action.GANG_PLAY, playTiles));
         }
     }
 
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.history;
+
+import com.leavey.mahjong.api.vue.vo.Overview;
+import com.leavey.mahjong.api.vue.vo.OverviewDelta;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 最近返回给客户端的牌局状态，用于按版本计算变化
+ * <p>
+ * 每局牌只保留最近若干个版本，客户端的版本更旧时返回完整的牌局。牌局数量超过容量时最近最少请求的牌局先淘汰，
+ * 已经结束的牌局不再有请求，很快会被淘汰，之后再请求时返回完整的牌局。
+ * 同一局牌的请求都在该局的线程中执行，这里对每局牌的记录单独加锁，只是为了与其他线程的查询互不干扰
+ *
+ * @author Leavey
+ */
+@Component
+public class OverviewHistory {
+    private final Map<Long, Map<Long, Overview>> histories;
+    private final int capacity;
+
+    /**
+     * @param capacity 每局牌保留的版本数量
+     * @param games    保留的牌局数量
+     */
+    public OverviewHistory(@Value("${mahjong.overview.history:16}") int capacity,
+                           @Value("${mahjong.overview.history-games:4096}") int games) {
+        this.capacity = capacity;
+        //全局锁内只查找、插入一局牌的记录，各局的版本在各自的锁内读写
+        this.histories = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<Long, Overview>> eldest) {
+                return size() > Math.max(games, 1);
+            }
+        });
+    }
+
+    /**
+     * 记录一个状态
+     *
+     * @param overview 状态
+     */
+    public void record(Overview overview) {
+        history(overview);
+    }
+
+    /**
+     * 记录一个状态，返回该局牌的记录，调用方不需要再次查找，期间被淘汰也不影响本次计算
+     */
+    private Map<Long, Overview> history(Overview overview) {
+        Map<Long, Overview> history = histories.computeIfAbsent(overview.getGameId(), id -> new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Overview> eldest) {
+                return size() > capacity;
+            }
+        });
+        synchronized (history) {
+            history.put(overview.getVersion(), overview);
+        }
+        return history;
+    }
+
+    /**
+     * 记录当前状态，并计算相对于客户端版本的变化
+     *
+     * @param since   客户端已有的版本
+     * @param current 当前状态
+     * @return 变化
+     */
+    public OverviewDelta delta(long since, Overview current) {
+        Map<Long, Overview> history = history(current);
+        Overview base;
+        synchronized (history) {
+            base = history.get(since);
+        }
+        return OverviewDelta.between(since, base, current);
+    }
+}
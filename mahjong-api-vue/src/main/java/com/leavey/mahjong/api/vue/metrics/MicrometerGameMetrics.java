@@ -0,0 +1,211 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.metrics;
+
+import com.leavey.mahjong.api.vue.vo.Overview;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import com.leavey.mahjong.engine.metrics.GameMetrics;
+import com.leavey.mahjong.engine.metrics.RepositoryStats;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于 Micrometer 的监控指标，通过 Actuator 的 metrics 端点查看
+ * <ul>
+ *     <li>mahjong.play：每种操作的耗时，按阶段 phase 分为 validate、execute、copy</li>
+ *     <li>mahjong.play.rejected：每种操作校验失败的次数</li>
+ *     <li>mahjong.overview.build：生成 {@link Overview} 的耗时</li>
+ *     <li>mahjong.analysis：牌效分析的耗时，按手牌张数 hand 和分析得到的步数 step 区分，命中缓存的分析不计入</li>
+ *     <li>mahjong.analysis.cache：按规范形式缓存的牌效分析的命中 hit 与未命中 miss 次数</li>
+ *     <li>mahjong.games.live、mahjong.history.entries、mahjong.history.bytes：仓库中的牌局数量、历史状态数量和占用内存的估计值，
+ *     分支之间共享的历史只计算一次</li>
+ * </ul>
+ * 注册表中没有实际的注册表时不读取时钟，也不记录任何指标
+ *
+ * @author Leavey
+ */
+@Component
+public class MicrometerGameMetrics implements GameMetrics, DisposableBean {
+    private static final String[] PHASES = {"validate", "execute", "copy"};
+    /**
+     * 仓库统计需要遍历全部牌局，多个仪表在这个时间内共用同一次统计
+     */
+    private static final long STATS_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * 缓存的牌效分析计时器覆盖的手牌张数与步数，超出范围的按需创建
+     */
+    private static final int MAX_HAND = 18;
+    private static final int MAX_STEP = 8;
+
+    private final MeterRegistry registry;
+    private final Map<Action, Timer[]> plays = new EnumMap<>(Action.class);
+    private final Map<Action, Counter> rejections = new EnumMap<>(Action.class);
+    private final Timer overviews;
+    /**
+     * 牌效分析的计时器，按 [手牌张数][步数 + 1] 索引，第一次使用时注册
+     */
+    private final AtomicReferenceArray<Timer> analyses = new AtomicReferenceArray<>((MAX_HAND + 1) * (MAX_STEP + 2));
+    private final Counter analysisHits;
+    private final Counter analysisMisses;
+    private volatile RepositoryStats stats;
+    private volatile long statsTime;
+
+    public MicrometerGameMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Action action : Action.values()) {
+            Timer[] timers = new Timer[PHASES.length];
+            for (int i = 0; i < PHASES.length; i++) {
+                timers[i] = Timer.builder("mahjong.play")
+                        .description("执行操作的耗时")
+                        .tag("action", action.name())
+                        .tag("phase", PHASES[i])
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+            plays.put(action, timers);
+            rejections.put(action, Counter.builder("mahjong.play.rejected")
+                    .description("校验失败的操作")
+                    .tag("action", action.name())
+                    .register(registry));
+        }
+        this.overviews = Timer.builder("mahjong.overview.build")
+                .description("生成牌局概览的耗时")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.analysisHits = Counter.builder("mahjong.analysis.cache")
+                .description("牌效分析缓存的查询次数")
+                .tag("result", "hit")
+                .register(registry);
+        this.analysisMisses = Counter.builder("mahjong.analysis.cache")
+                .description("牌效分析缓存的查询次数")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("mahjong.games.live", this, metrics -> metrics.stats().getGames())
+                .description("仓库中的牌局数量")
+                .register(registry);
+        Gauge.builder("mahjong.history.entries", this, metrics -> metrics.stats().getEntries())
+                .description("仓库中保留的历史状态数量")
+                .register(registry);
+        Gauge.builder("mahjong.history.bytes", this, metrics -> metrics.stats().getBytes())
+                .description("仓库中历史状态占用内存的估计值")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        GameFactory.setMetrics(this);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !(registry instanceof CompositeMeterRegistry) || !((CompositeMeterRegistry) registry).getRegistries().isEmpty();
+    }
+
+    @Override
+    public void recordPlay(Action action, long validateNanos, long executeNanos, long copyNanos) {
+        Timer[] timers = plays.get(action);
+        timers[0].record(validateNanos, TimeUnit.NANOSECONDS);
+        timers[1].record(executeNanos, TimeUnit.NANOSECONDS);
+        timers[2].record(copyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRejected(Action action) {
+        rejections.get(action).increment();
+    }
+
+    /**
+     * 生成牌局概览并记录耗时
+     *
+     * @param game 牌局
+     * @return 概览
+     */
+    public Overview overview(Game game) {
+        if (!isEnabled()) {
+            return Overview.of(game);
+        }
+        long start = System.nanoTime();
+        Overview overview = Overview.of(game);
+        overviews.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return overview;
+    }
+
+    /**
+     * 记录一次牌效分析
+     *
+     * @param handSize 手牌张数
+     * @param step     分析得到的步数
+     * @param nanos    耗时
+     */
+    public void recordAnalysis(int handSize, int step, long nanos) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (handSize < 0 || handSize > MAX_HAND || step < -1 || step > MAX_STEP) {
+            analysisTimer(handSize, step).record(nanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        int index = handSize * (MAX_STEP + 2) + step + 1;
+        Timer timer = analyses.get(index);
+        if (timer == null) {
+            //并发时可能重复注册，注册表返回同一个计时器
+            timer = analysisTimer(handSize, step);
+            analyses.set(index, timer);
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer analysisTimer(int handSize, int step) {
+        return Timer.builder("mahjong.analysis")
+                .description("牌效分析的耗时")
+                .tag("hand", Integer.toString(handSize))
+                .tag("step", Integer.toString(step))
+                .register(registry);
+    }
+
+    /**
+     * 记录一次牌效分析缓存的查询
+     *
+     * @param hit 是否命中
+     */
+    public void recordAnalysisCache(boolean hit) {
+        (hit ? analysisHits : analysisMisses).increment();
+    }
+
+    private RepositoryStats stats() {
+        long now = System.nanoTime();
+        RepositoryStats current = stats;
+        if (current == null || now - statsTime > STATS_TTL_NANOS) {
+            current = GameFactory.stats();
+            stats = current;
+            statsTime = now;
+        }
+        return current;
+    }
+
+    @Override
+    public void destroy() {
+        GameFactory.setMetrics(null);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.push;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leavey.mahjong.api.vue.history.OverviewHistory;
+import com.leavey.mahjong.api.vue.metrics.MicrometerGameMetrics;
+import com.leavey.mahjong.api.vue.scheduler.GameScheduler;
+import com.leavey.mahjong.api.vue.vo.Overview;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.event.GameEvent;
+import com.leavey.mahjong.engine.event.GameEventListener;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 牌局推送
+ * <p>
+ * 订阅牌局事件，每次牌局变化后在事件线程中生成一次 {@link Overview} 并编码为一个 SSE 帧，同一个帧发送给该局的全部订阅者。
+ * 每个连接有自己的有界队列，由共享的写线程池依次写出，同一个连接同一时间只有一个写任务，保证帧的顺序。
+ * 队列满时说明客户端处理不及，直接断开该连接，客户端重连后会先收到最新的完整状态。
+ * 推送的状态同样记入 {@link OverviewHistory}，客户端可以用推送帧的 id 作为 since 请求增量。
+ * <p>
+ * 每次写出都有期限：写出耗时超过期限的连接在写出返回后断开；写出一直阻塞时，下一个事件到达时发现超时即关闭连接，
+ * 不再为它排队，写线程在写出返回后结束连接。阻塞的写出本身由容器的写超时兜底
+ *
+ * @author Leavey
+ */
+@Slf4j
+@Component
+public class GamePushService implements GameEventListener, DisposableBean {
+    private static final String EVENT_NAME = "overview";
+
+    private final Map<Long, Set<Connection>> subscribers = new ConcurrentHashMap<>();
+    private final GameScheduler scheduler;
+    private final ObjectMapper objectMapper;
+    private final MicrometerGameMetrics metrics;
+    private final OverviewHistory history;
+    private final ExecutorService writers;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final long writeTimeoutNanos;
+
+    public GamePushService(GameScheduler scheduler, ObjectMapper objectMapper, MicrometerGameMetrics metrics, OverviewHistory history,
+                           @Value("${mahjong.push.writer-threads:4}") int writerThreads,
+                           @Value("${mahjong.push.queue-capacity:32}") int queueCapacity,
+                           @Value("${mahjong.push.timeout-millis:1800000}") long timeoutMillis,
+                           @Value("${mahjong.push.write-timeout-millis:5000}") long writeTimeoutMillis) {
+        this.scheduler = scheduler;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.history = history;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        AtomicInteger index = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "mahjong-push-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 订阅一局牌，立即推送当前状态
+     * <p>
+     * 在牌局所在的线程中先注册再读取当前状态，之后的变化都不会漏掉。
+     * 事件线程中还没有推送的更早的事件版本较小，会被跳过
+     *
+     * @param gameId 牌局id
+     * @return SSE 连接
+     */
+    public SseEmitter subscribe(long gameId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Connection connection = new Connection(gameId, emitter);
+        emitter.onCompletion(connection::close);
+        emitter.onTimeout(connection::close);
+        emitter.onError(e -> connection.close());
+        scheduler.submit(gameId, () -> {
+            subscribers.compute(gameId, (id, connections) -> {
+                if (connections == null) {
+                    connections = ConcurrentHashMap.newKeySet();
+                }
+                connections.add(connection);
+                return connections;
+            });
+            connection.offer(encode(overview(GameFactory.get(gameId))));
+            return null;
+        }).exceptionally(e -> {
+            connection.close();
+            emitter.completeWithError(e);
+            return null;
+        });
+        return emitter;
+    }
+
+    @Override
+    public void onEvent(GameEvent event, boolean endOfBatch) {
+        Set<Connection> connections = subscribers.get(event.getGameId());
+        if (connections == null || connections.isEmpty()) {
+            return;
+        }
+        SharedFrame frame = encode(overview(event.getGame()));
+        for (Connection connection : connections) {
+            connection.offer(frame);
+        }
+    }
+
+    @Override
+    public void onOverflow(long lost) {
+        //丢失的事件无法补发，断开全部连接，客户端重连后从最新状态开始
+        log.warn("推送处理不及，丢弃了 {} 个事件，断开全部推送连接", lost);
+        subscribers.values().forEach(connections -> connections.forEach(Connection::drop));
+    }
+
+    @Override
+    public void onError(GameEvent event, RuntimeException e) {
+        log.error("推送牌局 {} 的事件失败", event.getGameId(), e);
+    }
+
+    /**
+     * 生成推送的状态并记录，推送帧的 id 就是状态的版本
+     */
+    private Overview overview(Game game) {
+        Overview overview = metrics.overview(game);
+        history.record(overview);
+        return overview;
+    }
+
+    private SharedFrame encode(Overview overview) {
+        try {
+            return new SharedFrame(overview.getVersion(), EVENT_NAME, objectMapper.writeValueAsBytes(overview));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("牌局编码失败", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        subscribers.values().forEach(connections -> connections.forEach(Connection::drop));
+        writers.shutdown();
+    }
+
+    /**
+     * 一个订阅连接
+     */
+    private class Connection implements Runnable {
+        private final long gameId;
+        private final SseEmitter emitter;
+        /**
+         * 等待写出的帧，访问时锁定自身
+         */
+        private final Queue<SharedFrame> queue = new ArrayDeque<>();
+        /**
+         * 是否已经提交了写任务
+         */
+        private boolean writing;
+        /**
+         * 最后放入队列的帧的版本
+         */
+        private long version;
+        /**
+         * 正在进行的写出开始的时刻，没有写出时为 0
+         */
+        private volatile long writeStart;
+        private volatile boolean closed;
+
+        Connection(long gameId, SseEmitter emitter) {
+            this.gameId = gameId;
+            this.emitter = emitter;
+        }
+
+        void offer(SharedFrame frame) {
+            if (closed) {
+                return;
+            }
+            long started = writeStart;
+            if (started != 0 && System.nanoTime() - started > writeTimeoutNanos) {
+                log.info("牌局 {} 的推送连接写出超时，断开连接", gameId);
+                drop();
+                return;
+            }
+            synchronized (queue) {
+                if (frame.getVersion() <= version) {
+                    return;
+                }
+                if (queue.size() >= queueCapacity) {
+                    log.info("牌局 {} 的推送连接处理不及，断开连接", gameId);
+                    //在锁外断开，断开时会回调 close
+                } else {
+                    queue.add(frame);
+                    version = frame.getVersion();
+                    if (!writing) {
+                        writing = true;
+                        writers.execute(this);
+                    }
+                    return;
+                }
+            }
+            drop();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                SharedFrame frame;
+                synchronized (queue) {
+                    frame = closed ? null : queue.poll();
+                    if (frame == null) {
+                        writing = false;
+                        break;
+                    }
+                }
+                long start = System.nanoTime();
+                writeStart = start;
+                try {
+                    emitter.send(frame);
+                } catch (IOException | IllegalStateException e) {
+                    //客户端已断开
+                    close();
+                } finally {
+                    writeStart = 0;
+                }
+                if (!closed && System.nanoTime() - start > writeTimeoutNanos) {
+                    log.info("牌局 {} 的推送连接写出超时，断开连接", gameId);
+                    close();
+                }
+            }
+            if (closed) {
+                //在写出期间被其他线程断开的连接由写线程结束，已经结束时不做任何事
+                emitter.complete();
+            }
+        }
+
+        /**
+         * 主动断开连接
+         * <p>
+         * 写线程可能阻塞在写出中并持有 emitter 的锁，此时只关闭连接，由写线程在写出返回后结束 emitter，
+         * 调用方（事件线程）不会被阻塞
+         */
+        void drop() {
+            close();
+            boolean idle;
+            synchronized (queue) {
+                idle = !writing;
+            }
+            if (idle) {
+                emitter.complete();
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.computeIfPresent(gameId, (id, connections) -> {
+                connections.remove(this);
+                return connections.isEmpty() ? null : connections;
+            });
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+    }
+}
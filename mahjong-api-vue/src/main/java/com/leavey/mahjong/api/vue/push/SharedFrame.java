@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.push;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 编码好的 SSE 帧，只创建一次，发送给同一局牌的全部订阅者
+ * <p>
+ * {@link SseEmitter.SseEventBuilder#build()} 每次调用都会修改构造器的状态，不能重复发送，这里直接返回构造好的内容
+ *
+ * @author Leavey
+ */
+final class SharedFrame implements SseEmitter.SseEventBuilder {
+    private final long version;
+    private final Set<DataWithMediaType> items;
+
+    /**
+     * @param version 牌局状态的版本，作为事件id
+     * @param name    事件名称
+     * @param json    事件内容，JSON 中不能有换行
+     */
+    SharedFrame(long version, String name, byte[] json) {
+        this.version = version;
+        Set<DataWithMediaType> items = new LinkedHashSet<>(4);
+        items.add(new DataWithMediaType("id:" + version + "\nevent:" + name + "\ndata:", MediaType.TEXT_PLAIN));
+        items.add(new DataWithMediaType(json, MediaType.APPLICATION_JSON));
+        items.add(new DataWithMediaType("\n\n", MediaType.TEXT_PLAIN));
+        this.items = Collections.unmodifiableSet(items);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    @Override
+    public Set<DataWithMediaType> build() {
+        return items;
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder id(String id) {
+        throw new UnsupportedOperationException("帧已编码，不可修改");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder name(String eventName) {
+        throw new UnsupportedOperationException("帧已编码，不可修改");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder reconnectTime(long reconnectTimeMillis) {
+        throw new UnsupportedOperationException("帧已编码，不可修改");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder comment(String comment) {
+        throw new UnsupportedOperationException("帧已编码，不可修改");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object) {
+        throw new UnsupportedOperationException("帧已编码，不可修改");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object, MediaType mediaType) {
+        throw new UnsupportedOperationException("帧已编码，不可修改");
+    }
+}
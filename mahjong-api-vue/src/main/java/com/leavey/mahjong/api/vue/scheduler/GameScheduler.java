@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.scheduler;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 牌局调度器
+ * <p>
+ * 牌局按id分片到固定数量的单线程事件循环上，同一局牌的请求总在同一个线程中按到达顺序依次执行，
+ * 一次请求中的任务不会与同一局牌的其他请求交错，但调度器只负责排序，不负责原子性：
+ * 连续的多个操作（例如开杠后自动摸牌）需要通过 {@code GameFactory.play(long, List)} 一次提交。线程数与牌局数量无关，
+ * 每局牌的信箱就是所在事件循环队列中属于它的任务，不需要为每局牌创建线程
+ *
+ * @author Leavey
+ */
+@Component
+public class GameScheduler implements DisposableBean {
+    private final ExecutorService[] loops;
+
+    /**
+     * @param threads 事件循环数量，不大于 0 时为 CPU 核数
+     */
+    public GameScheduler(@Value("${mahjong.scheduler.threads:0}") int threads) {
+        int amount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.loops = new ExecutorService[amount];
+        for (int i = 0; i < amount; i++) {
+            String name = "mahjong-game-" + i;
+            loops[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, name));
+        }
+    }
+
+    /**
+     * 在牌局所在的线程中执行任务
+     *
+     * @param gameId 牌局id
+     * @param task   任务，执行期间同一局牌的其他任务不会开始
+     * @param <T>    结果类型
+     * @return 任务结果
+     */
+    public <T> CompletableFuture<T> submit(long gameId, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, loops[Math.floorMod(Long.hashCode(gameId), loops.length)]);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ExecutorService loop : loops) {
+            loop.shutdown();
+        }
+        for (ExecutorService loop : loops) {
+            loop.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
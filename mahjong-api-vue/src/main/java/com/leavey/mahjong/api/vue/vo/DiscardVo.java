@@ -0,0 +1,43 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 打出一张牌之后的牌效
+ *
+ * @author Leavey
+ */
+@Data
+public class DiscardVo {
+    private TileVo tile;
+    /**
+     * 打出后还需几步胡牌
+     */
+    private int step;
+    /**
+     * 打出后可进的牌
+     */
+    private List<TileVo> accepts;
+    /**
+     * 可进的牌除去自己手中之后剩余的张数
+     */
+    private int acceptAmount;
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一手牌的牌效
+ *
+ * @author Leavey
+ */
+@Data
+public class EfficiencyVo {
+    /**
+     * 还需几步胡牌，0 为已经胡牌；需要打牌时为打出最优的牌之后的步数
+     */
+    private int step;
+    /**
+     * 不需要打牌时可进的牌
+     */
+    private List<TileVo> accepts;
+    /**
+     * 需要打牌时每种打法的分析，最优的在前
+     */
+    private List<DiscardVo> discards;
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.vo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 不可修改的选择区，创建时编码为 JSON，序列化时直接写出编码好的内容
+ * <p>
+ * 用于内容固定的选择区，全部响应共享同一个实例
+ *
+ * @author Leavey
+ */
+class FrozenSelectors extends PlaySelectors implements JsonSerializable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String json;
+
+    FrozenSelectors(Selectors source) {
+        this.character = List.copyOf(source.getCharacter());
+        this.dot = List.copyOf(source.getDot());
+        this.bamboo = List.copyOf(source.getBamboo());
+        this.wind = List.copyOf(source.getWind());
+        this.dragon = List.copyOf(source.getDragon());
+        try {
+            this.json = MAPPER.writeValueAsString(source);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("选择区编码失败", e);
+        }
+    }
+
+    @Override
+    public void setCharacter(List<TileVo> character) {
+        throw new UnsupportedOperationException("选择区不可修改");
+    }
+
+    @Override
+    public void setDot(List<TileVo> dot) {
+        throw new UnsupportedOperationException("选择区不可修改");
+    }
+
+    @Override
+    public void setBamboo(List<TileVo> bamboo) {
+        throw new UnsupportedOperationException("选择区不可修改");
+    }
+
+    @Override
+    public void setWind(List<TileVo> wind) {
+        throw new UnsupportedOperationException("选择区不可修改");
+    }
+
+    @Override
+    public void setDragon(List<TileVo> dragon) {
+        throw new UnsupportedOperationException("选择区不可修改");
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+}
@@ -17,7 +17,9 @@
 package com.leavey.mahjong.api.vue.vo;
 
 import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.analysis.HandAnalysis;
 import com.leavey.mahjong.engine.bean.*;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
 import lombok.Data;
 
 import java.util.*;
@@ -30,6 +32,14 @@ import java.util.stream.IntStream;
 @Data
 public class Overview {
     private long gameId;
+    /**
+     * 状态版本，客户端可以在下一次请求中带上，只获取变化的部分，见 {@link OverviewDelta}
+     */
+    private long version;
+    /**
+     * 规则名称，见 {@link RuleRegistry}，不是内置规则时为 null
+     */
+    private String rule;
     private List<PlayerVo> players;
     private EatGroups eatGroups;
     private Selectors selectors;
@@ -39,6 +49,8 @@ public class Overview {
     public static Overview of(Game game) {
         Overview ov = new Overview();
         ov.gameId = game.getId();
+        ov.version = game.getVersion();
+        ov.rule = RuleRegistry.idOf(game.getRule());
         List<PlayerVo> players = new ArrayList<>();
         for (int i = 0; i < game.getPlayers().length; i++) {
             players.add(of(i, game));
@@ -46,8 +58,8 @@ public class Overview {
         ov.players = players;
         ov.eatGroups = eatGroups(game);
         ov.selectors = Selectors.getPrevKeyTileSelectors(game);
-        ov.drawSelectors = Selectors.fullSelectors();
-        ov.playSelectors = Selectors.fullSelectors();
+        ov.drawSelectors = Selectors.fullSelectors(game.getTemplate());
+        ov.playSelectors = ov.drawSelectors;
         return ov;
     }
 
@@ -78,6 +90,15 @@ public class Overview {
         vo.setHandTiles(handTiles);
 
         vo.setPlayTiles(player.getPlayTiles().stream().map(TileVo::view).collect(Collectors.toList()));
+
+        //手牌分析由引擎在每次操作后增量维护，这里直接读取
+        HandAnalysis analysis = player.getAnalysis();
+        if (analysis.isKnown()) {
+            vo.setShanten(analysis.getShanten());
+            vo.setWaits(analysis.getWaits().stream().map(TileVo::view).collect(Collectors.toList()));
+        } else {
+            vo.setWaits(Collections.emptyList());
+        }
         return vo;
     }
 }
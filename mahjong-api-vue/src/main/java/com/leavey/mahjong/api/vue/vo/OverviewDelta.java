@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 相对于客户端已有版本的牌局变化
+ * <p>
+ * 只包含发生变化的座位和字段，没有变化的字段为 null，不会输出。服务端找不到客户端的版本时（太旧或者服务重启过），
+ * {@link #full} 为 true，此时 {@link #overview} 为完整的牌局，其余字段为空
+ *
+ * @author Leavey
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OverviewDelta {
+    private long gameId;
+    /**
+     * 客户端已有的版本
+     */
+    private long since;
+    /**
+     * 当前版本
+     */
+    private long version;
+    private boolean full;
+    private Overview overview;
+    /**
+     * 发生变化的座位
+     */
+    private List<PlayerDelta> players;
+    private EatGroups eatGroups;
+    private Selectors selectors;
+    private Selectors drawSelectors;
+    private Selectors playSelectors;
+
+    /**
+     * 计算两个版本之间的变化
+     *
+     * @param since   客户端已有的版本
+     * @param base    客户端已有的状态，找不到时为 null
+     * @param current 当前状态
+     * @return 变化
+     */
+    public static OverviewDelta between(long since, Overview base, Overview current) {
+        OverviewDelta delta = new OverviewDelta();
+        delta.gameId = current.getGameId();
+        delta.since = since;
+        delta.version = current.getVersion();
+        if (base == null || base.getPlayers().size() != current.getPlayers().size()) {
+            delta.full = true;
+            delta.overview = current;
+            return delta;
+        }
+        delta.players = new ArrayList<>();
+        for (int i = 0; i < current.getPlayers().size(); i++) {
+            PlayerDelta player = PlayerDelta.between(base.getPlayers().get(i), current.getPlayers().get(i));
+            if (player != null) {
+                delta.players.add(player);
+            }
+        }
+        delta.eatGroups = changed(base.getEatGroups(), current.getEatGroups());
+        delta.selectors = changed(base.getSelectors(), current.getSelectors());
+        delta.drawSelectors = changed(base.getDrawSelectors(), current.getDrawSelectors());
+        delta.playSelectors = changed(base.getPlaySelectors(), current.getPlaySelectors());
+        return delta;
+    }
+
+    private static <T> T changed(T base, T current) {
+        return Objects.equals(base, current) ? null : current;
+    }
+}
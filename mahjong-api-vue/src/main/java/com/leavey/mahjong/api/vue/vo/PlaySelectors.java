@@ -17,9 +17,7 @@
 package com.leavey.mahjong.api.vue.vo;
 
 import com.leavey.mahjong.common.bean.Tile;
-import org.springframework.util.CollectionUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -31,17 +29,7 @@ public class PlaySelectors extends Selectors {
 
     @Override
     public List<Tile> toTiles() {
-        List<TileVo> tiles = new ArrayList<>();
-        if (!CollectionUtils.isEmpty(character)) {
-            tiles.addAll(character);
-        }
-        if (!CollectionUtils.isEmpty(dot)) {
-            tiles.addAll(dot);
-        }
-        if (!CollectionUtils.isEmpty(bamboo)) {
-            tiles.addAll(bamboo);
-        }
         //多次选择就生成几张
-        return tiles.stream().filter(t -> t.getAmount() > 0).flatMap(t -> IntStream.range(0, t.getAmount()).mapToObj(i -> Tile.parseCode(t.getCode()))).collect(Collectors.toList());
+        return selected().stream().filter(t -> t.getAmount() > 0).flatMap(t -> IntStream.range(0, t.getAmount()).mapToObj(i -> Tile.parseCode(t.getCode()))).collect(Collectors.toList());
     }
 }
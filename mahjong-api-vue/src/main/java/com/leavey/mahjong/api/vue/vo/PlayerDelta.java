@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.api.vue.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 一个座位的变化，没有变化的字段为 null
+ *
+ * @author Leavey
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PlayerDelta {
+    private int id;
+    /**
+     * 可进行的操作，变化时为全部操作
+     */
+    private List<String> actions;
+    /**
+     * 手牌，变化时为全部手牌，同时给出向听数和听的牌，此时没有向听数表示手牌未知
+     */
+    private List<TileVo> handTiles;
+    private Integer shanten;
+    private List<TileVo> waits;
+    /**
+     * 新打出的牌在打出的牌中的起始位置，打出的牌只是追加时为原来的数量，否则为 0 并给出全部打出的牌
+     */
+    private Integer playTilesFrom;
+    /**
+     * 从 {@link #playTilesFrom} 开始的打出的牌
+     */
+    private List<TileVo> playTiles;
+
+    /**
+     * 比较同一个座位的两个状态
+     *
+     * @param base    客户端已有的状态
+     * @param current 当前状态
+     * @return 变化，没有变化时返回 null
+     */
+    public static PlayerDelta between(PlayerVo base, PlayerVo current) {
+        PlayerDelta delta = new PlayerDelta();
+        delta.id = current.getId();
+        boolean changed = false;
+        if (!Objects.equals(base.getActions(), current.getActions())) {
+            delta.actions = current.getActions();
+            changed = true;
+        }
+        if (!Objects.equals(base.getHandTiles(), current.getHandTiles())
+                || !Objects.equals(base.getShanten(), current.getShanten())
+                || !Objects.equals(base.getWaits(), current.getWaits())) {
+            delta.handTiles = current.getHandTiles();
+            delta.shanten = current.getShanten();
+            delta.waits = current.getWaits();
+            changed = true;
+        }
+        List<TileVo> basePlay = base.getPlayTiles();
+        List<TileVo> currentPlay = current.getPlayTiles();
+        if (!Objects.equals(basePlay, currentPlay)) {
+            boolean appended = currentPlay.size() > basePlay.size() && currentPlay.subList(0, basePlay.size()).equals(basePlay);
+            delta.playTilesFrom = appended ? basePlay.size() : 0;
+            delta.playTiles = currentPlay.subList(delta.playTilesFrom, currentPlay.size());
+            changed = true;
+        }
+        return changed ? delta : null;
+    }
+}
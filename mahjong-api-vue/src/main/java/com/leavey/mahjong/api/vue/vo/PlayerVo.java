@@ -29,4 +29,12 @@ public class PlayerVo {
     private List<String> actions;
     private List<TileVo> handTiles;
     private List<TileVo> playTiles;
+    /**
+     * 向听数，-1 为胡牌，0 为听牌，手牌中有未知的暗牌时为 null
+     */
+    private Integer shanten;
+    /**
+     * 听的牌，手牌未知或者没有听牌时为空
+     */
+    private List<TileVo> waits;
 }
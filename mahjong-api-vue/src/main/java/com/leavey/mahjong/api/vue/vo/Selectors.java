@@ -20,10 +20,13 @@ import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.common.bean.Type;
 import com.leavey.mahjong.engine.bean.Game;
 import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
 import lombok.Data;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -35,24 +38,54 @@ import java.util.stream.IntStream;
  */
 @Data
 public class Selectors {
+    /**
+     * 内置规则全部牌的选择区，内容固定，每种规则只创建一次，模板常驻，查询不加锁
+     */
+    private static final Map<RuleTemplate, Selectors> FULL = new ConcurrentHashMap<>();
+    /**
+     * 其他规则全部牌的选择区，模板回收时随之回收
+     */
+    private static final Map<RuleTemplate, Selectors> CUSTOM_FULL = Collections.synchronizedMap(new WeakHashMap<>());
+    /**
+     * 没有牌的选择区
+     */
+    private static final Selectors EMPTY = new FrozenSelectors(of(Collections.emptyList(), TileVo::incrAmount));
+    /**
+     * 只有一张牌的选择区，下标为牌的编码，上一次操作通常只涉及一张牌
+     */
+    private static final Selectors[] SINGLES;
+
+    static {
+        List<Tile> tiles = Arrays.stream(Type.values()).flatMap(type -> IntStream.rangeClosed(1, type.getMaxValue()).mapToObj(val -> new Tile(val, type))).collect(Collectors.toList());
+        SINGLES = new Selectors[tiles.stream().mapToInt(Tile::getCode).max().orElse(0) + 1];
+        for (Tile tile : tiles) {
+            SINGLES[tile.getCode()] = new FrozenSelectors(of(List.of(tile), TileVo::incrAmount));
+        }
+    }
+
     protected List<TileVo> character;
     protected List<TileVo> dot;
     protected List<TileVo> bamboo;
+    protected List<TileVo> wind;
+    protected List<TileVo> dragon;
 
 
     public List<Tile> toTiles() {
+        //多次选择仅一张有效
+        return selected().stream().filter(t -> t.getAmount() > 0).map(TileVo::getCode).map(Tile::parseCode).collect(Collectors.toList());
+    }
+
+    /**
+     * @return 全部分组中的牌
+     */
+    protected List<TileVo> selected() {
         List<TileVo> tiles = new ArrayList<>();
-        if (!CollectionUtils.isEmpty(character)) {
-            tiles.addAll(character);
+        for (List<TileVo> group : Arrays.asList(character, dot, bamboo, wind, dragon)) {
+            if (!CollectionUtils.isEmpty(group)) {
+                tiles.addAll(group);
+            }
         }
-        if (!CollectionUtils.isEmpty(dot)) {
-            tiles.addAll(dot);
-        }
-        if (!CollectionUtils.isEmpty(bamboo)) {
-            tiles.addAll(bamboo);
-        }
-        //多次选择仅一张有效
-        return tiles.stream().filter(t -> t.getAmount() > 0).map(TileVo::getCode).map(Tile::parseCode).collect(Collectors.toList());
+        return tiles;
     }
 
     public static PlaySelectors of(List<Tile> tiles, Function<Tile, TileVo> mapper) {
@@ -61,16 +94,39 @@ public class Selectors {
         selectors.character = tileMap.getOrDefault(Type.CHARACTER, new ArrayList<>()).stream().map(mapper).collect(Collectors.toList());
         selectors.dot = tileMap.getOrDefault(Type.DOT, new ArrayList<>()).stream().map(mapper).collect(Collectors.toList());
         selectors.bamboo = tileMap.getOrDefault(Type.BAMBOO, new ArrayList<>()).stream().map(mapper).collect(Collectors.toList());
+        selectors.wind = tileMap.getOrDefault(Type.WIND, new ArrayList<>()).stream().map(mapper).collect(Collectors.toList());
+        selectors.dragon = tileMap.getOrDefault(Type.DRAGON, new ArrayList<>()).stream().map(mapper).collect(Collectors.toList());
         return selectors;
     }
 
+    /**
+     * 上一次操作涉及的牌，没有牌或只有一张牌时返回共享的不可修改实例
+     *
+     * @param game 牌局
+     * @return 选择区
+     */
     public static Selectors getPrevKeyTileSelectors(Game game) {
-        List<Tile> tiles = Optional.ofNullable(game.getPrevOperation()).map(Operation::getKeyTiles).orElse(new ArrayList<>());
+        List<Tile> tiles = Optional.ofNullable(game.getPrevOperation()).map(Operation::getKeyTiles).orElse(Collections.emptyList());
+        if (tiles.isEmpty()) {
+            return EMPTY;
+        }
+        if (tiles.size() == 1) {
+            int code = tiles.get(0).getCode();
+            if (code >= 0 && code < SINGLES.length && SINGLES[code] != null) {
+                return SINGLES[code];
+            }
+        }
         return Selectors.of(tiles, TileVo::incrAmount);
     }
 
-    public static Selectors fullSelectors() {
-        List<Tile> tiles = Arrays.stream(Type.values()).flatMap(type -> IntStream.rangeClosed(1, type.getMaxValue()).mapToObj(val -> new Tile(val, type))).collect(Collectors.toList());
-        return Selectors.of(tiles, TileVo::incrAmount);
+    /**
+     * 规则中全部牌的选择区
+     *
+     * @param template 规则模板
+     * @return 共享的不可修改实例，序列化时直接写出第一次创建时编码好的 JSON
+     */
+    public static Selectors fullSelectors(RuleTemplate template) {
+        Map<RuleTemplate, Selectors> cache = template.isRegistered() ? FULL : CUSTOM_FULL;
+        return cache.computeIfAbsent(template, t -> new FrozenSelectors(of(Arrays.stream(t.getTileCodes()).mapToObj(Matrix::of).collect(Collectors.toList()), TileVo::incrAmount)));
     }
 }
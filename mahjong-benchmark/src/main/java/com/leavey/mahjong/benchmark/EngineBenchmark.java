@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 引擎的参考基准：分别以单线程和多线程运行 {@link GameReplayBenchmark}，汇总每秒局数、每秒操作数与每个操作分配的内存
+ * <p>
+ * 参数以 {@code --名称=值} 的形式指定：{@code corpus} 复盘文件，{@code games} 牌局数量，{@code threads} 线程数，逗号分隔，
+ * 默认为 1 与处理器数量，{@code quick} 缩短预热与测量时间，只用于检查能否运行。
+ * 需要 JMH 的完整输出时使用 {@code java -cp benchmarks.jar org.openjdk.jmh.Main}
+ *
+ * @author Leavey
+ */
+public class EngineBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        String corpus = "";
+        String games = "500";
+        List<Integer> threads = new ArrayList<>(List.of(1, Runtime.getRuntime().availableProcessors()));
+        boolean quick = false;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            String name = split < 0 ? arg : arg.substring(0, split);
+            String value = split < 0 ? "true" : arg.substring(split + 1);
+            switch (name) {
+                case "--corpus":
+                    corpus = value;
+                    break;
+                case "--games":
+                    games = value;
+                    break;
+                case "--threads":
+                    threads.clear();
+                    for (String thread : value.split(",")) {
+                        threads.add(Integer.parseInt(thread.trim()));
+                    }
+                    break;
+                case "--quick":
+                    quick = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的参数：" + arg);
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (int thread : threads.stream().distinct().toArray(Integer[]::new)) {
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .include(GameReplayBenchmark.class.getName() + ".replay")
+                    .param("corpus", corpus)
+                    .param("games", games)
+                    .threads(thread)
+                    .addProfiler(GCProfiler.class)
+                    .verbosity(VerboseMode.SILENT);
+            if (quick) {
+                builder.forks(1).warmupIterations(1).warmupTime(TimeValue.seconds(1))
+                        .measurementIterations(1).measurementTime(TimeValue.seconds(2));
+            }
+            for (RunResult result : new Runner(builder.build()).run()) {
+                Result<?> primary = result.getPrimaryResult();
+                double gamesPerSecond = primary.getScore();
+                double actionsPerSecond = secondary(result, "actions");
+                double bytesPerGame = secondary(result, "gc.alloc.rate.norm");
+                double bytesPerAction = actionsPerSecond > 0 ? bytesPerGame * gamesPerSecond / actionsPerSecond : Double.NaN;
+                lines.add(String.format("%8d %14.1f %14.1f %16.0f %16.0f", thread, gamesPerSecond, actionsPerSecond, bytesPerGame, bytesPerAction));
+                if (!Double.isNaN(primary.getScoreError())) {
+                    lines.add(String.format("%8s %14s", "", String.format("± %.1f", primary.getScoreError())));
+                }
+            }
+        }
+        System.out.printf("%8s %14s %14s %16s %16s%n", "线程", "局/秒", "操作/秒", "字节/局", "字节/操作");
+        lines.forEach(System.out::println);
+    }
+
+    /**
+     * @return 辅助结果的得分，分析器不可用时为 NaN
+     */
+    private static double secondary(RunResult result, String name) {
+        Result<?> secondary = result.getSecondaryResults().get(name);
+        if (secondary == null) {
+            //分析器的结果名称以中点开头
+            secondary = result.getSecondaryResults().get("\u00b7" + name);
+        }
+        return secondary == null ? Double.NaN : secondary.getScore();
+    }
+}
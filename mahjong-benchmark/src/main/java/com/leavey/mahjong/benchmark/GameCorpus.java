@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.benchmark;
+
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.persist.GameJournal;
+import com.leavey.mahjong.engine.replay.ReplayReader;
+import com.leavey.mahjong.engine.replay.ReplayWriter;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
+import com.leavey.mahjong.engine.simulator.GreedyPolicy;
+import com.leavey.mahjong.engine.simulator.RandomPolicy;
+import com.leavey.mahjong.engine.simulator.SeatPolicy;
+import com.leavey.mahjong.engine.simulator.Simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 用于重放的牌局集合
+ * <p>
+ * 从复盘文件读取，只保留记录了牌墙种子的牌局，重放时按种子发牌后依次执行记录的操作。
+ * 规则无法识别的牌局（不是内置规则，也无法按类名创建）跳过，跳过的数量与规则名称打印到标准错误并可以通过 {@link #getSkipped()} 查询。
+ * 没有指定复盘文件时，用模拟器按固定种子生成长沙麻将的牌局，先写入临时的复盘文件再读回，与读取真实记录走同一条路径
+ *
+ * @author Leavey
+ */
+public class GameCorpus {
+    private final List<RecordedGame> games;
+    private final long actions;
+    private final int skipped;
+
+    private GameCorpus(List<RecordedGame> games, int skipped) {
+        if (games.isEmpty()) {
+            throw new IllegalStateException("复盘文件中没有可以重放的牌局，规则无法识别而跳过的牌局：" + skipped);
+        }
+        this.games = Collections.unmodifiableList(games);
+        this.skipped = skipped;
+        this.actions = games.stream().mapToLong(game -> game.getRequests().length).sum();
+    }
+
+    /**
+     * @param path  复盘文件，为 null 时生成
+     * @param games 生成的牌局数量，读取复盘文件时为读取的最大数量
+     * @param seed  生成牌局的随机种子
+     * @return 牌局集合
+     * @throws IOException 读写复盘文件失败
+     */
+    public static GameCorpus load(Path path, int games, long seed) throws IOException {
+        if (path != null) {
+            return read(path, games);
+        }
+        Path file = Files.createTempFile("mahjong-corpus", ".replay");
+        try {
+            record(file, games, seed);
+            return read(file, games);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 模拟长沙麻将的对局并写入复盘文件，一个座位使用贪心策略，其他座位随机打牌，与 {@code Simulator} 相同
+     */
+    private static void record(Path file, int games, long seed) throws IOException {
+        Rule rule = RuleRegistry.get(RuleRegistry.DEFAULT);
+        SeatPolicy greedy = new GreedyPolicy();
+        SeatPolicy random = new RandomPolicy();
+        SeatPolicy[] policies = {greedy, random, random, random};
+        try (ReplayWriter writer = new ReplayWriter(file)) {
+            for (int i = 0; i < games; i++) {
+                Simulation simulation = new Simulation(i, rule, policies, seed + i);
+                try {
+                    simulation.run(i % policies.length);
+                } catch (RuntimeException e) {
+                    //模拟失败的牌局不记录，同一个种子每次都会失败，牌局集合仍然是确定的
+                    continue;
+                }
+                writer.write(simulation.getGame());
+            }
+        }
+    }
+
+    private static GameCorpus read(Path path, int limit) throws IOException {
+        List<RecordedGame> games = new ArrayList<>();
+        Set<String> unknownRules = new LinkedHashSet<>();
+        int skipped = 0;
+        try (ReplayReader reader = new ReplayReader(path)) {
+            while (games.size() < limit && reader.nextGame()) {
+                if (!reader.hasSeed()) {
+                    //没有牌墙的牌局摸牌依赖手工录入，无法按记录重放
+                    continue;
+                }
+                String ruleName = reader.getRuleName();
+                Rule rule;
+                try {
+                    rule = GameJournal.newRule(ruleName);
+                } catch (IllegalStateException e) {
+                    skipped++;
+                    unknownRules.add(ruleName);
+                    continue;
+                }
+                ActionRequest[] requests = new ActionRequest[reader.getOperationAmount()];
+                for (int i = 0; reader.nextOperation(); i++) {
+                    requests[i] = reader.toActionRequest();
+                }
+                games.add(new RecordedGame(rule, reader.getSeed(), requests));
+            }
+        }
+        if (skipped > 0) {
+            System.err.printf("跳过 %d 局规则无法识别的牌局：%s%n", skipped, unknownRules);
+        }
+        return new GameCorpus(games, skipped);
+    }
+
+    public List<RecordedGame> getGames() {
+        return games;
+    }
+
+    /**
+     * @return 全部牌局的操作总数
+     */
+    public long getActions() {
+        return actions;
+    }
+
+    /**
+     * @return 规则无法识别而跳过的牌局数量
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return 每局平均操作数
+     */
+    public double actionsPerGame() {
+        return (double) actions / games.size();
+    }
+
+    /**
+     * 一局记录的牌
+     */
+    public static final class RecordedGame {
+        private final Rule rule;
+        private final long seed;
+        private final ActionRequest[] requests;
+
+        RecordedGame(Rule rule, long seed, ActionRequest[] requests) {
+            this.rule = rule;
+            this.seed = seed;
+            this.requests = requests;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public ActionRequest[] getRequests() {
+            return requests;
+        }
+    }
+}
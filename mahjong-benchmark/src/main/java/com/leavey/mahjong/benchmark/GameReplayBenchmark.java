@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.benchmark;
+
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 整局牌的重放基准
+ * <p>
+ * 每次调用按种子发牌后通过 {@link GameFactory#play(long, ActionRequest)} 重放一局记录的牌，
+ * 覆盖执行器校验、深拷贝、历史状态的链接，每一步之后再为所有座位计算可执行的操作，与接口返回牌局时的开销一致。
+ * 主结果为每秒重放的局数，辅助计数 {@code actions} 为每秒执行的操作数，配合 GC 分析器得到每局分配的内存
+ *
+ * @author Leavey
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class GameReplayBenchmark {
+    /**
+     * 重放的牌局id，与正常创建的牌局id（毫秒时间戳）不重叠
+     */
+    private static final AtomicLong IDS = new AtomicLong(1L << 62);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    /**
+     * 复盘文件，为空时生成
+     */
+    @Param("")
+    public String corpus;
+    /**
+     * 牌局数量
+     */
+    @Param("500")
+    public int games;
+    /**
+     * 生成牌局的随机种子
+     */
+    @Param("1")
+    public long seed;
+
+    private List<GameCorpus.RecordedGame> recorded;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        recorded = GameCorpus.load(corpus.isEmpty() ? null : Path.of(corpus), games, seed).getGames();
+    }
+
+    /**
+     * 每个线程从不同的位置开始依次重放
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup(Level.Trial)
+        public void start() {
+            next = THREADS.getAndIncrement() * 7919;
+        }
+
+        GameCorpus.RecordedGame next(List<GameCorpus.RecordedGame> games) {
+            next = (next + 1) % games.size();
+            return games.get(next);
+        }
+    }
+
+    /**
+     * 每秒执行的操作数
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long actions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            actions = 0;
+        }
+    }
+
+    @Benchmark
+    public Game replay(Cursor cursor, Counters counters, Blackhole blackhole) {
+        GameCorpus.RecordedGame recorded = cursor.next(this.recorded);
+        long id = IDS.incrementAndGet();
+        Game game = new Game(id, recorded.getRule());
+        game.deal(recorded.getSeed());
+        GameFactory.restore(List.of(game));
+        try {
+            for (ActionRequest request : recorded.getRequests()) {
+                game = GameFactory.play(id, request);
+                for (int seat = 0; seat < game.getPlayerAmount(); seat++) {
+                    blackhole.consume(game.allowActions(seat));
+                }
+            }
+        } finally {
+            GameFactory.remove(id);
+        }
+        counters.actions += recorded.getRequests().length;
+        return game;
+    }
+}
@@ -129,8 +129,6 @@ public class EfficiencyUtils {
                 tiles1.addAll(entry.getTiles().keySet());
                 return tiles1;
             });
-            System.out.println("还需" + step + "步胡牌，缺" + groups + "句话，缺" + leaders + "对将");
-            System.out.println(entry);
         }
         return stepMap;
     }
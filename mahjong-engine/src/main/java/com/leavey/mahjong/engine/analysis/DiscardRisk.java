@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.analysis;
+
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * 打牌点炮风险
+ * <p>
+ * 对每个对手估计两件事：是否已经听牌，以及听牌时听每张牌的可能性，合并后得到打出每张牌的点炮概率：
+ * <pre>
+ * 风险(x) = 1 - ∏ (1 - 听牌概率(对手) × 听 x 的概率(对手))
+ * </pre>
+ * 听牌概率由对手吃碰杠的数量和打出的牌的数量估计。听 x 的概率按听牌的形状估计：两面或边张、嵌张、对倒、单钓将，
+ * 每种形状需要对手手中持有的牌由 {@link TileInference} 给出，打出过的牌及相邻的牌权重更低，全部可见的牌不会出现在对手手中。
+ * 单钓只能钓规则允许做将的牌。
+ * <p>
+ * 每次计算对全部牌一次完成，按牌的编码存放在数组中，不创建对象
+ *
+ * @author Leavey
+ */
+public class DiscardRisk {
+    /**
+     * 听牌概率的逻辑回归系数：常数项、每个吃碰杠、每张打出的牌
+     */
+    private static final double TENPAI_BIAS = -3.0;
+    private static final double TENPAI_MELD = 0.9;
+    private static final double TENPAI_DISCARD = 0.15;
+    /**
+     * 各种听牌形状的相对频率
+     */
+    private static final double SIDE_WAIT = 0.45;
+    private static final double CLOSED_WAIT = 0.25;
+    private static final double PAIR_WAIT = 0.3;
+    private static final double SINGLE_WAIT = 0.2;
+    /**
+     * 听牌时平均听的牌的种类
+     */
+    private static final double WAIT_KINDS = 2;
+
+    private final TileInference inference;
+    private final RuleTemplate template;
+    private final int[] codes;
+    /**
+     * 打出每张牌的点炮概率，下标为牌的编码
+     */
+    private final double[] risks = new double[Matrix.CODE_BOUND];
+    private final double[] tenpai;
+    private final double[] holds = new double[Matrix.CODE_BOUND];
+    private final double[] waits = new double[Matrix.CODE_BOUND];
+
+    public DiscardRisk(TileInference inference) {
+        this.inference = inference;
+        this.template = inference.getGame().getTemplate();
+        this.codes = template.getTileCodes();
+        this.tenpai = new double[inference.getGame().getPlayerAmount()];
+    }
+
+    /**
+     * 按牌局的最新状态重新计算
+     *
+     * @return 打出每张牌的点炮概率，下标为牌的编码，调用方不可修改
+     */
+    public double[] evaluate() {
+        inference.update();
+        //先记录每张牌不点炮的概率
+        Arrays.fill(risks, 1);
+        for (int seat = 0; seat < tenpai.length; seat++) {
+            if (seat == inference.getViewer()) {
+                tenpai[seat] = 0;
+                continue;
+            }
+            tenpai[seat] = estimateTenpai(seat);
+            double total = waits(seat);
+            if (total <= 0) {
+                continue;
+            }
+            double scale = WAIT_KINDS / total;
+            for (int code : codes) {
+                risks[code] *= 1 - tenpai[seat] * Math.min(waits[code] * scale, 1);
+            }
+        }
+        for (int code : codes) {
+            risks[code] = 1 - risks[code];
+        }
+        return risks;
+    }
+
+    /**
+     * 对手已经听牌的概率
+     */
+    private double estimateTenpai(int seat) {
+        if (inference.getHidden(seat) <= 1) {
+            //只剩一张暗牌，一定在单钓
+            return 1;
+        }
+        double z = TENPAI_BIAS + TENPAI_MELD * inference.getMeldAmount(seat) + TENPAI_DISCARD * inference.getDiscardAmount(seat);
+        return 1 / (1 + Math.exp(-z));
+    }
+
+    /**
+     * 计算对手听每张牌的相对可能性，结果在 {@link #waits} 中
+     *
+     * @return 全部牌的可能性之和
+     */
+    private double waits(int seat) {
+        for (int code : codes) {
+            holds[code] = inference.probability(seat, code);
+        }
+        double total = 0;
+        for (int code : codes) {
+            //每种形状不成立的概率相乘
+            double miss = 1 - PAIR_WAIT * inference.pairProbability(seat, code);
+            if (template.canLeader(code)) {
+                miss *= 1 - SINGLE_WAIT * holds[code];
+            }
+            if (Matrix.of(code).getType().isAllowDiffGroup()) {
+                int value = code % 10;
+                if (value >= 3) {
+                    miss *= 1 - SIDE_WAIT * holds[code - 2] * holds[code - 1];
+                }
+                if (value <= 7) {
+                    miss *= 1 - SIDE_WAIT * holds[code + 1] * holds[code + 2];
+                }
+                if (value >= 2 && value <= 8) {
+                    miss *= 1 - CLOSED_WAIT * holds[code - 1] * holds[code + 1];
+                }
+            }
+            waits[code] = 1 - miss;
+            total += waits[code];
+        }
+        return total;
+    }
+
+    /**
+     * @param code 牌的编码
+     * @return 最近一次计算时打出该牌的点炮概率
+     */
+    public double risk(int code) {
+        return risks[code];
+    }
+
+    /**
+     * @param seat 座位
+     * @return 最近一次计算时该座位已经听牌的概率，观察者自身为 0
+     */
+    public double tenpai(int seat) {
+        return tenpai[seat];
+    }
+
+    public TileInference getInference() {
+        return inference;
+    }
+}
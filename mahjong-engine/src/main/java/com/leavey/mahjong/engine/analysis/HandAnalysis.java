@@ -0,0 +1,405 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.analysis;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.bean.DeepCopy;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 手牌分析，向听数与听的牌
+ * <p>
+ * 手牌的每次增减只记录计数，并标记所在的门。手牌全部已知时由牌局在每次操作后调用 {@link #refresh(RuleTemplate, boolean)}，
+ * 只重新拆分有变化的门，再把各门的拆分结果合并成向听数，读取结果为 O(1)。手牌存在未知的暗牌时不做任何计算
+ * <p>
+ * 向听数按 句话 + 搭子 + 将 计算：2 × (需要的句话数 - 句话) - 搭子 - 将，搭子不超过还缺的句话数。
+ * 将必须是规则允许的将牌，没有将时如果剩下的孤张中也没有可以做将的牌，需要多摸一张，向听数加 1。
+ * -1 表示已经胡牌，0 表示听牌
+ *
+ * @author Leavey
+ */
+public class HandAnalysis implements DeepCopy<HandAnalysis> {
+    /**
+     * 手牌最多组成的句话数量
+     */
+    private static final int MAX_GROUPS = 4;
+    private static final int WIDTH = MAX_GROUPS + 1;
+    /**
+     * 将的状态：没有将，也没有可以做将的孤张
+     */
+    private static final int NO_PAIR = 0;
+    /**
+     * 将的状态：没有将，但有可以做将的孤张
+     */
+    private static final int PAIR_SEED = 1;
+    /**
+     * 将的状态：已经有将
+     */
+    private static final int PAIR = 2;
+    private static final Type[] TYPES = Type.values();
+    /**
+     * 全部门都需要重新拆分
+     */
+    private static final int ALL = (1 << TYPES.length) - 1;
+    /**
+     * 一门牌的拆分结果只与该门每种牌的数量及可以做将的牌有关，全局共享。
+     * 键为 是否能组成顺子（1 位）+ 将牌掩码（9 位）+ 每种牌数量的 5 进制编码（21 位），键的数量有限，不需要淘汰
+     */
+    private static final Map<Integer, int[]> SPLITS = new ConcurrentHashMap<>();
+
+    /**
+     * 手牌，下标为牌的编码
+     */
+    private final int[] counts;
+    /**
+     * 每门牌的拆分结果，见 {@link #split(RuleTemplate, Type)}，不可修改，可以共享
+     */
+    private final int[][] blocks;
+    /**
+     * 每门牌的数量
+     */
+    private final int[] typeSizes;
+    /**
+     * 需要重新拆分的门，第 n 位对应 {@link Type} 的第 n 个
+     */
+    private int dirty;
+    private int size;
+    private boolean known;
+    private int shanten;
+    private List<Tile> waits;
+
+    public HandAnalysis() {
+        this.counts = new int[Matrix.CODE_BOUND];
+        this.blocks = new int[TYPES.length][];
+        this.typeSizes = new int[TYPES.length];
+        this.dirty = ALL;
+        this.waits = Collections.emptyList();
+    }
+
+    private HandAnalysis(HandAnalysis source) {
+        this.counts = source.counts.clone();
+        this.blocks = source.blocks.clone();
+        this.typeSizes = source.typeSizes.clone();
+        this.dirty = source.dirty;
+        this.size = source.size;
+        this.known = source.known;
+        this.shanten = source.shanten;
+        //听的牌不可修改，可以共享
+        this.waits = source.waits;
+    }
+
+    @Override
+    public HandAnalysis deepCopy() {
+        return new HandAnalysis(this);
+    }
+
+    /**
+     * 手牌增加一张牌
+     *
+     * @param tile 牌
+     */
+    public void add(Tile tile) {
+        int type = tile.getType().ordinal();
+        counts[tile.getCode()]++;
+        typeSizes[type]++;
+        size++;
+        dirty |= 1 << type;
+    }
+
+    /**
+     * 手牌减少一张牌
+     *
+     * @param tile 牌
+     */
+    public void remove(Tile tile) {
+        int type = tile.getType().ordinal();
+        counts[tile.getCode()]--;
+        typeSizes[type]--;
+        size--;
+        dirty |= 1 << type;
+    }
+
+    /**
+     * 更新分析结果，只重新拆分有变化的门
+     *
+     * @param template 规则模板
+     * @param known    手牌是否全部已知，未知时不做计算
+     */
+    public void refresh(RuleTemplate template, boolean known) {
+        if (!known) {
+            this.known = false;
+            return;
+        }
+        if (this.known && dirty == 0) {
+            return;
+        }
+        for (int i = 0; i < TYPES.length; i++) {
+            if ((dirty & (1 << i)) != 0) {
+                blocks[i] = split(template, TYPES[i]);
+            }
+        }
+        dirty = 0;
+        this.known = true;
+        this.shanten = combine(size / 3);
+        this.waits = Collections.emptyList();
+        if (size % 3 == 1 && shanten == 0) {
+            this.waits = waits(template);
+            if (waits.isEmpty()) {
+                //拆分上听牌了，但是缺的将不是规则允许的将牌，或者听的牌已经全部在手中
+                this.shanten = 1;
+            }
+        }
+    }
+
+    /**
+     * 手牌是否全部已知，未知时没有分析结果
+     *
+     * @return /
+     */
+    public boolean isKnown() {
+        return known;
+    }
+
+    /**
+     * 向听数，-1 表示已经胡牌，0 表示听牌
+     *
+     * @return 向听数，手牌未知时无意义
+     */
+    public int getShanten() {
+        return shanten;
+    }
+
+    /**
+     * 听的牌，仅在听牌时存在
+     *
+     * @return 不可修改的共享牌对象
+     */
+    public List<Tile> getWaits() {
+        return waits;
+    }
+
+    private List<Tile> waits(RuleTemplate template) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (template.getPoolAmount(code) <= counts[code] || !near(code)) {
+                continue;
+            }
+            counts[code]++;
+            if (template.getWinTable().isComplete(counts)) {
+                tiles.add(Matrix.of(code));
+            }
+            counts[code]--;
+        }
+        return Collections.unmodifiableList(tiles);
+    }
+
+    /**
+     * 能胡的牌一定与手中某张同门的牌相差不超过 2
+     *
+     * @param code 牌的编码
+     * @return /
+     */
+    private boolean near(int code) {
+        int value = code % 10;
+        for (int other = Math.max(code - 2, code - value + 1); other <= code + 2 && other % 10 != 0; other++) {
+            if (counts[other] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 合并各门的拆分结果
+     *
+     * @param need 需要的句话数
+     * @return 向听数
+     */
+    private int combine(int need) {
+        //[将的状态 × 5 + 句话数] = 最多的搭子数
+        int[] best = new int[3 * WIDTH];
+        int[] next = new int[3 * WIDTH];
+        Arrays.fill(best, -1);
+        best[0] = 0;
+        for (int type = 0; type < blocks.length; type++) {
+            if (typeSizes[type] == 0) {
+                //没有牌的门不影响结果
+                continue;
+            }
+            Arrays.fill(next, -1);
+            for (int a = 0; a < best.length; a++) {
+                if (best[a] < 0) {
+                    continue;
+                }
+                for (int entry : blocks[type]) {
+                    int pair = entry >>> 16;
+                    if (a / WIDTH == PAIR && pair == PAIR) {
+                        continue;
+                    }
+                    int index = Math.max(a / WIDTH, pair) * WIDTH + Math.min(a % WIDTH + ((entry >>> 8) & 0xFF), MAX_GROUPS);
+                    next[index] = Math.max(next[index], Math.min(best[a] + (entry & 0xFF), MAX_GROUPS));
+                }
+            }
+            int[] swap = best;
+            best = next;
+            next = swap;
+        }
+        int result = Integer.MAX_VALUE;
+        for (int index = 0; index < best.length; index++) {
+            if (best[index] < 0) {
+                continue;
+            }
+            int groups = Math.min(index % WIDTH, need);
+            int partial = Math.min(best[index], need - groups);
+            //有将减 1，有可以做将的孤张不变，都没有加 1
+            result = Math.min(result, 2 * (need - groups) - partial - (index / WIDTH - PAIR_SEED));
+        }
+        return result;
+    }
+
+    /**
+     * 拆分一门牌
+     * <p>
+     * 结果为若干个 将的状态 &lt;&lt; 16 | 句话数 &lt;&lt; 8 | 搭子数，已经去掉了被其他拆法完全覆盖的拆法
+     *
+     * @param template 规则模板
+     * @param type     门
+     * @return 拆分结果
+     */
+    private int[] split(RuleTemplate template, Type type) {
+        int base = type.getBase();
+        int key = 0;
+        int leaders = 0;
+        for (int value = type.getMaxValue(); value >= 1; value--) {
+            key = key * 5 + counts[base + value];
+            if (template.canLeader(base + value)) {
+                leaders |= 1 << (value - 1);
+            }
+        }
+        key |= leaders << 21;
+        if (type.isAllowDiffGroup()) {
+            key |= 1 << 30;
+        }
+        int[] cached = SPLITS.get(key);
+        if (cached == null) {
+            //[将的状态 × 5 + 句话数] = 最多的搭子数
+            int[] best = new int[3 * WIDTH];
+            Arrays.fill(best, -1);
+            int[] tiles = new int[type.getMaxValue()];
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = counts[base + i + 1];
+            }
+            search(tiles, 0, 0, 0, NO_PAIR, type.isAllowDiffGroup(), leaders, best);
+            cached = compact(best);
+            SPLITS.putIfAbsent(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * 去掉被覆盖的拆法：将的状态不比它好，句话不比它多，句话加搭子也不比它多
+     */
+    private static int[] compact(int[] best) {
+        int[] entries = new int[best.length];
+        int amount = 0;
+        for (int index = 0; index < best.length; index++) {
+            if (best[index] < 0) {
+                continue;
+            }
+            int pair = index / WIDTH;
+            int groups = index % WIDTH;
+            boolean covered = false;
+            for (int other = 0; other < best.length && !covered; other++) {
+                int otherPair = other / WIDTH;
+                int otherGroups = other % WIDTH;
+                covered = other != index && best[other] >= 0
+                        && (otherPair == pair || (pair == NO_PAIR && otherPair == PAIR_SEED))
+                        && otherGroups >= groups && otherGroups + best[other] >= groups + best[index];
+            }
+            if (!covered) {
+                entries[amount++] = pair << 16 | groups << 8 | best[index];
+            }
+        }
+        return Arrays.copyOf(entries, amount);
+    }
+
+    /**
+     * 从最小的牌开始，依次尝试一坎、一句话、将、对子、两面或边张、嵌张，或者作为孤张
+     */
+    private static void search(int[] tiles, int from, int groups, int partials, int pair, boolean sequence, int leaders, int[] block) {
+        int i = from;
+        while (i < tiles.length && tiles[i] == 0) {
+            i++;
+        }
+        if (i == tiles.length) {
+            int index = pair * WIDTH + Math.min(groups, MAX_GROUPS);
+            block[index] = Math.max(block[index], Math.min(partials, MAX_GROUPS));
+            return;
+        }
+        boolean more = groups + partials < MAX_GROUPS;
+        if (tiles[i] >= 3) {
+            tiles[i] -= 3;
+            search(tiles, i, groups + 1, partials, pair, sequence, leaders, block);
+            tiles[i] += 3;
+        }
+        if (sequence && i + 2 < tiles.length && tiles[i + 1] > 0 && tiles[i + 2] > 0) {
+            tiles[i]--;
+            tiles[i + 1]--;
+            tiles[i + 2]--;
+            search(tiles, i, groups + 1, partials, pair, sequence, leaders, block);
+            tiles[i]++;
+            tiles[i + 1]++;
+            tiles[i + 2]++;
+        }
+        if (tiles[i] >= 2) {
+            tiles[i] -= 2;
+            if (pair != PAIR && (leaders & (1 << i)) != 0) {
+                search(tiles, i, groups, partials, PAIR, sequence, leaders, block);
+            }
+            if (more) {
+                search(tiles, i, groups, partials + 1, pair, sequence, leaders, block);
+            }
+            tiles[i] += 2;
+        }
+        if (more && sequence && i + 1 < tiles.length && tiles[i + 1] > 0) {
+            tiles[i]--;
+            tiles[i + 1]--;
+            search(tiles, i, groups, partials + 1, pair, sequence, leaders, block);
+            tiles[i]++;
+            tiles[i + 1]++;
+        }
+        if (more && sequence && i + 2 < tiles.length && tiles[i + 2] > 0) {
+            tiles[i]--;
+            tiles[i + 2]--;
+            search(tiles, i, groups, partials + 1, pair, sequence, leaders, block);
+            tiles[i]++;
+            tiles[i + 2]++;
+        }
+        tiles[i]--;
+        search(tiles, i, groups, partials, pair == NO_PAIR && (leaders & (1 << i)) != 0 ? PAIR_SEED : pair, sequence, leaders, block);
+        tiles[i]++;
+    }
+}
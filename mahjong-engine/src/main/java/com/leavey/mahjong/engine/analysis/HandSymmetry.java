@@ -0,0 +1,236 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.analysis;
+
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 手牌在花色对称下的规范形式
+ * <p>
+ * 牌效只与每门牌的形状和规则允许做将的牌有关：万、饼、条三门的将牌和牌池数量相同时可以互换，
+ * 一门牌的将牌和牌池数量关于 5 对称时（如长沙麻将的 258 做将），点数 v 与 10 - v 可以互换。
+ * 因此一手牌最多有 3! × 2³ = 48 种等价的形式，规范形式为其中唯一的一种：每门先取正反两个方向中计数序列较大的一个，
+ * 再按计数序列从大到小排列三门。字牌与花牌保持不变。
+ * <p>
+ * 等价的手牌得到相同的规范形式，以规范形式为键缓存分析结果，命中后通过 {@link Canonical#original(int)} 把结果中的牌还原
+ *
+ * @author Leavey
+ */
+public final class HandSymmetry {
+    /**
+     * 内置规则的模板常驻，查询不加锁
+     */
+    private static final Map<RuleTemplate, HandSymmetry> REGISTERED = new ConcurrentHashMap<>();
+    /**
+     * 其他规则的模板，模板回收时随之回收
+     */
+    private static final Map<RuleTemplate, HandSymmetry> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Type[] SUITS = {Type.CHARACTER, Type.DOT, Type.BAMBOO};
+    private static final int VALUES = 9;
+    /**
+     * 键中每张牌的计数占用的位数
+     */
+    private static final int COUNT_BITS = 4;
+    private static final int COUNTS_PER_WORD = Long.SIZE / COUNT_BITS;
+
+    /**
+     * 三门牌可以互换
+     */
+    private final boolean permutable;
+    /**
+     * 每门牌可以正反互换
+     */
+    private final boolean[] mirrorable = new boolean[SUITS.length];
+
+    private HandSymmetry(RuleTemplate template) {
+        boolean same = true;
+        for (int s = 0; s < SUITS.length; s++) {
+            int base = SUITS[s].getBase();
+            boolean mirror = true;
+            for (int value = 1; value <= VALUES; value++) {
+                mirror &= equivalent(template, base + value, base + 10 - value);
+                same &= equivalent(template, base + value, SUITS[0].getBase() + value);
+            }
+            mirrorable[s] = mirror;
+        }
+        this.permutable = same;
+    }
+
+    private static boolean equivalent(RuleTemplate template, int code, int other) {
+        return template.canLeader(code) == template.canLeader(other) && template.getPoolAmount(code) == template.getPoolAmount(other);
+    }
+
+    /**
+     * @param template 规则模板
+     * @return 规则的花色对称，按模板缓存
+     */
+    public static HandSymmetry of(RuleTemplate template) {
+        if (template.isRegistered()) {
+            return REGISTERED.computeIfAbsent(template, HandSymmetry::new);
+        }
+        return CACHE.computeIfAbsent(template, HandSymmetry::new);
+    }
+
+    /**
+     * @return 规则下等价变换的数量，包括不变换，最多 48
+     */
+    public int order() {
+        int order = permutable ? 6 : 1;
+        for (boolean mirror : mirrorable) {
+            order *= mirror ? 2 : 1;
+        }
+        return order;
+    }
+
+    /**
+     * 计算手牌的规范形式
+     *
+     * @param counts 手牌，下标为牌的编码，每种牌不超过 15 张
+     * @return 规范形式
+     */
+    public Canonical canonicalize(int[] counts) {
+        if (counts.length != Matrix.CODE_BOUND) {
+            throw new IllegalArgumentException("手牌计数的长度应为 " + Matrix.CODE_BOUND);
+        }
+        //每门牌选定方向后的计数序列，下标 0 为点数 1
+        int[][] shapes = new int[SUITS.length][VALUES];
+        boolean[] flipped = new boolean[SUITS.length];
+        for (int s = 0; s < SUITS.length; s++) {
+            int base = SUITS[s].getBase();
+            for (int value = 1; value <= VALUES; value++) {
+                shapes[s][value - 1] = counts[base + value];
+            }
+            if (mirrorable[s]) {
+                int[] mirror = new int[VALUES];
+                for (int i = 0; i < VALUES; i++) {
+                    mirror[i] = shapes[s][VALUES - 1 - i];
+                }
+                if (Arrays.compare(mirror, shapes[s]) > 0) {
+                    shapes[s] = mirror;
+                    flipped[s] = true;
+                }
+            }
+        }
+        //规范形式的第 i 门来自原手牌的 sources[i] 门
+        int[] sources = {0, 1, 2};
+        if (permutable) {
+            //三个元素的插入排序，计数序列大的在前，相同时保持原顺序
+            for (int i = 1; i < sources.length; i++) {
+                for (int j = i; j > 0 && Arrays.compare(shapes[sources[j]], shapes[sources[j - 1]]) > 0; j--) {
+                    int swap = sources[j];
+                    sources[j] = sources[j - 1];
+                    sources[j - 1] = swap;
+                }
+            }
+        }
+        int[] canonical = counts.clone();
+        int[] originals = new int[Matrix.CODE_BOUND];
+        for (int code = 0; code < originals.length; code++) {
+            originals[code] = code;
+        }
+        for (int i = 0; i < SUITS.length; i++) {
+            int base = SUITS[i].getBase();
+            int source = sources[i];
+            int sourceBase = SUITS[source].getBase();
+            for (int value = 1; value <= VALUES; value++) {
+                canonical[base + value] = shapes[source][value - 1];
+                originals[base + value] = sourceBase + (flipped[source] ? 10 - value : value);
+            }
+        }
+        return new Canonical(canonical, originals);
+    }
+
+    /**
+     * 一手牌的规范形式
+     */
+    public static final class Canonical {
+        private final int[] counts;
+        private final int[] originals;
+        private final Key key;
+
+        private Canonical(int[] counts, int[] originals) {
+            this.counts = counts;
+            this.originals = originals;
+            this.key = new Key(counts);
+        }
+
+        /**
+         * @return 规范形式的手牌，下标为牌的编码，调用方不可修改
+         */
+        public int[] getCounts() {
+            return counts;
+        }
+
+        /**
+         * @return 规范形式的键，等价的手牌得到相等的键
+         */
+        public Key getKey() {
+            return key;
+        }
+
+        /**
+         * @param code 规范形式中牌的编码
+         * @return 原手牌中对应的牌的编码
+         */
+        public int original(int code) {
+            return originals[code];
+        }
+    }
+
+    /**
+     * 规范形式的手牌压缩成的键，每张牌的计数占 4 位
+     */
+    public static final class Key {
+        private final long[] words = new long[(Matrix.CODE_BOUND + COUNTS_PER_WORD - 1) / COUNTS_PER_WORD];
+        private final int hash;
+
+        private Key(int[] counts) {
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] < 0 || counts[code] >= 1 << COUNT_BITS) {
+                    throw new IllegalArgumentException("牌的数量错误：" + Matrix.of(code) + " " + counts[code]);
+                }
+                words[code / COUNTS_PER_WORD] |= (long) counts[code] << (code % COUNTS_PER_WORD * COUNT_BITS);
+            }
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            return hash == ((Key) o).hash && Arrays.equals(words, ((Key) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.analysis;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.bean.Wall;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 暗牌推断
+ * <p>
+ * 站在某个座位（或旁观者）的角度，估计每个座位手中每种暗牌的期望数量。能看到的牌为：打出的牌、吃碰杠亮出的牌、
+ * 明牌，以及自己的手牌；其余的牌分布在各座位的暗牌与牌堆中。
+ * <p>
+ * 每种牌未知的数量为列约束，每个座位的暗牌数量与牌堆剩余数量为行约束，先验为均匀分布，
+ * 再乘上打牌带来的证据（打出的牌及其相邻的牌更不可能留在手中），用迭代比例拟合（Sinkhorn）求满足约束的期望矩阵。
+ * <p>
+ * 每次调用 {@link #update()} 只处理上次之后新增的操作，拟合从上次的缩放系数开始，通常几次迭代就能收敛。
+ * 牌局仓库每一步都会复制出新的牌局，复制的牌局共享之前的操作链，通过 {@link #update(Game)} 切换到最新的副本后同样只处理新增的操作。
+ * 操作链被替换时（例如回退）从头重建。推断器不是线程安全的，与牌局在同一线程使用
+ *
+ * @author Leavey
+ */
+public class TileInference {
+    /**
+     * 旁观者，看不到任何人的手牌
+     */
+    public static final int SPECTATOR = -1;
+    /**
+     * 打出的牌，手中再有同一张牌的权重
+     */
+    private static final double DISCARD_SAME = 0.4;
+    /**
+     * 打出的牌，手中有相邻一张牌的权重
+     */
+    private static final double DISCARD_NEAR = 0.8;
+    /**
+     * 打出的牌，手中有相隔一张牌的权重
+     */
+    private static final double DISCARD_GAP = 0.9;
+    /**
+     * 权重的下限，避免多次打出后权重趋近于 0
+     */
+    private static final double MIN_WEIGHT = 0.01;
+    private static final int MAX_ITERATIONS = 100;
+    private static final double TOLERANCE = 1e-6;
+
+    private Game game;
+    private final int viewer;
+    private final RuleTemplate template;
+    /**
+     * 牌池中存在的牌的编码
+     */
+    private final int[] codes;
+    /**
+     * 牌堆对应的行
+     */
+    private final int wallRow;
+
+    /**
+     * 每种牌未知的数量，下标为牌的编码
+     */
+    private final int[] unknown = new int[Matrix.CODE_BOUND];
+    /**
+     * 每个座位手中能看到的牌，[座位][编码]
+     */
+    private final int[][] known;
+    /**
+     * 每一行的暗牌数量，最后一行为牌堆
+     */
+    private final int[] hidden;
+    /**
+     * 证据权重，[行][编码]
+     */
+    private final double[][] weights;
+    /**
+     * 行、列的缩放系数，保留用于下一次拟合
+     */
+    private final double[] rowScales;
+    private final double[] columnScales = new double[Matrix.CODE_BOUND];
+    /**
+     * 期望数量，[行][编码]
+     */
+    private final double[][] expected;
+    /**
+     * 每个座位吃碰杠的数量
+     */
+    private final int[] melds;
+    /**
+     * 每个座位打出的牌的数量，包括开杠后打出的牌
+     */
+    private final int[] discards;
+
+    /**
+     * 已经处理的最后一个操作
+     */
+    private Operation last;
+    /**
+     * 已经处理的最后一个非明牌操作的类型
+     */
+    private Action lastAction;
+
+    /**
+     * @param game   牌局
+     * @param viewer 观察的座位，旁观者为 {@link #SPECTATOR}
+     */
+    public TileInference(Game game, int viewer) {
+        if (viewer < SPECTATOR || viewer >= game.getPlayerAmount()) {
+            throw new IllegalArgumentException("座位不存在");
+        }
+        this.game = game;
+        this.viewer = viewer;
+        this.template = game.getTemplate();
+        this.codes = template.getTileCodes();
+        int rows = game.getPlayerAmount() + 1;
+        this.wallRow = rows - 1;
+        this.known = new int[game.getPlayerAmount()][Matrix.CODE_BOUND];
+        this.hidden = new int[rows];
+        this.weights = new double[rows][Matrix.CODE_BOUND];
+        this.rowScales = new double[rows];
+        this.expected = new double[rows][Matrix.CODE_BOUND];
+        this.melds = new int[game.getPlayerAmount()];
+        this.discards = new int[game.getPlayerAmount()];
+        rebuild();
+    }
+
+    /**
+     * 切换到同一局牌的另一个状态，例如 {@link com.leavey.mahjong.engine.factory.GameFactory} 返回的最新副本，
+     * 从该状态的最后一个操作往前找到上次处理的操作，只处理之间新增的操作，找不到时从头重建
+     *
+     * @param current 同一局牌的状态
+     */
+    public void update(Game current) {
+        if (current.getId() != game.getId() || current.getTemplate() != template) {
+            throw new IllegalArgumentException("不是同一局牌：" + current.getId());
+        }
+        game = current;
+        update();
+    }
+
+    /**
+     * 处理上次更新之后新增的操作并重新拟合
+     */
+    public void update() {
+        Deque<Operation> pending = new ArrayDeque<>();
+        Operation op = game.getLastOperation();
+        while (op != last) {
+            if (op == null) {
+                //操作链已经被替换
+                rebuild();
+                return;
+            }
+            pending.push(op);
+            op = op.getPrev();
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        while (!pending.isEmpty()) {
+            apply(pending.pop());
+        }
+        fit();
+    }
+
+    /**
+     * 从牌局开始重新计算
+     */
+    private void rebuild() {
+        for (int[] seat : known) {
+            Arrays.fill(seat, 0);
+        }
+        for (double[] row : weights) {
+            Arrays.fill(row, 1);
+        }
+        Arrays.fill(rowScales, 1);
+        Arrays.fill(columnScales, 1);
+        Arrays.fill(melds, 0);
+        Arrays.fill(discards, 0);
+        for (int code : codes) {
+            unknown[code] = template.getPoolAmount(code);
+        }
+        int firstHand = template.getFirstHandAmount();
+        Arrays.fill(hidden, firstHand);
+        hidden[wallRow] = template.getPoolCodes().length - game.getPlayerAmount() * firstHand;
+        Wall wall = game.getWall();
+        if (wall != null && viewer != SPECTATOR) {
+            //按种子重新发一遍牌，只取自己的起手牌
+            Wall deal = new Wall(template.getPoolCodes(), wall.getSeed());
+            for (int seat = 0; seat < game.getPlayerAmount(); seat++) {
+                List<Tile> tiles = deal.deal(firstHand);
+                if (seat == viewer) {
+                    for (Tile tile : tiles) {
+                        reveal(seat, tile);
+                    }
+                    hidden[seat] = 0;
+                }
+            }
+        }
+        last = null;
+        lastAction = null;
+        for (Operation op : game.getOperations()) {
+            apply(op);
+        }
+        fit();
+    }
+
+    private void apply(Operation op) {
+        int player = op.getPlayer();
+        List<Tile> tiles = op.getKeyTiles();
+        switch (op.getAction()) {
+            case DRAW:
+                hidden[wallRow]--;
+                if (player == viewer && op.getDrawTile() != null) {
+                    reveal(player, op.getDrawTile());
+                } else {
+                    hidden[player]++;
+                }
+                break;
+            case PLAY:
+                discard(player, tiles.get(0), true);
+                discards[player]++;
+                break;
+            case EAT:
+                eat(player, tiles.get(0), op.getEatPosition());
+                melds[player]++;
+                break;
+            case PEN:
+                discard(player, tiles.get(0), false);
+                discard(player, tiles.get(0), false);
+                melds[player]++;
+                break;
+            case GANG:
+                //暗杠且上一个操作是自身摸牌、吃牌、碰牌、开杠后补牌进手牌时，4 张都在手里，否则有 1 张来自打出的牌
+                boolean inside = Boolean.TRUE.equals(op.getDark()) && (lastAction == Action.DRAW || lastAction == Action.EAT || lastAction == Action.PEN || lastAction == Action.GANG_DRAW);
+                for (int i = inside ? 0 : 1; i < 4; i++) {
+                    discard(player, tiles.get(0), false);
+                }
+                melds[player]++;
+                break;
+            case GANG_DRAW:
+                hidden[wallRow] -= op.getDarkTileAmount();
+                if (player == viewer && tiles != null && game.getTemplate().isGangDrawToHand()) {
+                    //补进手牌的牌与摸牌一样，自己能看到
+                    tiles.forEach(tile -> reveal(player, tile));
+                } else {
+                    hidden[player] += op.getDarkTileAmount();
+                }
+                break;
+            case GANG_PLAY:
+                for (Tile tile : tiles) {
+                    //杠上来的牌不在手牌中，直接从暗牌中打出
+                    hidden[player]--;
+                    see(tile);
+                    evidence(player, tile);
+                }
+                discards[player] += tiles.size();
+                break;
+            case SHOW:
+                show(player, tiles);
+                break;
+            default:
+                break;
+        }
+        last = op;
+        if (op.getAction() != Action.SHOW) {
+            lastAction = op.getAction();
+        }
+    }
+
+    private void eat(int player, Tile tile, EatPosition position) {
+        int code = tile.getCode();
+        int first = position == EatPosition.LEFT ? code + 1 : (position == EatPosition.MIDDLE ? code - 1 : code - 2);
+        int second = position == EatPosition.RIGHT ? code - 1 : (position == EatPosition.MIDDLE ? code + 1 : code + 2);
+        discard(player, Matrix.of(first), false);
+        discard(player, Matrix.of(second), false);
+    }
+
+    /**
+     * 从手中拿出一张牌亮出，与手牌一样先从能看到的牌中找，找不到就是一张暗牌
+     *
+     * @param player   座位
+     * @param tile     牌
+     * @param evidence 是否主动打出，作为推断的证据
+     */
+    private void discard(int player, Tile tile, boolean evidence) {
+        int code = tile.getCode();
+        if (known[player][code] > 0) {
+            known[player][code]--;
+        } else {
+            hidden[player]--;
+            see(tile);
+        }
+        if (evidence) {
+            evidence(player, tile);
+        }
+    }
+
+    /**
+     * 明牌，与手牌一样按每种牌的数量增量合并
+     */
+    private void show(int player, List<Tile> tiles) {
+        int[] amounts = new int[Matrix.CODE_BOUND];
+        for (Tile tile : tiles) {
+            amounts[tile.getCode()]++;
+        }
+        for (int code : codes) {
+            for (int i = known[player][code]; i < amounts[code]; i++) {
+                hidden[player]--;
+                reveal(player, Matrix.of(code));
+            }
+        }
+    }
+
+    private void reveal(int player, Tile tile) {
+        known[player][tile.getCode()]++;
+        see(tile);
+    }
+
+    private void see(Tile tile) {
+        unknown[tile.getCode()]--;
+    }
+
+    /**
+     * 打出的牌更不可能还留在手中，相邻的牌也更不可能
+     */
+    private void evidence(int player, Tile tile) {
+        if (player == viewer) {
+            return;
+        }
+        double[] row = weights[player];
+        int code = tile.getCode();
+        scale(row, code, DISCARD_SAME);
+        if (tile.getType().isAllowDiffGroup()) {
+            int value = tile.getValue();
+            int max = tile.getType().getMaxValue();
+            for (int distance = 1; distance <= 2; distance++) {
+                double factor = distance == 1 ? DISCARD_NEAR : DISCARD_GAP;
+                if (value - distance >= 1) {
+                    scale(row, code - distance, factor);
+                }
+                if (value + distance <= max) {
+                    scale(row, code + distance, factor);
+                }
+            }
+        }
+    }
+
+    private static void scale(double[] row, int code, double factor) {
+        row[code] = Math.max(row[code] * factor, MIN_WEIGHT);
+    }
+
+    /**
+     * 迭代比例拟合，交替缩放行与列，直到行的合计与暗牌数量一致
+     */
+    private void fit() {
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double error = 0;
+            for (int row = 0; row < hidden.length; row++) {
+                double sum = 0;
+                for (int code : codes) {
+                    sum += weights[row][code] * columnScales[code];
+                }
+                double target = Math.max(hidden[row], 0);
+                double scaled = sum * rowScales[row];
+                error = Math.max(error, Math.abs(scaled - target));
+                rowScales[row] = sum == 0 ? 0 : target / sum;
+            }
+            for (int code : codes) {
+                double sum = 0;
+                for (int row = 0; row < hidden.length; row++) {
+                    sum += rowScales[row] * weights[row][code];
+                }
+                columnScales[code] = sum == 0 ? 0 : Math.max(unknown[code], 0) / sum;
+            }
+            if (error < TOLERANCE) {
+                break;
+            }
+        }
+        for (int row = 0; row < hidden.length; row++) {
+            for (int code : codes) {
+                expected[row][code] = rowScales[row] * weights[row][code] * columnScales[code];
+            }
+        }
+    }
+
+    /**
+     * 座位手中某种暗牌的期望数量
+     *
+     * @param seat 座位
+     * @param code 牌的编码
+     * @return 期望数量
+     */
+    public double expected(int seat, int code) {
+        return expected[seat][code];
+    }
+
+    /**
+     * 牌堆中某种牌的期望数量
+     *
+     * @param code 牌的编码
+     * @return 期望数量
+     */
+    public double wallExpected(int code) {
+        return expected[wallRow][code];
+    }
+
+    /**
+     * 座位的暗牌中至少有一张某种牌的概率，按每一张未知的牌独立估计
+     *
+     * @param seat 座位
+     * @param code 牌的编码
+     * @return 概率
+     */
+    public double probability(int seat, int code) {
+        int amount = unknown[code];
+        if (amount <= 0) {
+            return 0;
+        }
+        double each = Math.min(expected[seat][code] / amount, 1);
+        return 1 - Math.pow(1 - each, amount);
+    }
+
+    /**
+     * 座位的暗牌中至少有两张某种牌的概率，估计方式与 {@link #probability(int, int)} 相同
+     *
+     * @param seat 座位
+     * @param code 牌的编码
+     * @return 概率
+     */
+    public double pairProbability(int seat, int code) {
+        int amount = unknown[code];
+        if (amount <= 1) {
+            return 0;
+        }
+        double each = Math.min(expected[seat][code] / amount, 1);
+        double none = Math.pow(1 - each, amount);
+        double one = amount * each * Math.pow(1 - each, amount - 1);
+        return Math.max(1 - none - one, 0);
+    }
+
+    /**
+     * @param code 牌的编码
+     * @return 观察者看不到的数量
+     */
+    public int getUnknown(int code) {
+        return unknown[code];
+    }
+
+    /**
+     * @param seat 座位
+     * @return 座位手中观察者看不到的牌的数量
+     */
+    public int getHidden(int seat) {
+        return hidden[seat];
+    }
+
+    /**
+     * @return 牌堆剩余数量
+     */
+    public int getWallHidden() {
+        return hidden[wallRow];
+    }
+
+    /**
+     * @param seat 座位
+     * @return 吃碰杠的数量
+     */
+    public int getMeldAmount(int seat) {
+        return melds[seat];
+    }
+
+    /**
+     * @param seat 座位
+     * @return 打出的牌的数量
+     */
+    public int getDiscardAmount(int seat) {
+        return discards[seat];
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    public int getViewer() {
+        return viewer;
+    }
+}
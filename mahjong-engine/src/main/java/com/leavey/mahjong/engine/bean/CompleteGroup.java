@@ -38,7 +38,9 @@ public class CompleteGroup implements DeepCopy<CompleteGroup> {
 
     @Override
     public CompleteGroup deepCopy() {
-        return new CompleteGroup(new ArrayList<>(tiles));
+        CompleteGroup group = new CompleteGroup(new ArrayList<>(tiles));
+        group.dark = dark;
+        return group;
     }
 
 
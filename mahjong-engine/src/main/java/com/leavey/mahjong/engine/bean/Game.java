@@ -17,10 +17,9 @@
 package com.leavey.mahjong.engine.bean;
 
 import com.leavey.mahjong.common.bean.Tile;
-import com.leavey.mahjong.common.bean.Type;
 import com.leavey.mahjong.engine.executor.Executor;
-import com.leavey.mahjong.engine.factory.GameFactory;
 import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
 import com.leavey.mahjong.engine.util.PositionUtil;
 
 import java.util.*;
@@ -30,31 +29,55 @@ import java.util.stream.Collectors;
  * @author Leavey
  */
 public class Game implements DeepCopy<Game> {
+    /**
+     * 一个快照自身、牌墙和最后一次操作的大致字节数
+     */
+    private static final int SNAPSHOT_BYTES = 512;
+    /**
+     * 一个玩家的手牌、明牌、打出的牌及手牌分析的大致字节数
+     */
+    private static final int PLAYER_BYTES = 1024;
+
     private final long id;
+    /**
+     * 玩家，复制牌局时共享，修改前通过 {@link #mutable(int)} 复制
+     */
     private final Player[] players;
+    /**
+     * 本局独占的玩家，第 n 位表示座位 n，未独占的玩家与其他牌局共享，不能修改
+     */
+    private int owned;
     private final Rule rule;
-    private final List<Tile> pool;
+    /**
+     * 规则编译后的模板，全部牌局共享
+     */
+    private final RuleTemplate template;
     /**
      * 牌堆数量
      */
     private int pileSize;
+    /**
+     * 牌墙，发牌后才存在，不存在时只记录牌的数量
+     */
+    private Wall wall;
     private Integer focus;
     private Operation operation;
-    private final Map<Action, Executor> executorMap;
+    /**
+     * 状态版本，由牌局仓库在每次状态变化后分配，同一局牌内单调递增，复制牌局时保留
+     */
+    private long version;
 
 
     public Game(long id, Rule rule) {
         this.id = id;
         this.rule = rule;
-        this.executorMap = GameFactory.defaultExecutorMap();
-        rule.customizeExecutors(executorMap);
-        this.pool = Arrays.stream(Type.values()).map(rule::newTiles).flatMap(Collection::stream).collect(Collectors.toList());
-        this.pileSize = pool.size();
-        this.players = new Player[this.rule.playerAmount()];
+        this.template = RuleTemplate.of(rule);
+        this.players = new Player[template.getPlayerAmount()];
         for (int i = 0; i < players.length; i++) {
-            players[i] = new Player(rule.firstHandAmount());
-            pileSize -= rule.firstHandAmount();
+            players[i] = new Player(template.getFirstHandAmount());
         }
+        this.owned = allPlayers();
+        this.pileSize = template.getPoolCodes().length - players.length * template.getFirstHandAmount();
         this.operation = null;
     }
 
@@ -69,7 +92,7 @@ public class Game implements DeepCopy<Game> {
      * @return 可进行操作集合
      */
     public Set<Action> allowActions(int player) {
-        return executorMap.entrySet().stream().filter(entry -> entry.getValue().validate(this, player)).map(Map.Entry::getKey).collect(Collectors.toSet());
+        return template.getExecutors().entrySet().stream().filter(entry -> entry.getValue().validate(this, player)).map(Map.Entry::getKey).collect(Collectors.toSet());
     }
 
     /**
@@ -78,12 +101,34 @@ public class Game implements DeepCopy<Game> {
      * @param actionRequest 操作请求
      */
     public void play(ActionRequest actionRequest) {
-        //本次操作的执行器
-        Executor executor = executorMap.get(actionRequest.getAction());
-        //校验操作是否有效
+        apply(validate(actionRequest), actionRequest);
+    }
+
+    /**
+     * 校验操作是否有效
+     *
+     * @param actionRequest 操作请求
+     * @return 本次操作的执行器
+     * @throws IllegalStateException 操作无效
+     */
+    public Executor validate(ActionRequest actionRequest) {
+        Executor executor = template.executor(actionRequest.getAction());
+        if (executor == null) {
+            throw new IllegalStateException("规则不支持该操作：" + actionRequest.getAction());
+        }
         if (!executor.validate(this, actionRequest)) {
             throw new IllegalStateException("非法操作");
         }
+        return executor;
+    }
+
+    /**
+     * 执行已经校验过的操作
+     *
+     * @param executor      {@link #validate(ActionRequest)} 返回的执行器
+     * @param actionRequest 操作请求
+     */
+    public void apply(Executor executor, ActionRequest actionRequest) {
         //调用对应的操作执行器，执行操作
         Operation op = executor.execute(this, actionRequest);
         op.setPrev(this.operation);
@@ -93,26 +138,115 @@ public class Game implements DeepCopy<Game> {
         if (actionRequest.getAction() != Action.SHOW) {
             this.focus = actionRequest.getPlayer();
         }
+        analyze();
+    }
+
+    /**
+     * 估计本局快照独占的内存字节数，与其他快照共享的玩家不计入，只用于监控
+     *
+     * @return 字节数
+     */
+    public long estimateSize() {
+        return SNAPSHOT_BYTES + (long) PLAYER_BYTES * Integer.bitCount(owned);
     }
 
-    private Game(long id, Player[] players, Rule rule, List<Tile> pool, int pileSize, Integer focus, Operation operation, Map<Action, Executor> executorMap) {
+    /**
+     * 更新每个玩家的手牌分析，只有手牌发生变化的门会重新计算
+     * <p>
+     * 共享的玩家在上一个状态中已经分析过，而且可能正在被其他线程读取，只分析本局独占的玩家
+     */
+    private void analyze() {
+        for (int i = 0; i < players.length; i++) {
+            if ((owned & (1 << i)) != 0) {
+                players[i].analyze(template);
+            }
+        }
+    }
+
+    /**
+     * 按已有的状态创建牌局，用于从快照还原
+     *
+     * @param id        牌局id
+     * @param rule      规则
+     * @param players   玩家
+     * @param pileSize  牌堆数量
+     * @param wallSeed  牌墙种子，没有牌墙时为 null
+     * @param wallHead  牌墙头部位置
+     * @param wallTail  牌墙尾部位置
+     * @param focus     焦点
+     * @param operation 最后一次操作
+     */
+    public Game(long id, Rule rule, Player[] players, int pileSize, Long wallSeed, int wallHead, int wallTail, Integer focus, Operation operation) {
+        this.id = id;
+        this.rule = rule;
+        this.template = RuleTemplate.of(rule);
+        if (players.length != template.getPlayerAmount()) {
+            throw new IllegalArgumentException("玩家数量与规则不一致");
+        }
+        this.players = players;
+        this.pileSize = pileSize;
+        this.wall = wallSeed == null ? null : new Wall(template.getPoolCodes(), wallSeed, wallHead, wallTail);
+        this.focus = focus;
+        this.operation = operation;
+        this.owned = allPlayers();
+        analyze();
+    }
+
+    private Game(long id, Player[] players, Rule rule, RuleTemplate template, int pileSize, Wall wall, Integer focus, Operation operation) {
         this.id = id;
         this.players = players;
         this.rule = rule;
-        this.pool = pool;
+        this.template = template;
         this.pileSize = pileSize;
+        this.wall = wall;
         this.focus = focus;
         this.operation = operation;
-        this.executorMap = executorMap;
     }
 
+    /**
+     * 复制牌局，玩家在写入时才复制
+     * <p>
+     * 复制后两个牌局都不再独占任何玩家，之后哪一方修改某个玩家，就由哪一方复制该玩家，
+     * 因此一次操作只复制实际发生变化的玩家，其余玩家在前后状态、不同分支之间共享
+     */
     @Override
     public Game deepCopy() {
-        Player[] copyPlayers = new Player[players.length];
-        for (int i = 0; i < players.length; i++) {
-            copyPlayers[i] = players[i].deepCopy();
+        owned = 0;
+        Game copy = new Game(id, players.clone(), rule, template, pileSize, wall == null ? null : wall.deepCopy(), focus, operation);
+        copy.version = version;
+        return copy;
+    }
+
+    /**
+     * 取得可以修改的玩家，与其他牌局共享时先复制
+     *
+     * @param player 座位
+     * @return 玩家
+     */
+    private Player mutable(int player) {
+        int bit = 1 << player;
+        if ((owned & bit) == 0) {
+            players[player] = players[player].deepCopy();
+            owned |= bit;
         }
-        return new Game(id, copyPlayers, rule, new ArrayList<>(pool), pileSize, focus, operation, executorMap);
+        return players[player];
+    }
+
+    private int allPlayers() {
+        return (1 << players.length) - 1;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 设置状态版本，只应由牌局仓库在状态放入历史之前调用
+     *
+     * @param version 版本
+     */
+    public void setVersion(long version) {
+        this.version = version;
     }
 
     public Integer getFocus() {
@@ -151,6 +285,50 @@ public class Game implements DeepCopy<Game> {
         return res;
     }
 
+    /**
+     * 最后一次操作，包括明牌
+     *
+     * @return 操作，没有操作时返回 null
+     */
+    public Operation getLastOperation() {
+        return operation;
+    }
+
+    /**
+     * 按发生的先后顺序返回全部操作日志，包括明牌
+     *
+     * @return 操作日志
+     */
+    public List<Operation> getOperations() {
+        LinkedList<Operation> operations = new LinkedList<>();
+        for (Operation op = operation; op != null; op = op.getPrev()) {
+            operations.addFirst(op);
+        }
+        return operations;
+    }
+
+    /**
+     * 从头重新执行前若干个操作，得到当时的牌局
+     * <p>
+     * 没有保存历史快照时（例如从快照还原后）用于回退
+     *
+     * @param amount 执行的操作数量
+     * @return 新的牌局
+     */
+    public Game replay(int amount) {
+        List<Operation> operations = getOperations();
+        if (amount < 0 || amount > operations.size()) {
+            throw new IllegalArgumentException("操作数量不合法");
+        }
+        Game game = new Game(id, rule);
+        if (wall != null) {
+            game.deal(wall.getSeed());
+        }
+        for (int i = 0; i < amount; i++) {
+            game.play(operations.get(i).toActionRequest());
+        }
+        return game;
+    }
 
     public List<Tile> getPrevKeyTiles() {
         return Optional.ofNullable(getPrevOperation()).map(Operation::getKeyTiles).orElse(new ArrayList<>());
@@ -164,37 +342,138 @@ public class Game implements DeepCopy<Game> {
         return rule;
     }
 
-    public void draw(int player) {
-        players[player].draw();
-        pileSize--;
+    public RuleTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * 开局时根据规则生成的全部牌
+     *
+     * @return 不可修改的牌堆
+     */
+    public List<Tile> getPool() {
+        return template.getPool();
+    }
+
+    public int getPileSize() {
+        return pileSize;
+    }
+
+    public Wall getWall() {
+        return wall;
+    }
+
+    /**
+     * 洗牌并发牌，发出的牌都是已知的明牌
+     * <p>
+     * 相同的种子总是得到相同的牌墙与起手牌
+     *
+     * @param seed 随机种子
+     */
+    public void deal(long seed) {
+        if (wall != null || operation != null) {
+            throw new IllegalStateException("牌局已经开始，不能再发牌");
+        }
+        wall = new Wall(template.getPoolCodes(), seed);
+        for (int i = 0; i < players.length; i++) {
+            mutable(i).deal(wall.deal(template.getFirstHandAmount()));
+        }
+        pileSize = wall.remaining();
+        analyze();
     }
 
+    /**
+     * 摸牌，存在牌墙时从牌墙头部摸，否则只增加一张暗牌
+     *
+     * @param player 玩家
+     * @return 摸到的牌，不存在牌墙时返回 null
+     */
+    public Tile draw(int player) {
+        if (wall == null) {
+            mutable(player).draw();
+            pileSize--;
+            return null;
+        }
+        Tile tile = wall.peek();
+        draw(player, tile);
+        return tile;
+    }
+
+    /**
+     * 摸一张已知的牌
+     *
+     * @param player 玩家
+     * @param tile   牌，存在牌墙时必须与牌墙头部一致
+     */
     public void draw(int player, Tile tile) {
-        players[player].draw(tile);
+        if (wall != null) {
+            if (!wall.peek().equals(tile)) {
+                throw new IllegalStateException("摸的牌与牌墙不一致");
+            }
+            wall.draw();
+        }
+        mutable(player).draw(tile);
         pileSize--;
     }
 
     public void play(int player, Tile tile) {
-        players[player].play(tile);
+        mutable(player).play(tile);
     }
 
     public void eat(int player, Tile tile, EatPosition position) {
-        players[player].eat(tile, position);
+        mutable(player).eat(tile, position);
     }
 
     public void pen(int player, Tile tile) {
-        players[player].pen(tile);
+        mutable(player).pen(tile);
     }
 
     public int gangDraw(int player) {
-        int amount = rule.allowGangDrawAmount();
-        players[player].gangDraw(amount);
+        int amount = template.getGangDrawAmount();
+        if (wall != null) {
+            wall.drawTail(amount);
+        }
+        mutable(player).gangDraw(amount);
         pileSize -= amount;
         return amount;
     }
 
+    /**
+     * 开杠后补一张牌进手牌，存在牌墙时从牌墙尾部摸，否则只增加一张暗牌
+     *
+     * @param player 玩家
+     * @param tile   已知的牌，未知时为 null；存在牌墙时必须与牌墙尾部一致
+     * @return 摸到的牌，不存在牌墙且未指定时返回 null
+     */
+    public Tile gangDrawToHand(int player, Tile tile) {
+        if (wall != null) {
+            Tile tail = wall.peekTail(1).get(0);
+            if (tile != null && !tail.equals(tile)) {
+                throw new IllegalStateException("摸的牌与牌墙不一致");
+            }
+            tile = wall.drawTail(1).get(0);
+        }
+        if (tile == null) {
+            mutable(player).draw();
+        } else {
+            mutable(player).draw(tile);
+        }
+        pileSize--;
+        return tile;
+    }
+
+    /**
+     * 玩家是否刚把开杠后摸的牌补进手牌，此时与刚摸牌一样
+     *
+     * @param player 玩家
+     * @return /
+     */
+    public boolean isGangDrawnToHand(int player) {
+        return isFocus(player) && getPrevAction() == Action.GANG_DRAW && template.isGangDrawToHand();
+    }
+
     public void gangPlay(int player, List<Tile> tiles) {
-        players[player].gangPlay(tiles);
+        mutable(player).gangPlay(tiles);
     }
 
     /**
@@ -208,7 +487,7 @@ public class Game implements DeepCopy<Game> {
      *                其他暗杠的牌 都是内部获取
      */
     public void gang(int player, Tile tile, boolean dark, boolean outside) {
-        players[player].gang(tile, dark, outside);
+        mutable(player).gang(tile, dark, outside);
     }
 
     /**
@@ -219,10 +498,10 @@ public class Game implements DeepCopy<Game> {
      * @param outsize 牌是否外部的
      */
     public void win(int player, Tile tile, boolean outsize) {
-        players[player].win(tile, outsize);
+        mutable(player).win(tile, outsize);
     }
 
     public void show(int player, List<Tile> tiles) {
-        players[player].show(tiles);
+        mutable(player).show(tiles);
     }
 }
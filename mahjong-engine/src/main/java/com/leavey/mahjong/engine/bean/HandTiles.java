@@ -18,6 +18,7 @@ package com.leavey.mahjong.engine.bean;
 
 
 import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.analysis.HandAnalysis;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,6 +33,10 @@ public class HandTiles implements DeepCopy<HandTiles> {
 
     private int darkAmount;
     private List<Tile> openTiles;
+    /**
+     * 随明牌的增减同步更新的手牌分析
+     */
+    private final HandAnalysis analysis;
 
     public HandTiles(int darkAmount) {
         this(darkAmount, new ArrayList<>());
@@ -40,11 +45,19 @@ public class HandTiles implements DeepCopy<HandTiles> {
     public HandTiles(int darkAmount, List<Tile> openTiles) {
         this.darkAmount = darkAmount;
         this.openTiles = openTiles;
+        this.analysis = new HandAnalysis();
+        openTiles.forEach(analysis::add);
+    }
+
+    private HandTiles(int darkAmount, List<Tile> openTiles, HandAnalysis analysis) {
+        this.darkAmount = darkAmount;
+        this.openTiles = openTiles;
+        this.analysis = analysis;
     }
 
     @Override
     public HandTiles deepCopy() {
-        return new HandTiles(darkAmount, new ArrayList<>(openTiles));
+        return new HandTiles(darkAmount, new ArrayList<>(openTiles), analysis.deepCopy());
     }
 
     /**
@@ -67,7 +80,7 @@ public class HandTiles implements DeepCopy<HandTiles> {
         //先从明牌寻找
         for (int i = 0; i < openTiles.size(); i++) {
             if (openTiles.get(i).equals(tile)) {
-                openTiles.remove(i);
+                analysis.remove(openTiles.remove(i));
                 return;
             }
         }
@@ -84,6 +97,20 @@ public class HandTiles implements DeepCopy<HandTiles> {
         this.darkAmount += amount;
     }
 
+    /**
+     * 发牌，暗牌替换为已知的牌
+     *
+     * @param tiles 发出的牌
+     */
+    public void deal(List<Tile> tiles) {
+        if (tiles.size() > darkAmount) {
+            throw new IllegalStateException("数据异常，发牌数量大于暗牌数量");
+        }
+        this.darkAmount -= tiles.size();
+        this.openTiles.addAll(tiles);
+        tiles.forEach(analysis::add);
+    }
+
     /**
      * 添加一张明牌
      *
@@ -91,6 +118,7 @@ public class HandTiles implements DeepCopy<HandTiles> {
      */
     public void add(Tile tile) {
         this.openTiles.add(tile);
+        analysis.add(tile);
     }
 
     /**
@@ -110,6 +138,8 @@ public class HandTiles implements DeepCopy<HandTiles> {
         if (newOpenTiles.size() > openTiles.size()) {
             darkAmount -= newOpenTiles.size() - openTiles.size();
         }
+        openTiles.forEach(analysis::remove);
+        newOpenTiles.forEach(analysis::add);
         this.openTiles = newOpenTiles;
     }
 
@@ -176,4 +206,8 @@ public class HandTiles implements DeepCopy<HandTiles> {
     public List<Tile> getOpenTiles() {
         return openTiles;
     }
+
+    public HandAnalysis getAnalysis() {
+        return analysis;
+    }
 }
@@ -41,6 +41,10 @@ public class Operation {
     private Boolean dark;
     //是否自摸
     private Boolean self;
+    /**
+     * 摸到的牌，只有摸到的牌已知时才记录，仅用于复盘，不参与校验
+     */
+    private Tile drawTile;
 
     public Operation(int player, Action action) {
         this.player = player;
@@ -64,4 +68,22 @@ public class Operation {
     public void setPrev(Operation prev) {
         this.prev = prev;
     }
+
+    /**
+     * 还原出产生本次操作的请求，用于重新执行牌局
+     *
+     * @return 操作请求
+     */
+    public ActionRequest toActionRequest() {
+        if (action == Action.DRAW) {
+            return drawTile == null ? new ActionRequest(player, action) : new ActionRequest(player, action, List.of(drawTile));
+        }
+        if (action == Action.GANG_DRAW) {
+            //杠牌摸到的牌由牌墙决定
+            return new ActionRequest(player, action);
+        }
+        ActionRequest request = new ActionRequest(player, action, keyTiles);
+        request.setEatPosition(eatPosition);
+        return request;
+    }
 }
@@ -18,6 +18,8 @@ package com.leavey.mahjong.engine.bean;
 
 
 import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.analysis.HandAnalysis;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -58,7 +60,15 @@ public class Player implements DeepCopy<Player> {
     }
 
 
-    private Player(HandTiles hand, List<CompleteGroup> completeGroups, List<Tile> playTiles, int gangDrawAmount) {
+    /**
+     * 按已有的状态创建玩家，用于从快照还原
+     *
+     * @param hand           手牌
+     * @param completeGroups 吃、碰、杠
+     * @param playTiles      打出的牌
+     * @param gangDrawAmount 开杠摸上来的牌数量
+     */
+    public Player(HandTiles hand, List<CompleteGroup> completeGroups, List<Tile> playTiles, int gangDrawAmount) {
         this.hand = hand;
         this.completeGroups = completeGroups;
         this.playTiles = playTiles;
@@ -70,6 +80,15 @@ public class Player implements DeepCopy<Player> {
         return new Player(hand.deepCopy(), completeGroups.stream().map(CompleteGroup::deepCopy).collect(Collectors.toList()), new ArrayList<>(playTiles), gangDrawAmount);
     }
 
+    /**
+     * 起手发牌，发出的牌都是已知的，替换掉等量的暗牌
+     *
+     * @param tiles 发出的牌
+     */
+    public void deal(List<Tile> tiles) {
+        hand.deal(tiles);
+    }
+
     public void draw() {
         hand.incrDarkAmount(1);
     }
@@ -178,4 +197,47 @@ public class Player implements DeepCopy<Player> {
     public HandTiles getHand() {
         return hand.deepCopy();
     }
+
+    /**
+     * 手牌是否全部已知，发牌或明牌后暗牌数量为 0
+     *
+     * @return 全部已知返回 true
+     */
+    public boolean isHandKnown() {
+        return hand.getDarkAmount() == 0;
+    }
+
+    /**
+     * 按牌的编码累加手牌中已知的牌，不复制手牌
+     *
+     * @param counts 计数，下标为牌的编码
+     */
+    public void countHand(int[] counts) {
+        List<Tile> openTiles = hand.getOpenTiles();
+        for (int i = 0; i < openTiles.size(); i++) {
+            counts[openTiles.get(i).getCode()]++;
+        }
+    }
+
+    /**
+     * 更新手牌分析，手牌存在未知的暗牌时不计算
+     *
+     * @param template 规则模板
+     */
+    public void analyze(RuleTemplate template) {
+        hand.getAnalysis().refresh(template, isHandKnown());
+    }
+
+    /**
+     * 手牌分析，不复制手牌
+     *
+     * @return 手牌分析
+     */
+    public HandAnalysis getAnalysis() {
+        return hand.getAnalysis();
+    }
+
+    public int getGangDrawAmount() {
+        return gangDrawAmount;
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.bean;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 牌墙
+ * <p>
+ * 洗好的牌按编码存放在字节数组中，正常摸牌从头部摸，开杠从尾部摸
+ * <p>
+ * 洗牌使用 {@link Random}，其算法由规范确定，相同的种子在任何环境都能洗出相同的牌墙，便于复现对局
+ * <p>
+ * 洗好后的数组不再修改，复制时只复制游标，数组在副本间共享
+ *
+ * @author Leavey
+ */
+public class Wall implements DeepCopy<Wall> {
+    private final long seed;
+    private final byte[] codes;
+    /**
+     * 下一张从头部摸的牌
+     */
+    private int head;
+    /**
+     * 尾部已摸走的牌之前的位置（不含）
+     */
+    private int tail;
+
+    /**
+     * 洗牌
+     *
+     * @param poolCodes 全部牌的编码，不会被修改
+     * @param seed      随机种子
+     */
+    public Wall(byte[] poolCodes, long seed) {
+        this.seed = seed;
+        this.codes = poolCodes.clone();
+        Random random = new Random(seed);
+        for (int i = codes.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte tmp = codes[i];
+            codes[i] = codes[j];
+            codes[j] = tmp;
+        }
+        this.head = 0;
+        this.tail = codes.length;
+    }
+
+    /**
+     * 按种子重新洗牌，并恢复到指定的位置，用于从快照还原
+     *
+     * @param poolCodes 全部牌的编码，不会被修改
+     * @param seed      随机种子
+     * @param head      头部已摸走的数量
+     * @param tail      尾部剩余的位置
+     */
+    public Wall(byte[] poolCodes, long seed, int head, int tail) {
+        this(poolCodes, seed);
+        if (head < 0 || head > tail || tail > codes.length) {
+            throw new IllegalArgumentException("牌墙位置不合法");
+        }
+        this.head = head;
+        this.tail = tail;
+    }
+
+    private Wall(long seed, byte[] codes, int head, int tail) {
+        this.seed = seed;
+        this.codes = codes;
+        this.head = head;
+        this.tail = tail;
+    }
+
+    @Override
+    public Wall deepCopy() {
+        return new Wall(seed, codes, head, tail);
+    }
+
+    /**
+     * 发牌，从头部连续取出若干张
+     *
+     * @param amount 数量
+     * @return 发出的牌
+     */
+    public List<Tile> deal(int amount) {
+        checkRemaining(amount);
+        List<Tile> tiles = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            tiles.add(Matrix.of(codes[head++]));
+        }
+        return tiles;
+    }
+
+    /**
+     * 查看头部下一张牌
+     *
+     * @return 下一张牌
+     */
+    public Tile peek() {
+        checkRemaining(1);
+        return Matrix.of(codes[head]);
+    }
+
+    /**
+     * 从头部摸一张牌
+     *
+     * @return 摸到的牌
+     */
+    public Tile draw() {
+        checkRemaining(1);
+        return Matrix.of(codes[head++]);
+    }
+
+    /**
+     * 查看尾部的若干张牌
+     *
+     * @param amount 数量
+     * @return 尾部的牌，顺序与摸牌顺序一致
+     */
+    public List<Tile> peekTail(int amount) {
+        checkRemaining(amount);
+        List<Tile> tiles = new ArrayList<>(amount);
+        for (int i = 1; i <= amount; i++) {
+            tiles.add(Matrix.of(codes[tail - i]));
+        }
+        return tiles;
+    }
+
+    /**
+     * 开杠后从尾部摸若干张牌
+     *
+     * @param amount 数量
+     * @return 摸到的牌
+     */
+    public List<Tile> drawTail(int amount) {
+        List<Tile> tiles = peekTail(amount);
+        tail -= amount;
+        return tiles;
+    }
+
+    private void checkRemaining(int amount) {
+        if (remaining() < amount) {
+            throw new IllegalStateException("牌堆中的牌不足");
+        }
+    }
+
+    /**
+     * @return 牌堆剩余数量
+     */
+    public int remaining() {
+        return tail - head;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getHead() {
+        return head;
+    }
+
+    public int getTail() {
+        return tail;
+    }
+}
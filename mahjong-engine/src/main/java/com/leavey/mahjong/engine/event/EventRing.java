@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 多生产者、单消费者的无锁环形缓冲区
+ * <p>
+ * 生产者通过 CAS 递增写序号占用槽位，再写入事件；消费者按读序号依次取出事件并清空槽位。
+ * 槽位已占用但事件还没写入时消费者会等待，因此取出的顺序与占用槽位的顺序一致
+ *
+ * @author Leavey
+ */
+final class EventRing {
+    private final AtomicReferenceArray<GameEvent> slots;
+    private final int mask;
+    /**
+     * 下一个要占用的槽位序号
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * 下一个要读取的槽位序号，只由消费者写入
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity 容量，向上取整为 2 的幂
+     */
+    EventRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("容量错误：" + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 放入事件，不阻塞
+     *
+     * @param event 事件
+     * @return 缓冲区已满返回 false
+     */
+    boolean offer(GameEvent event) {
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        //volatile 写，保证消费者休眠前检查缓冲区与发布方检查休眠标志之间不会互相错过
+        slots.set((int) t & mask, event);
+        return true;
+    }
+
+    /**
+     * 查看下一个事件，只能由消费者调用
+     *
+     * @return 事件，没有可读的事件返回 null
+     */
+    GameEvent peek() {
+        return slots.get((int) head.get() & mask);
+    }
+
+    /**
+     * 取出下一个事件，只能由消费者调用
+     *
+     * @return 事件，没有可读的事件返回 null
+     */
+    GameEvent poll() {
+        long h = head.get();
+        int index = (int) h & mask;
+        GameEvent event = slots.get(index);
+        if (event != null) {
+            slots.lazySet(index, null);
+            head.lazySet(h + 1);
+        }
+        return event;
+    }
+
+    /**
+     * @return 已占用但还没有取出的槽位数量
+     */
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
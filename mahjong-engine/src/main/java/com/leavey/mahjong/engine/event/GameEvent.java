@@ -0,0 +1,94 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.event;
+
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Operation;
+
+/**
+ * 牌局事件，牌局被创建、执行操作或回退后发布
+ * <p>
+ * 事件创建后不再修改，携带的牌局是事件发生后的快照，仓库中的快照不会再被修改，订阅者可以在任意线程读取，但不能修改
+ *
+ * @author Leavey
+ */
+public final class GameEvent {
+
+    public enum Kind {
+        /**
+         * 创建牌局，操作为发牌
+         */
+        CREATE,
+        /**
+         * 执行操作
+         */
+        PLAY,
+        /**
+         * 回退一步，操作为回退后的最后一次操作
+         */
+        BACKOFF
+    }
+
+    private final long gameId;
+    private final long sequence;
+    private final Kind kind;
+    private final Operation operation;
+    private final Game game;
+
+    public GameEvent(long gameId, long sequence, Kind kind, Game game) {
+        this.gameId = gameId;
+        this.sequence = sequence;
+        this.kind = kind;
+        this.operation = game.getLastOperation();
+        this.game = game;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    /**
+     * 事件在该局牌中的序号，从 1 开始连续递增，订阅者可以据此发现丢失的事件
+     *
+     * @return 序号
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return 事件发生后的牌局快照
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    @Override
+    public String toString() {
+        //操作的 toString 会递归输出之前的全部操作，这里只输出本次操作
+        return "GameEvent{" + gameId + "#" + sequence + " " + kind
+                + (operation == null ? "" : " " + operation.getPlayer() + " " + operation.getAction() + " " + operation.getKeyTiles()) + "}";
+    }
+}
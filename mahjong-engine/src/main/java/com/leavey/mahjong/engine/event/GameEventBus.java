@@ -0,0 +1,187 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.event;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 牌局事件总线
+ * <p>
+ * 每个订阅者拥有独立的环形缓冲区和消费线程，发布只是向每个缓冲区放入一次引用，不加锁也不等待订阅者，
+ * 订阅者处理得慢只会让自己的缓冲区积压，不会影响发布方和其他订阅者。
+ * 同一局牌的事件在该局的锁内发布，因此每个订阅者看到的同一局牌的事件严格按发生顺序排列。
+ * <p>
+ * 消费线程每次取出缓冲区中已有的全部事件（最多 {@link #MAX_BATCH} 个）依次处理，空闲时先自旋再休眠，发布方在消费线程休眠时唤醒它
+ *
+ * @author Leavey
+ */
+public class GameEventBus implements AutoCloseable {
+    /**
+     * 默认的缓冲区容量
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    /**
+     * 一批最多处理的事件数量
+     */
+    static final int MAX_BATCH = 256;
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * 以默认容量订阅
+     *
+     * @param name     订阅者名称，用于消费线程的名称
+     * @param listener 订阅者
+     */
+    public void subscribe(String name, GameEventListener listener) {
+        subscribe(name, listener, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 订阅之后发布的事件
+     *
+     * @param name     订阅者名称，用于消费线程的名称
+     * @param listener 订阅者
+     * @param capacity 缓冲区容量
+     */
+    public void subscribe(String name, GameEventListener listener, int capacity) {
+        if (closed) {
+            throw new IllegalStateException("事件总线已关闭");
+        }
+        Subscriber subscriber = new Subscriber(name, listener, capacity);
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+    }
+
+    /**
+     * 发布事件，不阻塞
+     *
+     * @param event 事件
+     */
+    public void publish(GameEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    /**
+     * 丢弃的事件总数
+     *
+     * @return /
+     */
+    public long getLost() {
+        long lost = 0;
+        for (Subscriber subscriber : subscribers) {
+            lost += subscriber.totalLost.get();
+        }
+        return lost;
+    }
+
+    /**
+     * 停止接收事件，等待订阅者处理完已经发布的事件
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Subscriber subscriber : subscribers) {
+            LockSupport.unpark(subscriber.thread);
+        }
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        subscribers.clear();
+    }
+
+    private class Subscriber {
+        private final GameEventListener listener;
+        private final EventRing ring;
+        private final Thread thread;
+        /**
+         * 还没有通知订阅者的丢弃数量
+         */
+        private final AtomicLong lost = new AtomicLong();
+        private final AtomicLong totalLost = new AtomicLong();
+        private volatile boolean sleeping;
+
+        Subscriber(String name, GameEventListener listener, int capacity) {
+            this.listener = listener;
+            this.ring = new EventRing(capacity);
+            this.thread = new Thread(this::consumeLoop, "mahjong-event-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        void offer(GameEvent event) {
+            if (!ring.offer(event)) {
+                lost.incrementAndGet();
+                totalLost.incrementAndGet();
+                return;
+            }
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void consumeLoop() {
+            int idle = 0;
+            while (!closed || ring.size() > 0) {
+                long overflow = lost.get();
+                if (overflow > 0) {
+                    lost.addAndGet(-overflow);
+                    listener.onOverflow(overflow);
+                }
+                GameEvent event = ring.poll();
+                if (event == null) {
+                    if (ring.size() > 0 || ++idle < SPINS) {
+                        //槽位已被占用但事件还没写入，或刚空闲，自旋等待
+                        Thread.onSpinWait();
+                    } else {
+                        sleeping = true;
+                        if (ring.peek() == null && !closed) {
+                            LockSupport.parkNanos(this, PARK_NANOS);
+                        }
+                        sleeping = false;
+                    }
+                    continue;
+                }
+                idle = 0;
+                for (int count = 1; ; count++) {
+                    GameEvent next = count < MAX_BATCH ? ring.peek() : null;
+                    try {
+                        listener.onEvent(event, next == null);
+                    } catch (RuntimeException e) {
+                        listener.onError(event, e);
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    event = ring.poll();
+                }
+            }
+        }
+    }
+}
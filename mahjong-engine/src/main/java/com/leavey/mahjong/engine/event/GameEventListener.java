@@ -0,0 +1,56 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.event;
+
+/**
+ * 牌局事件的订阅者
+ * <p>
+ * 每个订阅者在自己的线程中按发布顺序接收事件，同一局牌的事件严格有序。订阅者处理得慢不会阻塞发布方，
+ * 积压超过缓冲区容量时新的事件会被丢弃并通过 {@link #onOverflow(long)} 通知，此时可以根据事件的序号发现缺口，
+ * 用后续事件携带的牌局快照重新同步
+ *
+ * @author Leavey
+ */
+public interface GameEventListener {
+
+    /**
+     * 处理一个事件
+     *
+     * @param event      事件
+     * @param endOfBatch 是否是本批最后一个事件，需要批量写出的订阅者可以在此时刷新
+     */
+    void onEvent(GameEvent event, boolean endOfBatch);
+
+    /**
+     * 缓冲区已满，有事件被丢弃
+     *
+     * @param lost 自上次通知以来丢弃的事件数量
+     */
+    default void onOverflow(long lost) {
+    }
+
+    /**
+     * 处理事件时抛出了异常，默认交给线程的异常处理器，之后继续处理下一个事件
+     *
+     * @param event 事件
+     * @param e     异常
+     */
+    default void onError(GameEvent event, RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.executor;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.bean.CompleteGroup;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Player;
+import com.leavey.mahjong.engine.rule.RuleTemplate;
+import com.leavey.mahjong.engine.rule.WinTable;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.List;
+
+/**
+ * 长沙麻将严格模式的胡牌
+ * <p>
+ * 除了句话加一对 2、5、8 做将的小胡，还校验以下大胡：
+ * <ul>
+ *     <li>七小对：没有吃碰杠，14 张手牌全部是对子</li>
+ *     <li>将将胡：全部是 2、5、8，不需要组成句话</li>
+ *     <li>碰碰胡：全部是坎，将牌不限</li>
+ *     <li>清一色：全部是同一门牌，将牌不限</li>
+ * </ul>
+ *
+ * @author Leavey
+ */
+public class ChangShaWinExecutor extends WinExecutor {
+
+    public ChangShaWinExecutor() {
+        super(true);
+    }
+
+    @Override
+    protected boolean isSpecialComplete(Game game, Player player, int[] counts) {
+        List<CompleteGroup> groups = player.getCompleteGroups();
+        RuleTemplate template = game.getTemplate();
+        if (groups.isEmpty() && WinTable.isSevenPairs(counts)) {
+            return true;
+        }
+        if (isAllLeaders(template, groups, counts)) {
+            return true;
+        }
+        if (isAllTriplets(groups, counts)) {
+            return true;
+        }
+        return isOneSuit(groups, counts) && template.getWinTable().isCompleteWithAnyPair(counts);
+    }
+
+    private static boolean isAllLeaders(RuleTemplate template, List<CompleteGroup> groups, int[] counts) {
+        for (CompleteGroup group : groups) {
+            for (Tile tile : group.getTiles()) {
+                if (!template.canLeader(tile.getCode())) {
+                    return false;
+                }
+            }
+        }
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0 && !template.canLeader(code)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 吃的句话不是坎，手牌中除了一对将，其余都是坎
+     */
+    private static boolean isAllTriplets(List<CompleteGroup> groups, int[] counts) {
+        for (CompleteGroup group : groups) {
+            List<Tile> tiles = group.getTiles();
+            if (tiles.get(0).getCode() != tiles.get(1).getCode()) {
+                return false;
+            }
+        }
+        int pairs = 0;
+        for (int count : counts) {
+            if (count == 2) {
+                pairs++;
+            } else if (count != 0 && count != 3) {
+                return false;
+            }
+        }
+        return pairs == 1;
+    }
+
+    private static boolean isOneSuit(List<CompleteGroup> groups, int[] counts) {
+        Type suit = null;
+        for (CompleteGroup group : groups) {
+            Type type = group.getTiles().get(0).getType();
+            if (suit != null && suit != type) {
+                return false;
+            }
+            suit = type;
+        }
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0) {
+                continue;
+            }
+            Type type = Matrix.of(code).getType();
+            if (suit != null && suit != type) {
+                return false;
+            }
+            suit = type;
+        }
+        return true;
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.leavey.mahjong.engine.executor;
 
+import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.engine.bean.Action;
 import com.leavey.mahjong.engine.bean.ActionRequest;
 import com.leavey.mahjong.engine.bean.Game;
@@ -39,8 +40,9 @@ public class DrawExecutor implements Executor {
         if (game.focusNotExist()) {
             return true;
         }
-        //上家打出牌，作为下家可以开始摸牌
-        return game.getPrevAction() == Action.PLAY && game.isFocusNext(player);
+        //上家打出牌 || 上家开杠后打出的牌无人要，作为下家可以开始摸牌
+        Action prevAction = game.getPrevAction();
+        return (prevAction == Action.PLAY || prevAction == Action.GANG_PLAY) && game.isFocusNext(player);
     }
 
     @Override
@@ -55,11 +57,15 @@ public class DrawExecutor implements Executor {
 
     @Override
     public Operation execute(Game game, ActionRequest actionRequest) {
+        Tile tile;
         if (actionRequest.getKeyTiles() == null || actionRequest.getKeyTiles().isEmpty()) {
-            game.draw(actionRequest.getPlayer());
+            tile = game.draw(actionRequest.getPlayer());
         } else {
-            game.draw(actionRequest.getPlayer(), actionRequest.getKeyTiles().get(0));
+            tile = actionRequest.getKeyTiles().get(0);
+            game.draw(actionRequest.getPlayer(), tile);
         }
-        return new Operation(actionRequest.getPlayer(), actionRequest.getAction());
+        Operation operation = new Operation(actionRequest.getPlayer(), actionRequest.getAction());
+        operation.setDrawTile(tile);
+        return operation;
     }
 }
@@ -16,11 +16,14 @@
 
 package com.leavey.mahjong.engine.executor;
 
+import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.engine.bean.Action;
 import com.leavey.mahjong.engine.bean.ActionRequest;
 import com.leavey.mahjong.engine.bean.Game;
 import com.leavey.mahjong.engine.bean.Operation;
 
+import java.util.List;
+
 /**
  * @author Leavey
  */
@@ -44,8 +47,10 @@ public class GangDrawExecutor implements Executor {
 
     @Override
     public Operation execute(Game game, ActionRequest actionRequest) {
+        //存在牌墙时杠牌是已知的，开杠摸的牌需要全部打出，记录下来
+        List<Tile> tiles = game.getWall() == null ? null : game.getWall().peekTail(game.getTemplate().getGangDrawAmount());
         int drawAmount = game.gangDraw(actionRequest.getPlayer());
-        Operation operation = new Operation(actionRequest.getPlayer(), actionRequest.getAction());
+        Operation operation = new Operation(actionRequest.getPlayer(), actionRequest.getAction(), tiles);
         operation.setDarkTileAmount(drawAmount);
         return operation;
     }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.executor;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Operation;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 开杠后从牌墙尾部补一张牌进手牌，之后与摸牌后一样打牌、暗杠或自摸，用于没有杠后打牌的规则
+ *
+ * @author Leavey
+ */
+public class GangDrawToHandExecutor implements Executor {
+    @Override
+    public Action supportAction() {
+        return Action.GANG_DRAW;
+    }
+
+    @Override
+    public boolean validate(Game game, int player) {
+        //自身明杠或暗杠后，允许摸牌
+        return game.isFocus(player) && game.getPrevAction() == Action.GANG;
+    }
+
+    @Override
+    public boolean validate(Game game, ActionRequest actionRequest) {
+        //要么摸暗牌，要么摸一张明牌
+        return validate(game, actionRequest.getPlayer()) && Optional.ofNullable(actionRequest.getKeyTiles()).map(List::size).orElse(0) <= 1;
+    }
+
+    @Override
+    public Operation execute(Game game, ActionRequest actionRequest) {
+        List<Tile> keyTiles = actionRequest.getKeyTiles();
+        Tile tile = game.gangDrawToHand(actionRequest.getPlayer(), keyTiles == null || keyTiles.isEmpty() ? null : keyTiles.get(0));
+        Operation operation = new Operation(actionRequest.getPlayer(), actionRequest.getAction(), tile == null ? null : List.of(tile));
+        operation.setDarkTileAmount(1);
+        return operation;
+    }
+}
@@ -43,8 +43,8 @@ public class GangExecutor implements Executor {
 
     private boolean allowDarkGang(Game game, int player) {
         Action action = game.getPrevAction();
-        //自身摸牌、吃牌、碰牌后，允许开杠，且为暗杠
-        if (game.isFocus(player) && (action == Action.DRAW || action == Action.EAT || action == Action.PEN)) {
+        //自身摸牌、吃牌、碰牌、开杠后把牌补进手牌后，允许开杠，且为暗杠
+        if (game.isFocus(player) && (action == Action.DRAW || action == Action.EAT || action == Action.PEN) || game.isGangDrawnToHand(player)) {
             return true;
         }
         //杠自身之前杠出的牌，允许开杠，且为暗杠
@@ -73,8 +73,8 @@ public class GangExecutor implements Executor {
         boolean dark = allowDarkGang(game, actionRequest.getPlayer());
         boolean outside = true;
         Action action = game.getPrevAction();
-        if (dark && (action == Action.DRAW || action == Action.EAT || action == Action.PEN)) {
-            //暗杠，且前一个操作是自身摸牌，吃牌，碰牌，开杠的4张牌都在手里
+        if (dark && (action == Action.DRAW || action == Action.EAT || action == Action.PEN || game.isGangDrawnToHand(actionRequest.getPlayer()))) {
+            //暗杠，且前一个操作是自身摸牌，吃牌，碰牌，开杠后补牌进手牌，开杠的4张牌都在手里
             //此处不需要再判断是否自身，因为dark的变量为true已经代表自身了
             outside = false;
         }
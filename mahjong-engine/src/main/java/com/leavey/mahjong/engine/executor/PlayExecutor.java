@@ -32,9 +32,9 @@ public class PlayExecutor implements Executor {
 
     @Override
     public boolean validate(Game game, int player) {
-        //自身摸牌、吃牌、碰牌后，允许打牌
+        //自身摸牌、吃牌、碰牌、开杠后把牌补进手牌后，允许打牌
         Action action = game.getPrevAction();
-        return game.isFocus(player) && (action == Action.DRAW || action == Action.EAT || action == Action.PEN);
+        return game.isFocus(player) && (action == Action.DRAW || action == Action.EAT || action == Action.PEN) || game.isGangDrawnToHand(player);
     }
 
     @Override
@@ -16,15 +16,40 @@
 
 package com.leavey.mahjong.engine.executor;
 
+import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.engine.bean.Action;
 import com.leavey.mahjong.engine.bean.ActionRequest;
 import com.leavey.mahjong.engine.bean.Game;
 import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.bean.Player;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.List;
 
 /**
+ * 胡牌
+ * <p>
+ * 默认只校验轮次和胡的牌，严格模式下玩家的手牌全部已知时（发牌或明牌），还会按规则的胡牌表校验是否真的胡牌
+ *
  * @author Leavey
  */
 public class WinExecutor implements Executor {
+    /**
+     * 严格模式
+     */
+    private final boolean strict;
+
+    public WinExecutor() {
+        this(false);
+    }
+
+    /**
+     * @param strict 是否严格模式
+     */
+    public WinExecutor(boolean strict) {
+        this.strict = strict;
+    }
+
     @Override
     public Action supportAction() {
         return Action.WIN;
@@ -41,13 +66,60 @@ public class WinExecutor implements Executor {
             //其他家打出的牌
             return true;
         }
-        //自身刚摸了牌
-        return game.isFocus(player) && action == Action.DRAW;
+        //自身刚摸了牌，或开杠后刚把牌补进手牌
+        return game.isFocus(player) && action == Action.DRAW || game.isGangDrawnToHand(player);
     }
 
     @Override
     public boolean validate(Game game, ActionRequest actionRequest) {
-        return validate(game, actionRequest.getPlayer()) && actionRequest.getKeyTiles().size() == 1;
+        if (!validate(game, actionRequest.getPlayer()) || actionRequest.getKeyTiles().size() != 1) {
+            return false;
+        }
+        return !strict || isComplete(game, actionRequest.getPlayer(), actionRequest.getKeyTiles().get(0));
+    }
+
+    /**
+     * 校验玩家加上胡的牌后是否真的胡牌，手牌中有未知的暗牌时无法校验，直接通过
+     *
+     * @param game   牌局
+     * @param player 玩家
+     * @param tile   胡的牌
+     * @return /
+     */
+    private boolean isComplete(Game game, int player, Tile tile) {
+        Player target = game.getPlayers()[player];
+        if (!target.isHandKnown()) {
+            return true;
+        }
+        int[] counts = new int[Matrix.CODE_BOUND];
+        target.countHand(counts);
+        Operation prev = game.getPrevOperation();
+        if (game.isFocus(player) && prev.getAction() == Action.DRAW || game.isGangDrawnToHand(player)) {
+            //自摸的牌已经在手中
+            if (counts[tile.getCode()] == 0) {
+                return false;
+            }
+        } else {
+            //胡的牌必须是刚打出的牌
+            List<Tile> keyTiles = prev.getKeyTiles();
+            if (keyTiles == null || !keyTiles.contains(tile)) {
+                return false;
+            }
+            counts[tile.getCode()]++;
+        }
+        return game.getTemplate().getWinTable().isComplete(counts) || isSpecialComplete(game, target, counts);
+    }
+
+    /**
+     * 不满足句话加一对将的特殊胡牌，由具体规则扩展，默认没有
+     *
+     * @param game   牌局
+     * @param player 胡牌的玩家
+     * @param counts 加上胡的牌后的手牌，下标为牌的编码
+     * @return 胡牌返回 true
+     */
+    protected boolean isSpecialComplete(Game game, Player player, int[] counts) {
+        return false;
     }
 
     @Override
@@ -57,8 +129,8 @@ public class WinExecutor implements Executor {
         //胡的牌是否来自外部，杠上开花时特殊处理，胡的牌来自外部，上一个操作是自身打出杠牌，为了清理玩家手中的杠牌引用
         boolean outside;
         Action action = game.getPrevAction();
-        if (game.isFocus(actionRequest.getPlayer()) && action == Action.DRAW) {
-            //自摸
+        if (game.isFocus(actionRequest.getPlayer()) && action == Action.DRAW || game.isGangDrawnToHand(actionRequest.getPlayer())) {
+            //自摸，包括开杠后补进手牌的牌
             self = true;
             outside = false;
         } else if (game.isFocus(actionRequest.getPlayer()) && action == Action.GANG_PLAY) {
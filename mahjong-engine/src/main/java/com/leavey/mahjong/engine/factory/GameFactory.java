@@ -19,53 +19,587 @@ package com.leavey.mahjong.engine.factory;
 import com.leavey.mahjong.engine.bean.Action;
 import com.leavey.mahjong.engine.bean.ActionRequest;
 import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.event.GameEvent;
+import com.leavey.mahjong.engine.event.GameEventBus;
 import com.leavey.mahjong.engine.executor.*;
+import com.leavey.mahjong.engine.metrics.GameMetrics;
+import com.leavey.mahjong.engine.metrics.RepositoryStats;
+import com.leavey.mahjong.engine.persist.GameJournal;
 import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
+ * 牌局仓库
+ * <p>
+ * 线程安全，同一局牌的操作在该局的锁内执行，不同牌局之间互不阻塞。设置了事件总线时，每次状态变化都会发布 {@link GameEvent}
+ *
  * @author Leavey
  */
 public class GameFactory {
 
-    private static Map<Long, LinkedList<Game>> REPOSITORY = new HashMap<>();
+    private static final Map<Long, Timeline> REPOSITORY = new ConcurrentHashMap<>();
+    /**
+     * 牌局日志，为 null 时不持久化
+     */
+    private static volatile GameJournal JOURNAL;
+    /**
+     * 牌局事件总线，为 null 时不发布事件
+     */
+    private static volatile GameEventBus EVENT_BUS;
+    /**
+     * 监控指标，默认不记录
+     */
+    private static volatile GameMetrics METRICS = GameMetrics.NOOP;
+    /**
+     * 开始关闭后不再接受会写入日志的修改
+     */
+    private static volatile boolean CLOSED;
+    /**
+     * 最后分配的牌局id，保证同一毫秒内创建的牌局id不重复
+     */
+    private static final AtomicLong LAST_ID = new AtomicLong();
+    /**
+     * 最后分配的状态版本，从启动时的毫秒数乘以 1000 开始，重启后不会与之前分配的版本重复，
+     * 且不超过 JavaScript 能精确表示的整数范围
+     */
+    private static final AtomicLong LAST_VERSION = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    /**
+     * 主线分支的名称，只有主线会写入日志、发布事件
+     */
+    public static final String MAIN_BRANCH = "main";
+
+    /**
+     * 历史中的一个状态，指向上一个状态，多个分支可以共享同一段历史
+     */
+    private static final class Node {
+        private final Game game;
+        private final Node prev;
+        /**
+         * 到这个节点为止的历史状态数量
+         */
+        private final int entries;
+        /**
+         * 到这个节点为止的历史状态占用内存的估计值
+         */
+        private final long bytes;
+
+        private Node(Game game, Node prev) {
+            this.game = game;
+            this.prev = prev;
+            this.entries = prev == null ? 1 : prev.entries + 1;
+            this.bytes = (prev == null ? 0 : prev.bytes) + game.estimateSize();
+        }
+    }
+
+    /**
+     * 一局牌的历史，同时记录最后一条日志的序号和最后一个事件的序号
+     * <p>
+     * 每个分支只记录最新状态的节点，节点与牌局快照都不可修改，分叉只需要增加一个指向已有节点的引用
+     */
+    private static class Timeline {
+        private Node main;
+        /**
+         * 假设分支，第一次分叉时才创建
+         */
+        private Map<String, Node> branches;
+        private long lsn;
+        private long eventSequence;
+
+        private Timeline(Game game) {
+            this.main = new Node(game, null);
+        }
+
+        private Node head(String branch) {
+            if (MAIN_BRANCH.equals(branch)) {
+                return main;
+            }
+            Node head = branches == null ? null : branches.get(branch);
+            if (head == null) {
+                throw new IllegalArgumentException("分支不存在：" + branch);
+            }
+            return head;
+        }
+
+        private void setHead(String branch, Node head) {
+            if (MAIN_BRANCH.equals(branch)) {
+                main = head;
+            } else {
+                branches.put(branch, head);
+            }
+        }
+
+        /**
+         * 在锁内发布事件，保证同一局牌的事件按发生顺序进入总线
+         */
+        private void publish(long id, GameEvent.Kind kind, Game game) {
+            GameEventBus bus = EVENT_BUS;
+            if (bus != null) {
+                bus.publish(new GameEvent(id, ++eventSequence, kind, game));
+            }
+        }
+    }
+
+    /**
+     * 设置牌局日志，之后被接受的操作都会写入日志，日志需要已经完成恢复
+     *
+     * @param journal 牌局日志
+     */
+    public static void setJournal(GameJournal journal) {
+        JOURNAL = journal;
+    }
+
+    /**
+     * 停止接受主线上的修改：创建牌局、执行操作、回退，之后这些调用抛出 {@link IllegalStateException}
+     * <p>
+     * 修改在牌局的锁内检查该标记，返回之后再写入的检查点一定包含全部已经被接受的修改，可以安全地关闭日志
+     */
+    public static void close() {
+        CLOSED = true;
+    }
+
+    private static void checkOpen() {
+        if (CLOSED) {
+            throw new IllegalStateException("服务正在关闭，不再接受修改");
+        }
+    }
+
+    /**
+     * 设置牌局事件总线，之后创建牌局、执行操作、回退都会发布事件，发布不会阻塞请求
+     *
+     * @param bus 事件总线
+     */
+    public static void setEventBus(GameEventBus bus) {
+        EVENT_BUS = bus;
+    }
+
+    /**
+     * 设置监控指标
+     *
+     * @param metrics 监控指标，为 null 时不记录
+     */
+    public static void setMetrics(GameMetrics metrics) {
+        METRICS = metrics == null ? GameMetrics.NOOP : metrics;
+    }
+
+    /**
+     * 统计仓库中的牌局与历史状态，主线直接读取最新节点上的累计值，
+     * 假设分支从最新节点往前只统计到与主线或其他分支共享的节点为止，共享的历史只计算一次
+     *
+     * @return 统计
+     */
+    public static RepositoryStats stats() {
+        int games = 0;
+        long entries = 0;
+        long bytes = 0;
+        for (Timeline timeline : REPOSITORY.values()) {
+            synchronized (timeline) {
+                games++;
+                entries += timeline.main.entries;
+                bytes += timeline.main.bytes;
+                if (timeline.branches != null) {
+                    Set<Node> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+                    for (Node head : timeline.branches.values()) {
+                        Node main = timeline.main;
+                        for (Node node = head; node != null && counted.add(node); node = node.prev) {
+                            //节点的累计数量等于主线上同一深度的节点时才可能是主线上的节点
+                            while (main != null && main.entries > node.entries) {
+                                main = main.prev;
+                            }
+                            if (main == node) {
+                                break;
+                            }
+                            entries++;
+                            bytes += node.bytes - (node.prev == null ? 0 : node.prev.bytes);
+                        }
+                    }
+                }
+            }
+        }
+        return new RepositoryStats(games, entries, bytes);
+    }
+
+    /**
+     * 放入从日志恢复的牌局
+     * <p>
+     * 恢复的牌局没有历史快照，回退时通过重新执行操作得到之前的状态
+     *
+     * @param games 牌局
+     */
+    public static void restore(Collection<Game> games) {
+        for (Game game : games) {
+            game.setVersion(LAST_VERSION.incrementAndGet());
+            REPOSITORY.put(game.getId(), new Timeline(game));
+            LAST_ID.accumulateAndGet(game.getId(), Math::max);
+        }
+    }
+
+    /**
+     * 从仓库中移除牌局，释放全部分支与历史状态，用于进程内重放已结束的牌局
+     * <p>
+     * 日志中没有移除记录，开启日志时移除的牌局会在恢复后重新出现，因此不允许移除
+     *
+     * @param id 牌局id
+     */
+    public static void remove(long id) {
+        if (JOURNAL != null) {
+            throw new IllegalStateException("已开启牌局日志，不能移除牌局");
+        }
+        REPOSITORY.remove(id);
+    }
 
     public static Game newGame(Rule rule) {
-        long id = System.currentTimeMillis();
+        if (JOURNAL != null) {
+            //日志中按名称保存规则，放入仓库之前检查，未注册的规则不会留下没有日志的牌局
+            RuleRegistry.persistentId(rule);
+        }
+        long now = System.currentTimeMillis();
+        long id = LAST_ID.updateAndGet(last -> Math.max(now, last + 1));
         Game game = new Game(id, rule);
-        LinkedList<Game> games = new LinkedList<>();
-        REPOSITORY.put(id, games);
-        games.addLast(game);
+        game.setVersion(LAST_VERSION.incrementAndGet());
+        Timeline timeline = new Timeline(game);
+        synchronized (timeline) {
+            REPOSITORY.put(id, timeline);
+            //先放入仓库再检查，关闭后写入的检查点要么包含这局牌，要么这里一定能看到关闭标记
+            if (CLOSED) {
+                REPOSITORY.remove(id, timeline);
+                checkOpen();
+            }
+            //牌局先放入仓库再写日志，检查点读取到的序号对应的牌局一定已经存在
+            GameJournal journal = JOURNAL;
+            timeline.lsn = journal == null ? 0 : journal.logCreate(game);
+            timeline.publish(id, GameEvent.Kind.CREATE, game);
+        }
         return game;
     }
 
     public static Game get(long id) {
-        return REPOSITORY.get(id).peekLast();
+        return get(id, MAIN_BRANCH);
+    }
+
+    /**
+     * 查询分支的最新状态
+     *
+     * @param id     牌局id
+     * @param branch 分支名称
+     * @return 牌局，不能修改
+     */
+    public static Game get(long id, String branch) {
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            return timeline.head(branch).game;
+        }
     }
 
     public static Game play(long id, ActionRequest actionRequest) {
-        Game game = REPOSITORY.get(id).peekLast();
-        Game nextGame = game.deepCopy();
-        nextGame.play(actionRequest);
-        REPOSITORY.get(id).addLast(nextGame);
-        return nextGame;
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            checkOpen();
+            timeline.main = next(timeline.main, actionRequest);
+            Game nextGame = timeline.main.game;
+            //操作被接受后才写入日志
+            GameJournal journal = JOURNAL;
+            if (journal != null) {
+                timeline.lsn = journal.logPlay(id, actionRequest);
+            }
+            timeline.publish(id, GameEvent.Kind.PLAY, nextGame);
+            return nextGame;
+        }
+    }
+
+    /**
+     * 原子地执行一次请求中的多个操作，例如碰后出牌、杠后补牌再出牌
+     * <p>
+     * 全部操作在锁内依次校验并执行，任何一步失败时主线保持不变；全部成功后才提交，
+     * 只写一条日志。每一步仍然是一条独立的历史，回退时逐步回退，提交后也按顺序为每一步发布一个事件
+     *
+     * @param id       牌局id
+     * @param requests 按顺序执行的操作请求
+     * @return 执行后的牌局
+     */
+    public static Game play(long id, List<ActionRequest> requests) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("操作请求不能为空");
+        }
+        if (requests.size() == 1) {
+            return play(id, requests.get(0));
+        }
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            checkOpen();
+            Node head = timeline.main;
+            for (ActionRequest request : requests) {
+                head = next(head, request);
+            }
+            timeline.main = head;
+            GameJournal journal = JOURNAL;
+            if (journal != null) {
+                timeline.lsn = journal.logPlays(id, requests);
+            }
+            //从旧的最新状态开始按顺序发布每一步，订阅者不会漏掉中间的操作
+            Node[] steps = new Node[requests.size()];
+            Node node = head;
+            for (int i = steps.length - 1; i >= 0; i--) {
+                steps[i] = node;
+                node = node.prev;
+            }
+            for (Node step : steps) {
+                timeline.publish(id, GameEvent.Kind.PLAY, step.game);
+            }
+            return head.game;
+        }
     }
 
     public static Game backoff(long id) {
-        LinkedList<Game> games = REPOSITORY.get(id);
-        Game game = games.pollLast();
-        Game prevGame = games.peekLast();
-        if (prevGame == null) {
-            games.addLast(game);
-            return game;
-        } else {
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            checkOpen();
+            timeline.main = prev(timeline.main);
+            Game prevGame = timeline.main.game;
+            GameJournal journal = JOURNAL;
+            if (journal != null) {
+                timeline.lsn = journal.logBackoff(id);
+            }
+            timeline.publish(id, GameEvent.Kind.BACKOFF, prevGame);
             return prevGame;
         }
     }
 
+    /**
+     * 在分支上执行操作，主线上执行与 {@link #play(long, ActionRequest)} 相同，假设分支上执行不写日志、不发布事件
+     *
+     * @param id            牌局id
+     * @param branch        分支名称
+     * @param actionRequest 操作请求
+     * @return 执行后的牌局
+     */
+    public static Game play(long id, String branch, ActionRequest actionRequest) {
+        if (MAIN_BRANCH.equals(branch)) {
+            return play(id, actionRequest);
+        }
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            Node head = next(timeline.head(branch), actionRequest);
+            timeline.setHead(branch, head);
+            return head.game;
+        }
+    }
+
+    /**
+     * 在分支上回退一步，主线上回退与 {@link #backoff(long)} 相同
+     *
+     * @param id     牌局id
+     * @param branch 分支名称
+     * @return 回退后的牌局
+     */
+    public static Game backoff(long id, String branch) {
+        if (MAIN_BRANCH.equals(branch)) {
+            return backoff(id);
+        }
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            Node head = prev(timeline.head(branch));
+            timeline.setHead(branch, head);
+            return head.game;
+        }
+    }
+
+    /**
+     * 从已有分支的某个状态分叉出一个假设分支
+     * <p>
+     * 新分支与原分支共享分叉点之前的全部历史，之后在新分支上执行的每个操作只复制发生变化的玩家。
+     * 假设分支只存在于内存中，不写日志、不写入检查点，重启后丢失
+     *
+     * @param id     牌局id
+     * @param from   原分支名称
+     * @param branch 新分支名称
+     * @param steps  从原分支最新状态往前回退的步数，0 表示从最新状态分叉
+     * @return 新分支的最新状态
+     */
+    public static Game fork(long id, String from, String branch, int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("回退步数不能为负数");
+        }
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            if (MAIN_BRANCH.equals(branch) || (timeline.branches != null && timeline.branches.containsKey(branch))) {
+                throw new IllegalArgumentException("分支已存在：" + branch);
+            }
+            Node head = timeline.head(from);
+            while (steps > 0 && head.prev != null) {
+                head = head.prev;
+                steps--;
+            }
+            if (steps > 0) {
+                //没有更早的历史快照时重新执行之前的操作
+                int amount = head.game.getOperations().size() - steps;
+                if (amount < 0) {
+                    throw new IllegalArgumentException("回退步数超过了已有的操作数量");
+                }
+                Game game = head.game.replay(amount);
+                game.setVersion(LAST_VERSION.incrementAndGet());
+                head = new Node(game, null);
+            }
+            if (timeline.branches == null) {
+                timeline.branches = new HashMap<>();
+            }
+            timeline.branches.put(branch, head);
+            return head.game;
+        }
+    }
+
+    /**
+     * 删除假设分支，只被该分支引用的历史随之释放
+     *
+     * @param id     牌局id
+     * @param branch 分支名称
+     */
+    public static void dropBranch(long id, String branch) {
+        if (MAIN_BRANCH.equals(branch)) {
+            throw new IllegalArgumentException("不能删除主线");
+        }
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            if (timeline.branches == null || timeline.branches.remove(branch) == null) {
+                throw new IllegalArgumentException("分支不存在：" + branch);
+            }
+        }
+    }
+
+    /**
+     * 查询牌局的全部分支
+     *
+     * @param id 牌局id
+     * @return 分支名称，主线在最前面
+     */
+    public static List<String> branches(long id) {
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            List<String> names = new ArrayList<>();
+            names.add(MAIN_BRANCH);
+            if (timeline.branches != null) {
+                names.addAll(new TreeSet<>(timeline.branches.keySet()));
+            }
+            return names;
+        }
+    }
+
+    /**
+     * 在最新状态的副本上执行操作，开启监控时分别记录复制、校验、执行的耗时
+     */
+    private static Node next(Node head, ActionRequest actionRequest) {
+        GameMetrics metrics = METRICS;
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        Game nextGame = head.game.deepCopy();
+        long copied = timed ? System.nanoTime() : 0;
+        Executor executor;
+        try {
+            executor = nextGame.validate(actionRequest);
+        } catch (IllegalStateException e) {
+            if (timed) {
+                metrics.recordRejected(actionRequest.getAction());
+            }
+            throw e;
+        }
+        long validated = timed ? System.nanoTime() : 0;
+        nextGame.apply(executor, actionRequest);
+        if (timed) {
+            metrics.recordPlay(actionRequest.getAction(), validated - copied, System.nanoTime() - validated, copied - start);
+        }
+        nextGame.setVersion(LAST_VERSION.incrementAndGet());
+        return new Node(nextGame, head);
+    }
+
+    /**
+     * 回退一步，回退后的状态分配新的版本，保证客户端看到的版本单调递增
+     */
+    private static Node prev(Node head) {
+        Game prevGame;
+        Node prevPrev = null;
+        if (head.prev != null) {
+            prevGame = head.prev.game.deepCopy();
+            prevPrev = head.prev.prev;
+        } else {
+            //没有历史快照时重新执行之前的操作
+            prevGame = GameJournal.backoff(head.game);
+            if (prevGame == head.game) {
+                prevGame = prevGame.deepCopy();
+            }
+        }
+        prevGame.setVersion(LAST_VERSION.incrementAndGet());
+        return new Node(prevGame, prevPrev);
+    }
+
+    /**
+     * 阻塞等待牌局目前为止的日志落盘，没有日志时直接返回
+     *
+     * @param id 牌局id
+     */
+    public static void awaitDurable(long id) {
+        GameJournal journal = JOURNAL;
+        long lsn = lsn(id);
+        if (journal != null && lsn > 0) {
+            journal.await(lsn);
+        }
+    }
+
+    /**
+     * 异步等待牌局目前为止的日志落盘，不阻塞调用线程
+     *
+     * @param id 牌局id
+     * @return 落盘后完成的 future
+     */
+    public static CompletableFuture<Void> whenDurable(long id) {
+        GameJournal journal = JOURNAL;
+        long lsn = lsn(id);
+        if (journal == null || lsn == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return journal.whenDurable(lsn);
+    }
+
+    private static long lsn(long id) {
+        Timeline timeline = REPOSITORY.get(id);
+        synchronized (timeline) {
+            return timeline.lsn;
+        }
+    }
+
+    /**
+     * 把全部牌局的当前状态写入检查点
+     *
+     * @throws IOException 写入失败
+     */
+    public static void checkpoint() throws IOException {
+        GameJournal journal = JOURNAL;
+        if (journal == null) {
+            return;
+        }
+        //先读取序号，之后读取到的牌局一定包含了不大于该序号的日志
+        long lsn = journal.getLastLsn();
+        List<Game> games = new ArrayList<>(REPOSITORY.size());
+        long[] lsns = new long[REPOSITORY.size()];
+        for (Timeline timeline : REPOSITORY.values()) {
+            synchronized (timeline) {
+                if (games.size() == lsns.length) {
+                    lsns = Arrays.copyOf(lsns, lsns.length * 2 + 1);
+                }
+                lsns[games.size()] = timeline.lsn;
+                games.add(timeline.main.game);
+            }
+        }
+        journal.checkpoint(games, lsns, lsn);
+    }
+
     public static Map<Action, Executor> defaultExecutorMap() {
         List<Executor> executors = new ArrayList<>();
         executors.add(new DrawExecutor());
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.metrics;
+
+import com.leavey.mahjong.engine.bean.Action;
+
+/**
+ * 牌局引擎的监控指标
+ * <p>
+ * 引擎不依赖具体的监控库，由使用方实现后通过 {@link com.leavey.mahjong.engine.factory.GameFactory#setMetrics(GameMetrics)} 设置。
+ * {@link #isEnabled()} 返回 false 时引擎不会读取时钟，也不会调用其他方法，没有设置时使用 {@link #NOOP}
+ *
+ * @author Leavey
+ */
+public interface GameMetrics {
+    /**
+     * 不记录任何指标
+     */
+    GameMetrics NOOP = new GameMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordPlay(Action action, long validateNanos, long executeNanos, long copyNanos) {
+        }
+
+        @Override
+        public void recordRejected(Action action) {
+        }
+    };
+
+    /**
+     * @return 是否需要记录，每次操作都会调用，需要足够快
+     */
+    boolean isEnabled();
+
+    /**
+     * 记录一次被接受的操作
+     *
+     * @param action        操作
+     * @param validateNanos 校验耗时
+     * @param executeNanos  执行耗时，包括之后的手牌分析
+     * @param copyNanos     复制上一个状态的耗时
+     */
+    void recordPlay(Action action, long validateNanos, long executeNanos, long copyNanos);
+
+    /**
+     * 记录一次校验失败的操作
+     *
+     * @param action 操作
+     */
+    void recordRejected(Action action);
+}
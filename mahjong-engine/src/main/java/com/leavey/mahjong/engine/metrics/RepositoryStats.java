@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.metrics;
+
+/**
+ * 牌局仓库的统计
+ *
+ * @author Leavey
+ */
+public final class RepositoryStats {
+    private final int games;
+    private final long entries;
+    private final long bytes;
+
+    public RepositoryStats(int games, long entries, long bytes) {
+        this.games = games;
+        this.entries = entries;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return 仓库中的牌局数量
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * @return 全部分支保留的历史状态数量，分支之间共享的历史只计算一次
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return 历史状态占用内存的估计值，分支之间共享的历史只计算一次
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.persist;
+
+/**
+ * 预写日志刷盘策略
+ *
+ * @author Leavey
+ */
+public enum FsyncPolicy {
+    /**
+     * 每次组提交都刷盘，请求在刷盘后才返回，宕机不丢失已确认的操作
+     */
+    ALWAYS,
+    /**
+     * 每次组提交写入操作系统，按固定间隔刷盘，进程崩溃不丢失，宕机最多丢失一个间隔内的操作
+     */
+    INTERVAL,
+    /**
+     * 写入完全异步，由操作系统决定何时刷盘，请求不等待日志写入
+     */
+    NEVER
+}
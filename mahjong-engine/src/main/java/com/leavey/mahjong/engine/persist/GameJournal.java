@@ -0,0 +1,380 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.persist;
+
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.replay.ReplayCodec;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 牌局日志，由预写日志和检查点快照组成
+ * <p>
+ * 每个被接受的操作都追加到预写日志，检查点把全部牌局的当前状态写入一个快照文件，并删除已经包含在快照中的日志段。
+ * 启动时先并行解码最新的快照，再按牌局分组，并行执行快照之后的日志，不需要重新执行牌局的全部历史
+ * <p>
+ * 使用前必须先调用 {@link #recover(Function, int)}，恢复完成后才开始写入新的日志
+ *
+ * @author Leavey
+ */
+public class GameJournal implements Closeable {
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOT_MAGIC = 0x4D4A5350;
+    private static final byte SNAPSHOT_VERSION = 1;
+    private static final Map<String, Rule> RULES = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalMillis;
+    private final long segmentBytes;
+    private WriteAheadLog log;
+    private final Object checkpointLock = new Object();
+    /**
+     * 最后一个检查点的日志序号
+     */
+    private long checkpointLsn = -1;
+
+    /**
+     * @param dir                 日志目录，不存在时自动创建
+     * @param policy              刷盘策略
+     * @param fsyncIntervalMillis 刷盘间隔，仅 {@link FsyncPolicy#INTERVAL} 使用
+     * @param segmentBytes        日志段文件大小
+     */
+    public GameJournal(Path dir, FsyncPolicy policy, long fsyncIntervalMillis, long segmentBytes) {
+        this.dir = dir;
+        this.policy = policy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * 从最新的快照和之后的日志恢复全部牌局，然后开始写入新的日志
+     *
+     * @param rules   根据规则名称获取规则，见 {@link #newRule(String)}
+     * @param threads 恢复使用的线程数
+     * @return 恢复的牌局
+     * @throws IOException 读取失败或日志损坏
+     */
+    public synchronized List<Game> recover(Function<String, Rule> rules, int threads) throws IOException {
+        if (log != null) {
+            throw new IllegalStateException("牌局日志已经恢复");
+        }
+        Files.createDirectories(dir);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            Map<Long, Game> games = new ConcurrentHashMap<>();
+            Map<Long, Long> gameLsns = new ConcurrentHashMap<>();
+            long cutLsn = 0;
+            Path snapshot = latestSnapshot();
+            if (snapshot != null) {
+                cutLsn = readSnapshot(snapshot, rules, pool, threads, games, gameLsns);
+                checkpointLsn = cutLsn;
+            }
+            Map<Long, List<LogRecord>> tails = new LinkedHashMap<>();
+            long lastLsn = WriteAheadLog.read(dir, cutLsn, record -> {
+                //快照中的牌局可能已经包含了检查点之后的部分日志
+                if (record.getLsn() > gameLsns.getOrDefault(record.getGameId(), 0L)) {
+                    tails.computeIfAbsent(record.getGameId(), id -> new ArrayList<>()).add(record);
+                }
+            });
+            List<Map.Entry<Long, List<LogRecord>>> entries = new ArrayList<>(tails.entrySet());
+            runChunks(pool, threads, entries.size(), index -> {
+                Map.Entry<Long, List<LogRecord>> entry = entries.get(index);
+                games.put(entry.getKey(), apply(games.get(entry.getKey()), entry.getValue(), rules));
+            });
+            log = new WriteAheadLog(dir, lastLsn + 1, policy, fsyncIntervalMillis, segmentBytes);
+            return games.values().stream().sorted((a, b) -> Long.compare(a.getId(), b.getId())).collect(Collectors.toList());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Game apply(Game game, List<LogRecord> records, Function<String, Rule> rules) {
+        for (LogRecord record : records) {
+            try {
+                if (record.getType() == LogRecord.CREATE) {
+                    game = new Game(record.getGameId(), rules.apply(record.getRuleName()));
+                } else if (game == null) {
+                    throw new IllegalStateException("牌局不存在");
+                } else if (record.getType() == LogRecord.PLAY || record.getType() == LogRecord.PLAYS) {
+                    for (ActionRequest request : record.getRequests()) {
+                        game.play(request);
+                    }
+                } else if (record.getType() == LogRecord.BACKOFF) {
+                    game = backoff(game);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("恢复牌局" + record.getGameId() + "失败，日志序号：" + record.getLsn(), e);
+            }
+        }
+        return game;
+    }
+
+    /**
+     * 回退一步，与保存历史快照时的回退结果一致：没有操作时保持不变
+     *
+     * @param game 牌局
+     * @return 回退后的牌局
+     */
+    public static Game backoff(Game game) {
+        int amount = game.getOperations().size();
+        return amount == 0 ? game : game.replay(amount - 1);
+    }
+
+    public long logCreate(Game game) {
+        return log().appendCreate(game.getId(), RuleRegistry.persistentId(game.getRule()));
+    }
+
+    public long logPlay(long gameId, ActionRequest request) {
+        return log().appendPlay(gameId, request);
+    }
+
+    public long logPlays(long gameId, List<ActionRequest> requests) {
+        return log().appendPlays(gameId, requests);
+    }
+
+    public long logBackoff(long gameId) {
+        return log().appendBackoff(gameId);
+    }
+
+    /**
+     * 等待日志按刷盘策略落盘，请在锁外调用
+     *
+     * @param lsn 日志序号
+     */
+    public void await(long lsn) {
+        log().await(lsn);
+    }
+
+    /**
+     * 异步等待日志按刷盘策略落盘
+     *
+     * @param lsn 日志序号
+     * @return 落盘后完成的 future
+     */
+    public CompletableFuture<Void> whenDurable(long lsn) {
+        return log().whenDurable(lsn);
+    }
+
+    /**
+     * @return 最后一条日志的序号
+     */
+    public long getLastLsn() {
+        return log().getLastLsn();
+    }
+
+    private WriteAheadLog log() {
+        if (log == null) {
+            throw new IllegalStateException("牌局日志尚未恢复");
+        }
+        return log;
+    }
+
+    /**
+     * 写入检查点
+     * <p>
+     * 调用方先读取 {@link #getLastLsn()} 作为 lsn，再逐个读取牌局的状态以及该牌局最后一条日志的序号，二者需要在牌局的锁内一起读取。
+     * 牌局状态先于日志更新，因此序号不大于 lsn 的日志都已经体现在牌局中，删除这些日志是安全的，
+     * 而序号更大的日志是否已经体现在牌局中，恢复时由牌局自身的序号判断
+     *
+     * @param games    全部牌局
+     * @param gameLsns 每局牌最后一条日志的序号，与 games 一一对应
+     * @param lsn      读取牌局之前的最后一条日志的序号
+     * @throws IOException 写入失败
+     */
+    public void checkpoint(List<Game> games, long[] gameLsns, long lsn) throws IOException {
+        synchronized (checkpointLock) {
+            if (lsn > checkpointLsn) {
+                writeCheckpoint(games, gameLsns, lsn);
+                checkpointLsn = lsn;
+            }
+        }
+    }
+
+    private void writeCheckpoint(List<Game> games, long[] gameLsns, long lsn) throws IOException {
+        WriteAheadLog log = log();
+        //之后的日志写入新的段文件，旧的段文件才能删除
+        log.roll();
+        Path target = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, lsn, SNAPSHOT_SUFFIX));
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(SNAPSHOT_MAGIC).put(SNAPSHOT_VERSION).putLong(lsn).putInt(games.size());
+            for (int i = 0; i < games.size(); i++) {
+                Game game = games.get(i);
+                int size = GameSnapshotCodec.estimateSize(game) + 12;
+                if (buffer.remaining() < size) {
+                    drain(channel, buffer);
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocate(size);
+                    }
+                }
+                buffer.putLong(gameLsns[i]);
+                //预留长度，编码后回填
+                int start = buffer.position();
+                buffer.position(start + 4);
+                GameSnapshotCodec.write(game, buffer);
+                buffer.putInt(start, buffer.position() - start - 4);
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (Path snapshot : snapshots()) {
+            if (snapshot.compareTo(target) < 0) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+        WriteAheadLog.deleteSegments(dir, lsn);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Path latestSnapshot() throws IOException {
+        List<Path> snapshots = snapshots();
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    private static long readSnapshot(Path path, Function<String, Rule> rules, ExecutorService pool, int threads, Map<Long, Game> games, Map<Long, Long> gameLsns) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.get() != SNAPSHOT_VERSION) {
+            throw new IOException("不是牌局快照：" + path);
+        }
+        long lsn = buffer.getLong();
+        int amount = buffer.getInt();
+        //先顺序切分出每局牌的位置，再并行解码
+        int[] offsets = new int[amount];
+        long[] lsns = new long[amount];
+        for (int i = 0; i < amount; i++) {
+            lsns[i] = buffer.getLong();
+            int length = buffer.getInt();
+            offsets[i] = buffer.position();
+            buffer.position(offsets[i] + length);
+        }
+        ByteBuffer source = buffer;
+        runChunks(pool, threads, amount, index -> {
+            ByteBuffer slice = source.duplicate();
+            slice.position(offsets[index]);
+            Game game = GameSnapshotCodec.read(slice, rules);
+            games.put(game.getId(), game);
+            gameLsns.put(game.getId(), lsns[index]);
+        });
+        return lsn;
+    }
+
+    private interface IndexTask {
+        void run(int index);
+    }
+
+    private static void runChunks(ExecutorService pool, int threads, int amount, IndexTask task) throws IOException {
+        int chunks = Math.max(1, Math.min(threads, amount));
+        List<Future<?>> futures = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) amount * chunk / chunks);
+            int to = (int) ((long) amount * (chunk + 1) / chunks);
+            futures.add(pool.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    task.run(i);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("恢复牌局失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("恢复牌局时被中断", e);
+        }
+    }
+
+    /**
+     * 默认的规则获取方式：按名称使用 {@link RuleRegistry} 中的实例。
+     * 旧版本保存的是类名，内置规则的类名对应该类先注册的实例，其他规则按类名通过无参构造创建，
+     * 同一个类只创建一次，恢复的牌局共享规则模板
+     *
+     * @param name 规则名称，或旧版本保存的规则类名
+     * @return 规则
+     */
+    public static Rule newRule(String name) {
+        Rule registered = RuleRegistry.find(name);
+        if (registered != null) {
+            return registered;
+        }
+        Rule builtin = RuleRegistry.forClassName(name);
+        if (builtin != null) {
+            return builtin;
+        }
+        return RULES.computeIfAbsent(name, className -> {
+            try {
+                return (Rule) Class.forName(name).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalStateException("无法创建规则：" + name, e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (log != null) {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.persist;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.CompleteGroup;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.HandTiles;
+import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.bean.Player;
+import com.leavey.mahjong.engine.bean.Wall;
+import com.leavey.mahjong.engine.replay.ReplayCodec;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 牌局快照的二进制编码
+ * <p>
+ * 快照直接保存牌局当前的状态，还原时不需要重新执行操作：
+ * <pre>
+ * 牌局id   8 字节
+ * 规则     varint 长度 + UTF-8 类名
+ * 标识     1 字节，第 0 位表示是否有牌墙
+ * 牌墙     种子 8 字节 + 头部 varint + 尾部 varint，仅有牌墙时存在
+ * 牌堆数量 varint
+ * 焦点     1 字节，无焦点为 -1
+ * 玩家     varint 数量，每个玩家：暗牌数量、手牌、吃碰杠（暗杠标识 + 牌）、打出的牌、杠牌数量
+ * 操作日志 varint 数量 + 按时间顺序的操作记录，见 {@link ReplayCodec}
+ * </pre>
+ * 操作日志用于之后的校验以及回退，一局牌通常不超过 1K 字节
+ *
+ * @author Leavey
+ */
+public class GameSnapshotCodec {
+    private static final int WALL_BIT = 0x01;
+
+    private GameSnapshotCodec() {
+    }
+
+    /**
+     * 估算编码后的最大长度
+     *
+     * @param game 牌局
+     * @return 字节数
+     */
+    public static int estimateSize(Game game) {
+        int size = 8 + 5 + RuleRegistry.persistentId(game.getRule()).length() * 3 + 1 + 8 + 5 + 5 + 5 + 1 + 5;
+        for (Player player : game.getPlayers()) {
+            size += 5 * 6 + player.getHand().getOpenTiles().size() + player.getPlayTiles().size() + player.getCompleteGroups().size() * 10;
+        }
+        for (Operation operation : game.getOperations()) {
+            size += ReplayCodec.RECORD_OVERHEAD + (operation.getKeyTiles() == null ? 1 : operation.getKeyTiles().size());
+        }
+        return size;
+    }
+
+    /**
+     * 编码一局牌
+     *
+     * @param game   牌局
+     * @param buffer 缓冲区，剩余空间不少于 {@link #estimateSize(Game)}
+     */
+    public static void write(Game game, ByteBuffer buffer) {
+        buffer.putLong(game.getId());
+        byte[] rule = RuleRegistry.persistentId(game.getRule()).getBytes(StandardCharsets.UTF_8);
+        ReplayCodec.writeVarint(buffer, rule.length);
+        buffer.put(rule);
+        Wall wall = game.getWall();
+        if (wall == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) WALL_BIT);
+            buffer.putLong(wall.getSeed());
+            ReplayCodec.writeVarint(buffer, wall.getHead());
+            ReplayCodec.writeVarint(buffer, wall.getTail());
+        }
+        ReplayCodec.writeVarint(buffer, game.getPileSize());
+        buffer.put((byte) (game.getFocus() == null ? -1 : game.getFocus()));
+        Player[] players = game.getPlayers();
+        ReplayCodec.writeVarint(buffer, players.length);
+        for (Player player : players) {
+            HandTiles hand = player.getHand();
+            ReplayCodec.writeVarint(buffer, hand.getDarkAmount());
+            ReplayCodec.writeTiles(buffer, hand.getOpenTiles());
+            List<CompleteGroup> groups = player.getCompleteGroups();
+            ReplayCodec.writeVarint(buffer, groups.size());
+            for (CompleteGroup group : groups) {
+                buffer.put((byte) (group.isDark() ? 1 : 0));
+                ReplayCodec.writeTiles(buffer, group.getTiles());
+            }
+            ReplayCodec.writeTiles(buffer, player.getPlayTiles());
+            ReplayCodec.writeVarint(buffer, player.getGangDrawAmount());
+        }
+        List<Operation> operations = game.getOperations();
+        ReplayCodec.writeVarint(buffer, operations.size());
+        for (Operation operation : operations) {
+            ReplayCodec.writeOperation(operation, buffer);
+        }
+    }
+
+    /**
+     * 解码一局牌
+     *
+     * @param buffer 缓冲区
+     * @param rules  根据规则名称获取规则
+     * @return 牌局
+     */
+    public static Game read(ByteBuffer buffer, Function<String, Rule> rules) {
+        long id = buffer.getLong();
+        byte[] ruleName = new byte[ReplayCodec.readVarint(buffer)];
+        buffer.get(ruleName);
+        Rule rule = rules.apply(new String(ruleName, StandardCharsets.UTF_8));
+        Long seed = null;
+        int head = 0;
+        int tail = 0;
+        if ((buffer.get() & WALL_BIT) != 0) {
+            seed = buffer.getLong();
+            head = ReplayCodec.readVarint(buffer);
+            tail = ReplayCodec.readVarint(buffer);
+        }
+        int pileSize = ReplayCodec.readVarint(buffer);
+        byte focus = buffer.get();
+        Player[] players = new Player[ReplayCodec.readVarint(buffer)];
+        for (int i = 0; i < players.length; i++) {
+            HandTiles hand = new HandTiles(ReplayCodec.readVarint(buffer), ReplayCodec.readTiles(buffer));
+            int groupAmount = ReplayCodec.readVarint(buffer);
+            List<CompleteGroup> groups = new ArrayList<>(groupAmount);
+            for (int j = 0; j < groupAmount; j++) {
+                boolean dark = buffer.get() != 0;
+                CompleteGroup group = new CompleteGroup(ReplayCodec.readTiles(buffer));
+                group.setDark(dark);
+                groups.add(group);
+            }
+            List<Tile> playTiles = ReplayCodec.readTiles(buffer);
+            players[i] = new Player(hand, groups, playTiles, ReplayCodec.readVarint(buffer));
+        }
+        int operationAmount = ReplayCodec.readVarint(buffer);
+        Operation operation = null;
+        for (int i = 0; i < operationAmount; i++) {
+            Operation next = ReplayCodec.readOperation(buffer);
+            next.setPrev(operation);
+            operation = next;
+        }
+        return new Game(id, rule, players, pileSize, seed, head, tail, focus < 0 ? null : (int) focus, operation);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.persist;
+
+import com.leavey.mahjong.engine.bean.ActionRequest;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预写日志中的一条记录
+ *
+ * @author Leavey
+ */
+public class LogRecord {
+    /**
+     * 创建牌局
+     */
+    public static final byte CREATE = 1;
+    /**
+     * 执行操作
+     */
+    public static final byte PLAY = 2;
+    /**
+     * 回退一步
+     */
+    public static final byte BACKOFF = 3;
+    /**
+     * 一次请求中连续执行的多个操作，整体写入一条记录，恢复时要么全部重放，要么整条被截断
+     */
+    public static final byte PLAYS = 4;
+
+    private final long lsn;
+    private final byte type;
+    private final long gameId;
+    /**
+     * 规则类名，仅创建牌局时存在
+     */
+    private final String ruleName;
+    /**
+     * 操作请求，仅执行操作时存在，单个操作时只有一个元素
+     */
+    private final List<ActionRequest> requests;
+
+    LogRecord(long lsn, byte type, long gameId, String ruleName, List<ActionRequest> requests) {
+        this.lsn = lsn;
+        this.type = type;
+        this.gameId = gameId;
+        this.ruleName = ruleName;
+        this.requests = requests == null ? Collections.emptyList() : requests;
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    public ActionRequest getRequest() {
+        return requests.isEmpty() ? null : requests.get(0);
+    }
+
+    public List<ActionRequest> getRequests() {
+        return requests;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.persist;
+
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.replay.ReplayCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志
+ * <p>
+ * 调用方在锁内追加记录并得到日志序号，然后在锁外调用 {@link #await(long)} 或 {@link #whenDurable(long)} 等待记录按刷盘策略落盘。
+ * 记录先追加到内存缓冲区，由单独的刷盘线程批量写入，同一批记录只刷一次盘（组提交），并发越高每次刷盘覆盖的请求越多
+ * <p>
+ * 日志按大小切分为多个段文件，文件名为段内第一条记录的序号。每条记录的格式：
+ * <pre>
+ * 长度   4 字节，不含长度和校验码
+ * 校验码 4 字节，CRC32
+ * 序号   8 字节
+ * 类型   1 字节，见 {@link LogRecord}
+ * 牌局id 8 字节
+ * 内容   创建牌局为 varint 长度 + UTF-8 规则类名，执行操作为操作请求，见 {@link ReplayCodec#writeRequest(ActionRequest, ByteBuffer)}
+ * </pre>
+ *
+ * @author Leavey
+ */
+public class WriteAheadLog implements Closeable {
+    static final String SUFFIX = ".wal";
+    private static final int FRAME_HEADER = 8;
+    private static final int RECORD_HEADER = 8 + 1 + 8;
+
+    private final Path dir;
+    private final FsyncPolicy policy;
+    private final long intervalNanos;
+    private final long segmentBytes;
+
+    private final Object lock = new Object();
+    private final CRC32 crc = new CRC32();
+    /**
+     * 等待写入的记录，由追加线程写入
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    /**
+     * 正在写入文件的记录，只由刷盘线程访问
+     */
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+    private long nextLsn;
+    /**
+     * 缓冲区中第一条记录的序号
+     */
+    private long pendingFirstLsn = -1;
+    private long writtenLsn;
+    private long syncedLsn;
+    private boolean rollRequested;
+    private boolean closed;
+    private IOException failure;
+    /**
+     * 异步等待落盘的调用方，按序号排序
+     */
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+
+    private FileChannel segment;
+    private long segmentSize;
+    private final Thread flusher;
+
+    /**
+     * @param dir            日志目录
+     * @param nextLsn        下一条记录的序号
+     * @param policy         刷盘策略
+     * @param intervalMillis 刷盘间隔，仅 {@link FsyncPolicy#INTERVAL} 使用
+     * @param segmentBytes   段文件大小，超过后切换到新的段文件
+     */
+    public WriteAheadLog(Path dir, long nextLsn, FsyncPolicy policy, long intervalMillis, long segmentBytes) {
+        this.dir = dir;
+        this.nextLsn = nextLsn;
+        this.writtenLsn = nextLsn - 1;
+        this.syncedLsn = nextLsn - 1;
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.segmentBytes = segmentBytes;
+        this.flusher = new Thread(this::flushLoop, "mahjong-wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public long appendCreate(long gameId, String ruleName) {
+        byte[] name = ruleName.getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            int start = begin(LogRecord.CREATE, gameId, 5 + name.length);
+            ReplayCodec.writeVarint(pending, name.length);
+            pending.put(name);
+            return end(start);
+        }
+    }
+
+    public long appendPlay(long gameId, ActionRequest request) {
+        int tiles = request.getKeyTiles() == null ? 0 : request.getKeyTiles().size();
+        synchronized (lock) {
+            int start = begin(LogRecord.PLAY, gameId, 2 + 5 + tiles);
+            ReplayCodec.writeRequest(request, pending);
+            return end(start);
+        }
+    }
+
+    /**
+     * 把一次请求中的多个操作写成一条记录，崩溃时不会只留下其中一部分
+     */
+    public long appendPlays(long gameId, List<ActionRequest> requests) {
+        int size = 5;
+        for (ActionRequest request : requests) {
+            size += 2 + 5 + (request.getKeyTiles() == null ? 0 : request.getKeyTiles().size());
+        }
+        synchronized (lock) {
+            int start = begin(LogRecord.PLAYS, gameId, size);
+            ReplayCodec.writeVarint(pending, requests.size());
+            for (ActionRequest request : requests) {
+                ReplayCodec.writeRequest(request, pending);
+            }
+            return end(start);
+        }
+    }
+
+    public long appendBackoff(long gameId) {
+        synchronized (lock) {
+            return end(begin(LogRecord.BACKOFF, gameId, 0));
+        }
+    }
+
+    private int begin(byte type, long gameId, int bodySize) {
+        if (closed) {
+            throw new IllegalStateException("预写日志已关闭");
+        }
+        int size = FRAME_HEADER + RECORD_HEADER + bodySize;
+        if (pending.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int start = pending.position();
+        pending.position(start + FRAME_HEADER);
+        pending.putLong(nextLsn).put(type).putLong(gameId);
+        return start;
+    }
+
+    private long end(int start) {
+        int payload = start + FRAME_HEADER;
+        int length = pending.position() - payload;
+        crc.reset();
+        crc.update(pending.array(), payload, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        if (pendingFirstLsn < 0) {
+            pendingFirstLsn = nextLsn;
+        }
+        lock.notifyAll();
+        return nextLsn++;
+    }
+
+    /**
+     * 等待记录按刷盘策略落盘
+     * <p>
+     * {@link FsyncPolicy#ALWAYS} 等待刷盘，{@link FsyncPolicy#INTERVAL} 等待写入操作系统，{@link FsyncPolicy#NEVER} 不等待
+     *
+     * @param lsn 记录的序号
+     */
+    public void await(long lsn) {
+        if (policy == FsyncPolicy.NEVER) {
+            return;
+        }
+        synchronized (lock) {
+            while (durableLsn() < lsn) {
+                if (failure != null) {
+                    throw new UncheckedIOException("预写日志写入失败", failure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("预写日志已关闭");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待预写日志时被中断", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 异步等待记录按刷盘策略落盘，不阻塞调用线程
+     * <p>
+     * 返回的 future 在刷盘线程中完成，后续的回调不应执行耗时的操作
+     *
+     * @param lsn 记录的序号
+     * @return 落盘后完成的 future
+     */
+    public CompletableFuture<Void> whenDurable(long lsn) {
+        if (policy == FsyncPolicy.NEVER) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (lock) {
+            if (durableLsn() >= lsn) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (failure != null) {
+                return CompletableFuture.failedFuture(new UncheckedIOException("预写日志写入失败", failure));
+            }
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("预写日志已关闭"));
+            }
+            Waiter waiter = new Waiter(lsn);
+            waiters.add(waiter);
+            return waiter.future;
+        }
+    }
+
+    private long durableLsn() {
+        return policy == FsyncPolicy.ALWAYS ? syncedLsn : writtenLsn;
+    }
+
+    private static class Waiter implements Comparable<Waiter> {
+        private final long lsn;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(long lsn) {
+            this.lsn = lsn;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            return Long.compare(lsn, other.lsn);
+        }
+    }
+
+    /**
+     * 取出已经落盘的等待者，需要在锁内调用，在锁外完成，避免回调在锁内执行
+     *
+     * @param all 是否取出全部等待者
+     * @return 等待者
+     */
+    private List<Waiter> pollWaiters(boolean all) {
+        if (waiters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Waiter> done = new ArrayList<>();
+        long durable = durableLsn();
+        while (!waiters.isEmpty() && (all || waiters.peek().lsn <= durable)) {
+            done.add(waiters.poll());
+        }
+        return done;
+    }
+
+    /**
+     * @return 最后一条已追加记录的序号
+     */
+    public long getLastLsn() {
+        synchronized (lock) {
+            return nextLsn - 1;
+        }
+    }
+
+    /**
+     * 下一批记录写入新的段文件，之前的段文件才能在检查点后删除
+     */
+    public void roll() {
+        synchronized (lock) {
+            rollRequested = true;
+        }
+    }
+
+    private void flushLoop() {
+        long lastSync = System.nanoTime();
+        while (true) {
+            long first;
+            long last;
+            boolean roll;
+            boolean exit;
+            synchronized (lock) {
+                try {
+                    while (pending.position() == 0 && !closed) {
+                        if (policy == FsyncPolicy.INTERVAL && syncedLsn < writtenLsn) {
+                            long wait = lastSync + intervalNanos - System.nanoTime();
+                            if (wait <= 0) {
+                                break;
+                            }
+                            TimeUnit.NANOSECONDS.timedWait(lock, wait);
+                        } else {
+                            lock.wait();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                ByteBuffer swap = writing;
+                writing = pending;
+                pending = swap;
+                pending.clear();
+                first = pendingFirstLsn;
+                last = nextLsn - 1;
+                pendingFirstLsn = -1;
+                roll = rollRequested;
+                rollRequested = false;
+                exit = closed;
+            }
+            boolean sync = false;
+            try {
+                writing.flip();
+                if (writing.hasRemaining()) {
+                    if (segment == null || roll || segmentSize >= segmentBytes) {
+                        openSegment(first);
+                    }
+                    while (writing.hasRemaining()) {
+                        segmentSize += segment.write(writing);
+                    }
+                }
+                writing.clear();
+                long now = System.nanoTime();
+                if (segment != null && (policy == FsyncPolicy.ALWAYS || exit || now - lastSync >= intervalNanos)) {
+                    segment.force(false);
+                    lastSync = now;
+                    sync = true;
+                }
+            } catch (IOException e) {
+                List<Waiter> failed;
+                synchronized (lock) {
+                    failure = e;
+                    closed = true;
+                    failed = pollWaiters(true);
+                    lock.notifyAll();
+                }
+                UncheckedIOException error = new UncheckedIOException("预写日志写入失败", e);
+                failed.forEach(waiter -> waiter.future.completeExceptionally(error));
+                return;
+            }
+            List<Waiter> done;
+            List<Waiter> abandoned = Collections.emptyList();
+            synchronized (lock) {
+                writtenLsn = last;
+                if (sync) {
+                    syncedLsn = last;
+                }
+                done = pollWaiters(false);
+                if (exit) {
+                    abandoned = pollWaiters(true);
+                }
+                lock.notifyAll();
+            }
+            done.forEach(waiter -> waiter.future.complete(null));
+            if (exit) {
+                IllegalStateException error = new IllegalStateException("预写日志已关闭");
+                abandoned.forEach(waiter -> waiter.future.completeExceptionally(error));
+                closeSegment();
+                return;
+            }
+        }
+    }
+
+    private void openSegment(long firstLsn) throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        segment = FileChannel.open(dir.resolve(segmentName(firstLsn)), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentSize = 0;
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static String segmentName(long firstLsn) {
+        return String.format("%020d%s", firstLsn, SUFFIX);
+    }
+
+    /**
+     * 按第一条记录的序号列出全部段文件
+     *
+     * @param dir 日志目录
+     * @return 段文件
+     * @throws IOException 读取失败
+     */
+    static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static long firstLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 删除全部记录都不大于指定序号的段文件，最后一个段文件总是保留
+     *
+     * @param dir 日志目录
+     * @param lsn 序号
+     * @throws IOException 删除失败
+     */
+    static void deleteSegments(Path dir, long lsn) throws IOException {
+        List<Path> segments = segments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstLsn(segments.get(i + 1)) <= lsn + 1) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * 按顺序读取序号大于指定值的全部记录
+     * <p>
+     * 最后一个段文件末尾不完整的记录是写入时崩溃留下的，会被截断，其他位置的损坏会抛出异常
+     *
+     * @param dir      日志目录
+     * @param afterLsn 只读取序号大于该值的记录
+     * @param consumer 接收记录
+     * @return 最后一条记录的序号，没有记录时返回 afterLsn
+     * @throws IOException 读取失败或日志损坏
+     */
+    static long read(Path dir, long afterLsn, Consumer<LogRecord> consumer) throws IOException {
+        List<Path> segments = segments(dir);
+        long lastLsn = afterLsn;
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            boolean lastSegment = i == segments.size() - 1;
+            if (!lastSegment && firstLsn(segments.get(i + 1)) <= afterLsn + 1) {
+                //整个段都已经包含在快照中
+                continue;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            int valid = 0;
+            while (buffer.remaining() >= FRAME_HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < RECORD_HEADER || length > buffer.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                int end = buffer.position() + length;
+                long lsn = buffer.getLong();
+                byte type = buffer.get();
+                long gameId = buffer.getLong();
+                if (lsn > afterLsn) {
+                    String ruleName = null;
+                    List<ActionRequest> requests = null;
+                    if (type == LogRecord.CREATE) {
+                        byte[] name = new byte[ReplayCodec.readVarint(buffer)];
+                        buffer.get(name);
+                        ruleName = new String(name, StandardCharsets.UTF_8);
+                    } else if (type == LogRecord.PLAY) {
+                        requests = Collections.singletonList(ReplayCodec.readRequest(buffer));
+                    } else if (type == LogRecord.PLAYS) {
+                        int count = ReplayCodec.readVarint(buffer);
+                        requests = new ArrayList<>(count);
+                        for (int j = 0; j < count; j++) {
+                            requests.add(ReplayCodec.readRequest(buffer));
+                        }
+                    }
+                    consumer.accept(new LogRecord(lsn, type, gameId, ruleName, requests));
+                    lastLsn = lsn;
+                }
+                buffer.position(end);
+                valid = end;
+            }
+            if (valid < buffer.limit()) {
+                if (!lastSegment) {
+                    throw new IOException("预写日志损坏：" + path);
+                }
+                if (valid == 0) {
+                    Files.delete(path);
+                } else {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(valid);
+                    }
+                }
+            }
+        }
+        return lastLsn;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.replay;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 复盘文件的二进制编码
+ * <p>
+ * 一条操作记录的格式：
+ * <pre>
+ * 头部     1 字节  低 4 位为操作，4~5 位为吃牌位置（0 表示无），第 6 位为暗杠或自摸，第 7 位表示是否有暗牌数量
+ * 玩家     1 字节
+ * 牌数量   varint
+ * 牌       每张 1 字节，为牌的编码
+ * 暗牌数量 varint，仅头部第 7 位为 1 时存在
+ * </pre>
+ * 摸牌记录的牌为摸到的牌，其余操作为操作涉及到的明牌，常见的摸牌、打牌只占 4 个字节
+ *
+ * @author Leavey
+ */
+public class ReplayCodec {
+    /**
+     * 文件头
+     */
+    public static final int MAGIC = 0x4D4A5250;
+    public static final byte VERSION = 1;
+    /**
+     * 一条记录除牌以外的最大长度，头部 + 玩家 + 牌数量 + 暗牌数量
+     */
+    public static final int RECORD_OVERHEAD = 2 + 5 + 5;
+
+    static final int ACTION_MASK = 0x0F;
+    static final int EAT_SHIFT = 4;
+    static final int EAT_MASK = 0x03;
+    static final int FLAG_BIT = 0x40;
+    static final int DARK_AMOUNT_BIT = 0x80;
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final EatPosition[] EAT_POSITIONS = EatPosition.values();
+
+    private ReplayCodec() {
+    }
+
+    /**
+     * 编码一条操作
+     *
+     * @param operation 操作
+     * @param buffer    写入的缓冲区
+     */
+    public static void writeOperation(Operation operation, ByteBuffer buffer) {
+        Action action = operation.getAction();
+        int header = action.ordinal();
+        if (operation.getEatPosition() != null) {
+            header |= (operation.getEatPosition().ordinal() + 1) << EAT_SHIFT;
+        }
+        if (Boolean.TRUE.equals(action == Action.WIN ? operation.getSelf() : operation.getDark())) {
+            header |= FLAG_BIT;
+        }
+        if (operation.getDarkTileAmount() != 0) {
+            header |= DARK_AMOUNT_BIT;
+        }
+        buffer.put((byte) header);
+        buffer.put((byte) operation.getPlayer());
+        if (action == Action.DRAW) {
+            Tile tile = operation.getDrawTile();
+            if (tile == null) {
+                writeVarint(buffer, 0);
+            } else {
+                writeVarint(buffer, 1);
+                buffer.put((byte) tile.getCode());
+            }
+        } else {
+            writeTiles(buffer, operation.getKeyTiles());
+        }
+        if (operation.getDarkTileAmount() != 0) {
+            writeVarint(buffer, operation.getDarkTileAmount());
+        }
+    }
+
+    /**
+     * 解码一条操作，与 {@link #writeOperation(Operation, ByteBuffer)} 对应
+     *
+     * @param buffer 缓冲区
+     * @return 操作，没有设置上一次操作
+     */
+    public static Operation readOperation(ByteBuffer buffer) {
+        int header = buffer.get() & 0xFF;
+        int player = buffer.get();
+        Action action = action(header);
+        List<Tile> tiles = readTiles(buffer);
+        Operation operation;
+        if (action == Action.DRAW) {
+            operation = new Operation(player, action);
+            operation.setDrawTile(tiles.isEmpty() ? null : tiles.get(0));
+        } else {
+            operation = new Operation(player, action, tiles.isEmpty() && action == Action.GANG_DRAW ? null : tiles);
+        }
+        operation.setEatPosition(eatPosition(header));
+        boolean flag = (header & FLAG_BIT) != 0;
+        if (action == Action.GANG) {
+            operation.setDark(flag);
+        } else if (action == Action.WIN) {
+            operation.setSelf(flag);
+        }
+        if ((header & DARK_AMOUNT_BIT) != 0) {
+            operation.setDarkTileAmount(readVarint(buffer));
+        }
+        return operation;
+    }
+
+    /**
+     * 编码一个操作请求，格式与操作记录相同，但没有暗牌数量
+     *
+     * @param request 操作请求
+     * @param buffer  缓冲区
+     */
+    public static void writeRequest(ActionRequest request, ByteBuffer buffer) {
+        int header = request.getAction().ordinal();
+        if (request.getEatPosition() != null) {
+            header |= (request.getEatPosition().ordinal() + 1) << EAT_SHIFT;
+        }
+        buffer.put((byte) header);
+        buffer.put((byte) request.getPlayer());
+        writeTiles(buffer, request.getKeyTiles());
+    }
+
+    /**
+     * 解码一个操作请求
+     *
+     * @param buffer 缓冲区
+     * @return 操作请求
+     */
+    public static ActionRequest readRequest(ByteBuffer buffer) {
+        int header = buffer.get() & 0xFF;
+        int player = buffer.get();
+        ActionRequest request = new ActionRequest(player, action(header), readTiles(buffer));
+        request.setEatPosition(eatPosition(header));
+        return request;
+    }
+
+    /**
+     * 编码一组牌，数量 + 每张牌的编码
+     *
+     * @param buffer 缓冲区
+     * @param tiles  牌，可以为 null
+     */
+    public static void writeTiles(ByteBuffer buffer, List<Tile> tiles) {
+        if (tiles == null) {
+            writeVarint(buffer, 0);
+            return;
+        }
+        writeVarint(buffer, tiles.size());
+        for (Tile tile : tiles) {
+            buffer.put((byte) tile.getCode());
+        }
+    }
+
+    /**
+     * 解码一组牌，牌为共享的牌对象
+     *
+     * @param buffer 缓冲区
+     * @return 牌
+     */
+    public static List<Tile> readTiles(ByteBuffer buffer) {
+        int amount = readVarint(buffer);
+        List<Tile> tiles = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            tiles.add(Matrix.of(buffer.get()));
+        }
+        return tiles;
+    }
+
+    /**
+     * 写入一个无符号 varint，每字节 7 位，最高位表示后面还有字节
+     *
+     * @param buffer 缓冲区
+     * @param value  非负数
+     */
+    public static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * 读取一个无符号 varint
+     *
+     * @param buffer 缓冲区
+     * @return 值
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("varint 格式错误");
+    }
+
+    static Action action(int header) {
+        return ACTIONS[header & ACTION_MASK];
+    }
+
+    static EatPosition eatPosition(int header) {
+        int position = (header >>> EAT_SHIFT) & EAT_MASK;
+        return position == 0 ? null : EAT_POSITIONS[position - 1];
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.replay;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 复盘文件读取
+ * <p>
+ * 通过内存映射读取文件，读取器本身就是游标：{@link #nextGame()} 移动到下一局，{@link #nextOperation()} 移动到下一条操作，
+ * 再通过 getter 读取当前记录的内容，遍历过程中不会为每条记录创建对象。
+ * 文件按窗口分段映射，因此可以读取超过 2G 的文件。读取器不是线程安全的，多线程扫描请各自创建读取器
+ *
+ * @author Leavey
+ */
+public class ReplayReader implements Closeable {
+    /**
+     * 映射窗口大小
+     */
+    private static final long WINDOW = 1L << 28;
+    /**
+     * varint 的最大长度
+     */
+    private static final int MAX_VARINT = 5;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer buffer;
+    /**
+     * 当前窗口在文件中的起始位置
+     */
+    private long windowStart;
+    /**
+     * 下一局在文件中的位置
+     */
+    private long next;
+
+    private long gameId;
+    private boolean hasSeed;
+    private long seed;
+    private int ruleOffset;
+    private int ruleLength;
+    private int operationAmount;
+    private int operationIndex;
+
+    private int header;
+    private int player;
+    private int tileOffset;
+    private int tileAmount;
+    private int darkTileAmount;
+
+    public ReplayReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        checkHeader(channel);
+        this.next = ReplayWriter.HEADER_SIZE;
+        map(next);
+    }
+
+    static void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ReplayWriter.HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("不是复盘文件");
+            }
+        }
+        header.flip();
+        if (header.getInt() != ReplayCodec.MAGIC) {
+            throw new IOException("不是复盘文件");
+        }
+        if (header.get() != ReplayCodec.VERSION) {
+            throw new IOException("不支持的复盘文件版本");
+        }
+    }
+
+    private void map(long position) throws IOException {
+        long length = Math.min(WINDOW, size - position);
+        windowStart = position;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private void ensureMapped(long position, long length) throws IOException {
+        if (position < windowStart || position + length > windowStart + buffer.limit()) {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("单局牌过大");
+            }
+            long window = Math.min(Math.max(WINDOW, length), size - position);
+            windowStart = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+        }
+        buffer.position((int) (position - windowStart));
+    }
+
+    /**
+     * 移动到下一局
+     *
+     * @return 没有下一局或者文件末尾的牌局不完整时返回 false
+     * @throws IOException 读取失败
+     */
+    public boolean nextGame() throws IOException {
+        if (next >= size) {
+            return false;
+        }
+        ensureMapped(next, Math.min(MAX_VARINT, size - next));
+        int length;
+        try {
+            length = ReplayCodec.readVarint(buffer);
+        } catch (RuntimeException e) {
+            //写入中断导致长度不完整
+            return false;
+        }
+        long start = windowStart + buffer.position();
+        if (start + length > size) {
+            return false;
+        }
+        ensureMapped(start, length);
+        next = start + length;
+
+        gameId = buffer.getLong();
+        hasSeed = (buffer.get() & ReplayWriter.SEED_BIT) != 0;
+        seed = hasSeed ? buffer.getLong() : 0;
+        ruleLength = ReplayCodec.readVarint(buffer);
+        ruleOffset = buffer.position();
+        buffer.position(ruleOffset + ruleLength);
+        operationAmount = ReplayCodec.readVarint(buffer);
+        operationIndex = 0;
+        return true;
+    }
+
+    /**
+     * 移动到当前局的下一条操作
+     *
+     * @return 当前局没有更多操作时返回 false
+     */
+    public boolean nextOperation() {
+        if (operationIndex >= operationAmount) {
+            return false;
+        }
+        operationIndex++;
+        header = buffer.get() & 0xFF;
+        player = buffer.get();
+        tileAmount = ReplayCodec.readVarint(buffer);
+        tileOffset = buffer.position();
+        buffer.position(tileOffset + tileAmount);
+        darkTileAmount = (header & ReplayCodec.DARK_AMOUNT_BIT) == 0 ? 0 : ReplayCodec.readVarint(buffer);
+        return true;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    public boolean hasSeed() {
+        return hasSeed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * 当前局的规则名称，每次调用都会创建字符串，旧版本的文件中是规则类名
+     *
+     * @return 规则名称
+     */
+    public String getRuleName() {
+        byte[] bytes = new byte[ruleLength];
+        for (int i = 0; i < ruleLength; i++) {
+            bytes[i] = buffer.get(ruleOffset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getOperationAmount() {
+        return operationAmount;
+    }
+
+    public Action getAction() {
+        return ReplayCodec.action(header);
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * 当前操作涉及到的牌的数量，摸牌时为摸到的牌
+     *
+     * @return 数量
+     */
+    public int getTileAmount() {
+        return tileAmount;
+    }
+
+    /**
+     * 当前操作涉及到的牌的编码
+     *
+     * @param index 下标
+     * @return 牌的编码
+     */
+    public int getTileCode(int index) {
+        return buffer.get(tileOffset + index);
+    }
+
+    /**
+     * 当前操作涉及到的牌，返回共享的牌对象
+     *
+     * @param index 下标
+     * @return 牌
+     */
+    public Tile getTile(int index) {
+        return Matrix.of(getTileCode(index));
+    }
+
+    public EatPosition getEatPosition() {
+        return ReplayCodec.eatPosition(header);
+    }
+
+    public boolean isDark() {
+        return getAction() == Action.GANG && (header & ReplayCodec.FLAG_BIT) != 0;
+    }
+
+    public boolean isSelf() {
+        return getAction() == Action.WIN && (header & ReplayCodec.FLAG_BIT) != 0;
+    }
+
+    public int getDarkTileAmount() {
+        return darkTileAmount;
+    }
+
+    /**
+     * 把当前操作还原为操作请求
+     *
+     * @return 操作请求
+     */
+    public ActionRequest toActionRequest() {
+        Action action = getAction();
+        if (action == Action.GANG_DRAW) {
+            //杠牌摸到的牌由牌墙决定，记录的牌只用于复盘
+            return new ActionRequest(player, action);
+        }
+        List<Tile> tiles = new ArrayList<>(tileAmount);
+        for (int i = 0; i < tileAmount; i++) {
+            tiles.add(getTile(i));
+        }
+        ActionRequest request = new ActionRequest(player, action, tiles);
+        request.setEatPosition(getEatPosition());
+        return request;
+    }
+
+    /**
+     * 按当前局剩余的操作重新执行一遍牌局
+     *
+     * @param rule 规则，需要与记录时的规则一致
+     * @return 还原后的牌局
+     */
+    public Game replay(Rule rule) {
+        Game game = new Game(gameId, rule);
+        if (hasSeed) {
+            game.deal(seed);
+        }
+        while (nextOperation()) {
+            game.play(toActionRequest());
+        }
+        return game;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
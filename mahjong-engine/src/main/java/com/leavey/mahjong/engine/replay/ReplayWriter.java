@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.replay;
+
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 复盘文件写入
+ * <p>
+ * 文件由文件头和若干局牌组成，每局牌的格式：
+ * <pre>
+ * 长度     varint，不含自身
+ * 牌局id   8 字节
+ * 标识     1 字节，第 0 位表示是否有牌墙种子
+ * 种子     8 字节，仅有牌墙时存在
+ * 规则     varint 长度 + UTF-8 规则名称，见 {@link RuleRegistry#persistentId}
+ * 操作数量 varint
+ * 操作     见 {@link ReplayCodec}
+ * </pre>
+ * 文件以追加方式打开，可以持续写入多局牌，线程安全
+ * <p>
+ * 写入中途崩溃会在文件末尾留下不完整的一局，读取时遇到不完整的一局即停止。
+ * 因此打开已有文件时，从文件头开始逐局检查长度，截掉最后一局完整牌局之后的内容再追加，保证之后写入的牌局都能读到
+ *
+ * @author Leavey
+ */
+public class ReplayWriter implements Closeable, Flushable {
+    static final int HEADER_SIZE = 5;
+    static final int SEED_BIT = 0x01;
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    /**
+     * 单局牌的编码缓冲区，复用
+     */
+    private ByteBuffer block = ByteBuffer.allocate(4096);
+    /**
+     * 待写入文件的缓冲区
+     */
+    private ByteBuffer out = ByteBuffer.allocate(FLUSH_SIZE * 2);
+
+    public ReplayWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(ReplayCodec.MAGIC).put(ReplayCodec.VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } else {
+            ReplayReader.checkHeader(channel);
+            long end = completeEnd(channel);
+            if (end < channel.size()) {
+                channel.truncate(end);
+            }
+        }
+        channel.position(channel.size());
+    }
+
+    /**
+     * 从文件头开始逐局跳过，找到最后一局完整牌局的结束位置
+     */
+    private static long completeEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        ByteBuffer prefix = ByteBuffer.allocate(5);
+        while (position < size) {
+            prefix.clear();
+            if (size - position < prefix.capacity()) {
+                prefix.limit((int) (size - position));
+            }
+            while (prefix.hasRemaining()) {
+                if (channel.read(prefix, position + prefix.position()) < 0) {
+                    break;
+                }
+            }
+            prefix.flip();
+            int length;
+            try {
+                length = ReplayCodec.readVarint(prefix);
+            } catch (RuntimeException e) {
+                //写入中断导致长度不完整
+                return position;
+            }
+            long next = position + prefix.position() + length;
+            if (length < 0 || next > size) {
+                return position;
+            }
+            position = next;
+        }
+        return position;
+    }
+
+    /**
+     * 写入一局牌的全部操作
+     *
+     * @param game 牌局
+     * @throws IOException 写入失败
+     */
+    public synchronized void write(Game game) throws IOException {
+        List<Operation> operations = game.getOperations();
+        byte[] rule = RuleRegistry.persistentId(game.getRule()).getBytes(StandardCharsets.UTF_8);
+        int estimate = 8 + 1 + 8 + 5 + rule.length + 5;
+        for (Operation operation : operations) {
+            estimate += ReplayCodec.RECORD_OVERHEAD + (operation.getKeyTiles() == null ? 1 : operation.getKeyTiles().size());
+        }
+        ByteBuffer buffer = blockBuffer(estimate);
+        buffer.putLong(game.getId());
+        if (game.getWall() == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) SEED_BIT);
+            buffer.putLong(game.getWall().getSeed());
+        }
+        ReplayCodec.writeVarint(buffer, rule.length);
+        buffer.put(rule);
+        ReplayCodec.writeVarint(buffer, operations.size());
+        for (Operation operation : operations) {
+            ReplayCodec.writeOperation(operation, buffer);
+        }
+        buffer.flip();
+
+        if (out.remaining() < buffer.remaining() + 5) {
+            drain();
+            if (out.capacity() < buffer.remaining() + 5) {
+                out = ByteBuffer.allocate(buffer.remaining() + 5);
+            }
+        }
+        ReplayCodec.writeVarint(out, buffer.remaining());
+        out.put(buffer);
+        if (out.position() >= FLUSH_SIZE) {
+            drain();
+        }
+    }
+
+    private ByteBuffer blockBuffer(int size) {
+        if (block.capacity() < size) {
+            block = ByteBuffer.allocate(Math.max(size, block.capacity() * 2));
+        }
+        block.clear();
+        return block;
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        drain();
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.common.bean.Type;
 import com.leavey.mahjong.engine.bean.Action;
 import com.leavey.mahjong.engine.executor.Executor;
+import com.leavey.mahjong.engine.executor.ChangShaWinExecutor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -31,6 +32,22 @@ import java.util.Map;
  * @author Leavey
  */
 public class ChangShaRule implements Rule {
+    /**
+     * 胡牌时是否按胡牌表校验手牌
+     */
+    private final boolean strict;
+
+    public ChangShaRule() {
+        this(false);
+    }
+
+    /**
+     * @param strict 胡牌时是否校验手牌，包括七小对、将将胡、碰碰胡、清一色等大胡，仅对手牌全部已知的玩家生效，见 {@link ChangShaWinExecutor}
+     */
+    public ChangShaRule(boolean strict) {
+        this.strict = strict;
+    }
+
     @Override
     public List<Tile> newTiles(Type type) {
         if (type == Type.CHARACTER || type == Type.DOT || type == Type.BAMBOO) {
@@ -40,9 +57,20 @@ public class ChangShaRule implements Rule {
         }
     }
 
+    /**
+     * 长沙麻将 2、5、8 做将
+     */
     @Override
-    public void customizeExecutors(Map<Action, Executor> executorMap) {
+    public boolean canLeader(Tile tile) {
+        int value = tile.getValue();
+        return tile.getType().isAllowEat() && (value == 2 || value == 5 || value == 8);
+    }
 
+    @Override
+    public void customizeExecutors(Map<Action, Executor> executorMap) {
+        if (strict) {
+            executorMap.put(Action.WIN, new ChangShaWinExecutor());
+        }
     }
 
     @Override
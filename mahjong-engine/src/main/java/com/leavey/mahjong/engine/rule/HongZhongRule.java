@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.rule;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.executor.Executor;
+import com.leavey.mahjong.engine.executor.GangDrawToHandExecutor;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 红中麻将规则
+ * <p>
+ * 万、饼、条加 4 张红中共 112 张，不能吃牌，任意对子都可以做将，开杠后从牌墙尾部补一张进手牌，再与摸牌后一样打出任意一张。
+ * 红中按普通的牌处理，不作为万能牌
+ *
+ * @author Leavey
+ */
+public class HongZhongRule implements Rule {
+    /**
+     * 红中在中发白中的点数
+     */
+    private static final int RED_DRAGON = 1;
+
+    @Override
+    public List<Tile> newTiles(Type type) {
+        if (type == Type.CHARACTER || type == Type.DOT || type == Type.BAMBOO) {
+            return Rule.super.newTiles(type);
+        }
+        if (type == Type.DRAGON) {
+            return Collections.nCopies(type.getAmount(), Matrix.of(type.getBase() + RED_DRAGON));
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void customizeExecutors(Map<Action, Executor> executorMap) {
+        //杠后摸的牌补进手牌，没有杠后打牌
+        executorMap.put(Action.GANG_DRAW, new GangDrawToHandExecutor());
+        executorMap.remove(Action.GANG_PLAY);
+        executorMap.remove(Action.EAT);
+    }
+
+    @Override
+    public int allowGangDrawAmount() {
+        return 1;
+    }
+}
@@ -60,6 +60,16 @@ public interface Rule {
         return 13;
     }
 
+    /**
+     * 判断一张牌可否作为将牌
+     *
+     * @param tile 牌
+     * @return 可作为将牌返回 true
+     */
+    default boolean canLeader(Tile tile) {
+        return true;
+    }
+
     /**
      * 定制操作执行器
      *
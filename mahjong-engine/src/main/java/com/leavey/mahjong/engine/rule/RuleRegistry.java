@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.rule;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 内置规则
+ * <p>
+ * 每种规则只有一个实例，启动时编译好模板，同一进程中不同规则的牌局共享各自的模板和胡牌表。
+ * 日志、快照与复盘文件中保存规则名称，恢复时按名称找到同一个实例，见 {@link com.leavey.mahjong.engine.persist.GameJournal#newRule(String)}。
+ * 同一个类的不同配置（例如严格校验胡牌的长沙麻将）注册为不同的名称
+ *
+ * @author Leavey
+ */
+public final class RuleRegistry {
+    /**
+     * 默认规则
+     */
+    public static final String DEFAULT = "changsha";
+
+    private static final Map<String, Rule> RULES;
+    private static final Map<String, Rule> CLASS_RULES = new LinkedHashMap<>();
+
+    static {
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        rules.put(DEFAULT, new ChangShaRule());
+        rules.put("changsha-strict", new ChangShaRule(true));
+        rules.put("standard", new StandardRule());
+        rules.put("hongzhong", new HongZhongRule());
+        rules.put("sichuan", new SiChuanRule());
+        for (Rule rule : rules.values()) {
+            RuleTemplate.register(rule);
+            //旧版本按类名保存，同一个类以先注册的配置为准
+            CLASS_RULES.putIfAbsent(rule.getClass().getName(), rule);
+        }
+        RULES = Collections.unmodifiableMap(rules);
+    }
+
+    private RuleRegistry() {
+    }
+
+    /**
+     * @param id 规则名称
+     * @return 规则
+     * @throws IllegalArgumentException 规则不存在
+     */
+    public static Rule get(String id) {
+        Rule rule = RULES.get(id);
+        if (rule == null) {
+            throw new IllegalArgumentException("规则不存在：" + id + "，可选的规则：" + RULES.keySet());
+        }
+        return rule;
+    }
+
+    /**
+     * @param rule 规则
+     * @return 内置规则的名称，不是内置的实例时返回 null
+     */
+    public static String idOf(Rule rule) {
+        for (Map.Entry<String, Rule> entry : RULES.entrySet()) {
+            if (entry.getValue() == rule) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 持久化时保存的规则名称
+     *
+     * @param rule 规则
+     * @return 内置规则的名称
+     * @throws IllegalArgumentException 不是内置的实例，按类名无法区分同一个类的不同配置，不能持久化
+     */
+    public static String persistentId(Rule rule) {
+        String id = idOf(rule);
+        if (id == null) {
+            throw new IllegalArgumentException("规则未注册，无法持久化：" + rule.getClass().getName());
+        }
+        return id;
+    }
+
+    /**
+     * @param id 规则名称
+     * @return 规则，不存在时返回 null
+     */
+    public static Rule find(String id) {
+        return RULES.get(id);
+    }
+
+    /**
+     * 兼容旧版本按类名保存的日志与复盘文件
+     *
+     * @param className 规则类名
+     * @return 该类的内置实例，没有时返回 null
+     */
+    public static Rule forClassName(String className) {
+        return CLASS_RULES.get(className);
+    }
+
+    /**
+     * @return 全部规则名称，按注册顺序
+     */
+    public static Set<String> ids() {
+        return RULES.keySet();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.rule;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.executor.Executor;
+import com.leavey.mahjong.engine.factory.GameFactory;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * 编译后的规则模板
+ * <p>
+ * 规则的执行器、牌池和数值参数只在第一次使用时计算一次，之后由同一规则实例的全部牌局及其副本共享，模板本身不可变。
+ * {@link RuleRegistry} 中的规则常驻，模板放在并发表中，每局牌获取模板不加锁；
+ * 其他规则的模板按规则实例缓存，规则不再被引用时模板随之回收，因此请复用规则实例，而不是每局创建一个
+ *
+ * @author Leavey
+ */
+public final class RuleTemplate {
+    /**
+     * 内置规则的模板
+     */
+    private static final Map<Rule, RuleTemplate> REGISTERED = new ConcurrentHashMap<>();
+    /**
+     * 其他规则的模板
+     */
+    private static final Map<Rule, RuleTemplate> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Action[] ACTIONS = Action.values();
+
+    /**
+     * 执行器，下标为操作的序号
+     */
+    private final Executor[] executors;
+    private final Map<Action, Executor> executorMap;
+    /**
+     * 牌池中每张牌的编码
+     */
+    private final byte[] poolCodes;
+    private final List<Tile> pool;
+    /**
+     * 牌池中每种牌的数量，下标为牌的编码
+     */
+    private final int[] poolAmounts;
+    /**
+     * 牌池中存在的牌的编码，从小到大
+     */
+    private final int[] tileCodes;
+    /**
+     * 可以做将的牌，下标为牌的编码
+     */
+    private final boolean[] leaders;
+    private final WinTable winTable;
+    private final int playerAmount;
+    private final int firstHandAmount;
+    private final int gangDrawAmount;
+    /**
+     * 开杠后摸的牌是否补进手牌
+     */
+    private final boolean gangDrawToHand;
+    /**
+     * 是否为内置规则的模板，内置规则的模板不会被回收
+     */
+    private final boolean registered;
+
+    private RuleTemplate(Rule rule, boolean registered) {
+        this.registered = registered;
+        Map<Action, Executor> map = GameFactory.defaultExecutorMap();
+        rule.customizeExecutors(map);
+        this.executorMap = Collections.unmodifiableMap(new EnumMap<>(map));
+        this.executors = new Executor[ACTIONS.length];
+        map.forEach((action, executor) -> executors[action.ordinal()] = executor);
+
+        List<Tile> tiles = new ArrayList<>();
+        for (Type type : Type.values()) {
+            tiles.addAll(rule.newTiles(type));
+        }
+        this.poolCodes = new byte[tiles.size()];
+        List<Tile> shared = new ArrayList<>(tiles.size());
+        for (int i = 0; i < poolCodes.length; i++) {
+            poolCodes[i] = (byte) tiles.get(i).getCode();
+            shared.add(Matrix.of(poolCodes[i]));
+        }
+        this.pool = Collections.unmodifiableList(shared);
+        this.poolAmounts = new int[Matrix.CODE_BOUND];
+        for (byte code : poolCodes) {
+            poolAmounts[code]++;
+        }
+        this.tileCodes = IntStream.range(0, Matrix.CODE_BOUND).filter(code -> poolAmounts[code] > 0).toArray();
+
+        this.leaders = new boolean[Matrix.CODE_BOUND];
+        for (int code = 0; code < Matrix.CODE_BOUND; code++) {
+            Tile tile = Matrix.of(code);
+            leaders[code] = tile != null && rule.canLeader(tile);
+        }
+        this.winTable = new WinTable(leaders);
+        this.playerAmount = rule.playerAmount();
+        this.firstHandAmount = rule.firstHandAmount();
+        this.gangDrawAmount = rule.allowGangDrawAmount();
+        this.gangDrawToHand = !map.containsKey(Action.GANG_PLAY);
+    }
+
+    /**
+     * 获取规则对应的模板，第一次获取时编译
+     *
+     * @param rule 规则
+     * @return 模板
+     */
+    public static RuleTemplate of(Rule rule) {
+        RuleTemplate template = REGISTERED.get(rule);
+        return template != null ? template : CACHE.computeIfAbsent(rule, r -> new RuleTemplate(r, false));
+    }
+
+    /**
+     * 编译内置规则的模板，由 {@link RuleRegistry} 在注册时调用
+     *
+     * @param rule 规则
+     * @return 模板
+     */
+    static RuleTemplate register(Rule rule) {
+        return REGISTERED.computeIfAbsent(rule, r -> new RuleTemplate(r, true));
+    }
+
+    /**
+     * @return 是否为内置规则的模板，是时模板常驻，可以放入不会回收的缓存
+     */
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * @param action 操作
+     * @return 操作的执行器，规则不支持时返回 null
+     */
+    public Executor executor(Action action) {
+        return executors[action.ordinal()];
+    }
+
+    /**
+     * @return 全部执行器，不可修改
+     */
+    public Map<Action, Executor> getExecutors() {
+        return executorMap;
+    }
+
+    /**
+     * @return 牌池中每张牌的编码，调用方不可修改
+     */
+    public byte[] getPoolCodes() {
+        return poolCodes;
+    }
+
+    /**
+     * @return 牌池，不可修改
+     */
+    public List<Tile> getPool() {
+        return pool;
+    }
+
+    /**
+     * @param code 牌的编码
+     * @return 牌池中该牌的数量
+     */
+    public int getPoolAmount(int code) {
+        return poolAmounts[code];
+    }
+
+    /**
+     * @return 牌池中存在的牌的编码，从小到大，调用方不可修改
+     */
+    public int[] getTileCodes() {
+        return tileCodes;
+    }
+
+    public boolean canLeader(int code) {
+        return leaders[code];
+    }
+
+    /**
+     * @return 按规则的将牌编译的胡牌表
+     */
+    public WinTable getWinTable() {
+        return winTable;
+    }
+
+    public int getPlayerAmount() {
+        return playerAmount;
+    }
+
+    public int getFirstHandAmount() {
+        return firstHandAmount;
+    }
+
+    public int getGangDrawAmount() {
+        return gangDrawAmount;
+    }
+
+    /**
+     * 规则没有杠后打牌操作时，开杠后摸的牌补进手牌，之后与摸牌后一样可以打牌、暗杠、自摸
+     *
+     * @return 开杠后摸的牌是否补进手牌
+     */
+    public boolean isGangDrawToHand() {
+        return gangDrawToHand;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.rule;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.executor.Executor;
+import com.leavey.mahjong.engine.executor.GangDrawToHandExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 四川麻将规则
+ * <p>
+ * 只有万、饼、条共 108 张，不能吃牌，任意对子都可以做将，开杠后从牌墙尾部补一张进手牌，再与摸牌后一样打出任意一张
+ *
+ * @author Leavey
+ */
+public class SiChuanRule implements Rule {
+
+    @Override
+    public List<Tile> newTiles(Type type) {
+        if (type == Type.CHARACTER || type == Type.DOT || type == Type.BAMBOO) {
+            return Rule.super.newTiles(type);
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void customizeExecutors(Map<Action, Executor> executorMap) {
+        //杠后摸的牌补进手牌，没有杠后打牌
+        executorMap.put(Action.GANG_DRAW, new GangDrawToHandExecutor());
+        executorMap.remove(Action.GANG_PLAY);
+        executorMap.remove(Action.EAT);
+    }
+
+    @Override
+    public int allowGangDrawAmount() {
+        return 1;
+    }
+}
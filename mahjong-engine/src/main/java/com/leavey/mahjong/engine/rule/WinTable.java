@@ -0,0 +1,264 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.rule;
+
+import com.leavey.mahjong.common.bean.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 胡牌表
+ * <p>
+ * 万、饼、条每一门牌的手牌按每种牌的数量编码为 9 位 5 进制数，预先枚举出全部能组成句话的组合，
+ * 以及组成句话加一对将的组合，记录在位图中。判断胡牌时每门牌只需要查一次表，不需要递归拆牌。
+ * 风、中发白不能组成顺子，直接按数量判断。
+ * <p>
+ * 每门牌的位图只与哪些牌可以做将有关，按将牌掩码全局共享，长沙麻将 3 门牌共用同一张表
+ *
+ * @author Leavey
+ */
+public final class WinTable {
+    /**
+     * 一门牌最多的种类
+     */
+    private static final int VALUES = 9;
+    /**
+     * 一门牌的编码上界，5 的 9 次方
+     */
+    private static final int KEY_BOUND = 1953125;
+    /**
+     * 任意牌都可以做将的掩码
+     */
+    private static final int ANY_LEADER = (1 << VALUES) - 1;
+    /**
+     * 一门牌最多组成的句话数量，手牌最多 14 张
+     */
+    private static final int MAX_GROUPS = 4;
+    private static final int[] POW5 = new int[VALUES + 1];
+    private static final Map<Integer, SuitTable> SUIT_TABLES = new ConcurrentHashMap<>();
+
+    static {
+        POW5[0] = 1;
+        for (int i = 1; i <= VALUES; i++) {
+            POW5[i] = POW5[i - 1] * 5;
+        }
+    }
+
+    /**
+     * 能组成顺子的门中点数为 1 的牌的编码
+     */
+    private final int[] suitBases;
+    /**
+     * 与 {@link #suitBases} 对应的位图
+     */
+    private final SuitTable[] suits;
+    /**
+     * 与 {@link #suitBases} 对应的任意牌做将的位图
+     */
+    private final SuitTable[] anyLeaderSuits;
+    /**
+     * 不能组成顺子的牌的编码
+     */
+    private final int[] honorCodes;
+    /**
+     * 可以做将的牌，下标为牌的编码
+     */
+    private final boolean[] leaders;
+
+    /**
+     * @param leaders 可以做将的牌，下标为牌的编码
+     */
+    WinTable(boolean[] leaders) {
+        this.leaders = leaders;
+        List<Integer> bases = new ArrayList<>();
+        List<SuitTable> tables = new ArrayList<>();
+        List<Integer> honors = new ArrayList<>();
+        for (Type type : Type.values()) {
+            if (type.isAllowDiffGroup()) {
+                int mask = 0;
+                for (int value = 1; value <= type.getMaxValue(); value++) {
+                    if (leaders[type.getBase() + value]) {
+                        mask |= 1 << (value - 1);
+                    }
+                }
+                bases.add(type.getBase() + 1);
+                tables.add(SUIT_TABLES.computeIfAbsent(mask, SuitTable::new));
+            } else {
+                for (int value = 1; value <= type.getMaxValue(); value++) {
+                    honors.add(type.getBase() + value);
+                }
+            }
+        }
+        this.suitBases = bases.stream().mapToInt(Integer::intValue).toArray();
+        this.suits = tables.toArray(new SuitTable[0]);
+        this.anyLeaderSuits = new SuitTable[suits.length];
+        Arrays.fill(anyLeaderSuits, SUIT_TABLES.computeIfAbsent(ANY_LEADER, SuitTable::new));
+        this.honorCodes = honors.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 手牌是否胡牌，即全部组成句话且恰好有一对将
+     *
+     * @param counts 手牌，下标为牌的编码，每种牌不超过 4 张
+     * @return 胡牌返回 true
+     */
+    public boolean isComplete(int[] counts) {
+        return isComplete(counts, suits, false);
+    }
+
+    /**
+     * 手牌是否全部组成句话且恰好有一对将，将牌不受规则限制，用于长沙麻将碰碰胡、清一色等不要求 2、5、8 做将的大胡
+     *
+     * @param counts 手牌，下标为牌的编码，每种牌不超过 4 张
+     * @return 胡牌返回 true
+     */
+    public boolean isCompleteWithAnyPair(int[] counts) {
+        return isComplete(counts, anyLeaderSuits, true);
+    }
+
+    /**
+     * 手牌是否为七小对，即 14 张手牌全部是对子，4 张相同的牌算两对
+     *
+     * @param counts 手牌，下标为牌的编码
+     * @return 是七小对返回 true
+     */
+    public static boolean isSevenPairs(int[] counts) {
+        int size = 0;
+        for (int count : counts) {
+            if ((count & 1) != 0) {
+                return false;
+            }
+            size += count;
+        }
+        return size == 14;
+    }
+
+    private boolean isComplete(int[] counts, SuitTable[] suits, boolean anyLeader) {
+        int pairs = 0;
+        for (int i = 0; i < suits.length; i++) {
+            int base = suitBases[i];
+            int key = 0;
+            int size = 0;
+            for (int value = 0; value < VALUES; value++) {
+                int count = counts[base + value];
+                if (count > 4) {
+                    return false;
+                }
+                key += count * POW5[value];
+                size += count;
+            }
+            int rest = size % 3;
+            if (rest == 0) {
+                if (!suits[i].groups(key)) {
+                    return false;
+                }
+            } else if (rest == 2 && pairs == 0) {
+                if (!suits[i].groupsWithPair(key)) {
+                    return false;
+                }
+                pairs++;
+            } else {
+                return false;
+            }
+        }
+        for (int code : honorCodes) {
+            int count = counts[code];
+            if (count == 2 && (anyLeader || leaders[code])) {
+                pairs++;
+            } else if (count != 0 && count != 3) {
+                return false;
+            }
+        }
+        return pairs == 1;
+    }
+
+    /**
+     * 一门牌的位图
+     */
+    private static final class SuitTable {
+        /**
+         * 全部组成句话的组合
+         */
+        private final long[] groups = new long[(KEY_BOUND >>> 6) + 1];
+        /**
+         * 组成句话加一对将的组合
+         */
+        private final long[] groupsWithPair = new long[(KEY_BOUND >>> 6) + 1];
+
+        /**
+         * @param leaderMask 可以做将的牌，第 n 位表示点数为 n + 1 的牌
+         */
+        SuitTable(int leaderMask) {
+            enumerate(new int[VALUES], 0, 0, 0, leaderMask);
+        }
+
+        /**
+         * 从第 from 个句话开始，依次加入句话，只按编号递增的顺序加入以避免重复
+         * <p>
+         * 句话编号 0~8 为一坎，9~15 为以对应点数开头的一句话
+         */
+        private void enumerate(int[] counts, int key, int amount, int from, int leaderMask) {
+            set(groups, key);
+            for (int value = 0; value < VALUES; value++) {
+                if ((leaderMask & (1 << value)) != 0 && counts[value] <= 2) {
+                    set(groupsWithPair, key + 2 * POW5[value]);
+                }
+            }
+            if (amount == MAX_GROUPS) {
+                return;
+            }
+            for (int group = from; group < VALUES + VALUES - 2; group++) {
+                if (group < VALUES) {
+                    if (counts[group] > 1) {
+                        continue;
+                    }
+                    counts[group] += 3;
+                    enumerate(counts, key + 3 * POW5[group], amount + 1, group, leaderMask);
+                    counts[group] -= 3;
+                } else {
+                    int value = group - VALUES;
+                    if (counts[value] == 4 || counts[value + 1] == 4 || counts[value + 2] == 4) {
+                        continue;
+                    }
+                    counts[value]++;
+                    counts[value + 1]++;
+                    counts[value + 2]++;
+                    enumerate(counts, key + POW5[value] + POW5[value + 1] + POW5[value + 2], amount + 1, group, leaderMask);
+                    counts[value]--;
+                    counts[value + 1]--;
+                    counts[value + 2]--;
+                }
+            }
+        }
+
+        private static void set(long[] bits, int key) {
+            bits[key >>> 6] |= 1L << key;
+        }
+
+        boolean groups(int key) {
+            return (groups[key >>> 6] & (1L << key)) != 0;
+        }
+
+        boolean groupsWithPair(int key) {
+            return (groupsWithPair[key >>> 6] & (1L << key)) != 0;
+        }
+    }
+}
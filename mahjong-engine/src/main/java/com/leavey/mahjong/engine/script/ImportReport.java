@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.script;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量导入的汇总结果
+ *
+ * @author Leavey
+ */
+public class ImportReport {
+    private final List<ScriptResult> results;
+    private final long elapsedNanos;
+
+    ImportReport(List<ScriptResult> results, long elapsedNanos) {
+        this.results = results;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return 每个文件的导入结果，顺序与传入的文件一致
+     */
+    public List<ScriptResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public long getGames() {
+        return results.stream().mapToLong(ScriptResult::getGames).sum();
+    }
+
+    public long getFailedGames() {
+        return results.stream().mapToLong(ScriptResult::getFailedGames).sum();
+    }
+
+    public long getCommands() {
+        return results.stream().mapToLong(ScriptResult::getCommands).sum();
+    }
+
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (getGames() + getFailedGames()) * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (ScriptResult result : results) {
+            if (result.getErrorAmount() > 0) {
+                sb.append(result).append(System.lineSeparator());
+            }
+        }
+        sb.append(String.format("文件数：%d，成功：%d，失败：%d，命令数：%d，耗时：%.3fs，%.0f局/秒",
+                results.size(), getGames(), getFailedGames(), getCommands(), elapsedNanos / 1e9, getGamesPerSecond()));
+        return sb.toString();
+    }
+}
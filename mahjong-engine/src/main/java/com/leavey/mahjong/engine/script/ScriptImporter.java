@@ -0,0 +1,372 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.script;
+
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.rule.ChangShaRule;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.util.Command;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 批量导入手工记录的命令脚本，命令格式见 {@link Command}
+ * <p>
+ * 脚本按行流式读取，空行分隔不同的对局，以 # 开头的行为注释。
+ * 命令直接在牌局上执行，不经过 {@link com.leavey.mahjong.engine.factory.GameFactory}，因此不会为每一步保存快照。
+ * 某一局出错时记录行号并跳过该局剩余的命令，不影响同一文件中的其他对局
+ * <p>
+ * 多个文件由多个线程并行导入。文件数少于线程数时，较大的文件在空行处拆分成多个部分分给不同的线程，
+ * 同一部分内的对局按顺序导入，结果按文件合并，行号仍然是在整个文件中的行号
+ *
+ * @author Leavey
+ */
+public class ScriptImporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * 拆分文件时每个部分的最小字节数，更小的文件不拆分
+     */
+    private static final long MIN_PART_SIZE = 1 << 20;
+
+    private final Rule rule;
+    private final int threads;
+    /**
+     * 导入完成的牌局，会在多个线程中调用
+     */
+    private final Consumer<Game> sink;
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * @param rule    规则
+     * @param threads 线程数，不小于 1
+     * @param sink    接收导入完成的牌局，需要线程安全，可以为 null
+     */
+    public ScriptImporter(Rule rule, int threads, Consumer<Game> sink) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("线程数必须大于 0：" + threads);
+        }
+        this.rule = rule;
+        this.threads = threads;
+        this.sink = sink;
+    }
+
+    /**
+     * 并行导入多个文件
+     *
+     * @param files 脚本文件
+     * @return 汇总结果
+     */
+    public ImportReport importFiles(List<Path> files) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Part> parts = split(files);
+        int workers = Math.max(1, Math.min(threads, parts.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            AtomicInteger cursor = new AtomicInteger();
+            ScriptResult[] partResults = new ScriptResult[parts.size()];
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(pool.submit(() -> {
+                    int index;
+                    while ((index = cursor.getAndIncrement()) < parts.size()) {
+                        partResults[index] = importPart(parts.get(index));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            //按文件合并，同一文件的部分在列表中是连续且有序的
+            ScriptResult[] results = new ScriptResult[files.size()];
+            for (int i = 0; i < parts.size(); i++) {
+                Part part = parts.get(i);
+                if (part.whole) {
+                    results[part.file] = partResults[i];
+                } else {
+                    if (results[part.file] == null) {
+                        results[part.file] = new ScriptResult(part.path.toString());
+                    }
+                    results[part.file].merge(partResults[i]);
+                }
+            }
+            return new ImportReport(Arrays.asList(results), System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("导入异常", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 文件的一部分，从空行之后开始，到下一个部分的起点结束，不会拆开同一局的命令
+     */
+    private static final class Part {
+        private final int file;
+        private final Path path;
+        private final long start;
+        private final long end;
+        private final boolean whole;
+
+        private Part(int file, Path path, long start, long end, boolean whole) {
+            this.file = file;
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.whole = whole;
+        }
+    }
+
+    /**
+     * 文件数少于线程数时把较大的文件拆分成多个部分，让每个线程都有活干
+     */
+    private List<Part> split(List<Path> files) {
+        List<Part> parts = new ArrayList<>(files.size());
+        int partsPerFile = (threads + files.size() - 1) / Math.max(1, files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            if (partsPerFile > 1) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    int amount = (int) Math.min(partsPerFile, size / MIN_PART_SIZE);
+                    if (amount > 1) {
+                        long start = 0;
+                        for (int k = 1; k < amount && start < size; k++) {
+                            long end = nextGameStart(channel, Math.max(start, size * k / amount), size);
+                            if (end > start) {
+                                parts.add(new Part(i, path, start, end, false));
+                                start = end;
+                            }
+                        }
+                        if (start < size) {
+                            parts.add(new Part(i, path, start, size, false));
+                        }
+                        continue;
+                    }
+                } catch (IOException e) {
+                    //读取失败的文件整体导入，错误记录在该文件的结果中
+                }
+            }
+            parts.add(new Part(i, path, 0, -1, true));
+        }
+        return parts;
+    }
+
+    /**
+     * 从指定位置所在行的下一行开始，找到第一个空行之后的位置
+     *
+     * @return 空行之后的位置，没有空行时为文件末尾
+     */
+    private static long nextGameStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = from;
+        //跳过起点所在的行
+        boolean lineStart = false;
+        boolean blank = true;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    if (lineStart && blank) {
+                        return position + i + 1;
+                    }
+                    lineStart = true;
+                    blank = true;
+                } else if (b != ' ' && b != '\t' && b != '\r') {
+                    blank = false;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private ScriptResult importPart(Part part) {
+        if (part.whole) {
+            return importFile(part.path);
+        }
+        try (FileChannel channel = FileChannel.open(part.path, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(range(channel, part.start, part.end)), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            return importScript(part.path.toString(), reader);
+        } catch (IOException e) {
+            ScriptResult result = new ScriptResult(part.path.toString());
+            result.recordError(0, "读取文件失败：" + e);
+            return result;
+        }
+    }
+
+    /**
+     * 只读取文件中 [start, end) 范围的通道，关闭时不关闭文件
+     */
+    private static ReadableByteChannel range(FileChannel channel, long start, long end) {
+        return new ReadableByteChannel() {
+            private long position = start;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int limit = dst.limit();
+                if (end - position < dst.remaining()) {
+                    dst.limit(dst.position() + (int) (end - position));
+                }
+                try {
+                    int read = channel.read(dst, position);
+                    if (read > 0) {
+                        position += read;
+                    }
+                    return read;
+                } finally {
+                    dst.limit(limit);
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * 导入单个文件，读取失败也会记录在结果中
+     *
+     * @param file 脚本文件
+     * @return 导入结果
+     */
+    public ScriptResult importFile(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            return importScript(file.toString(), reader);
+        } catch (IOException e) {
+            ScriptResult result = new ScriptResult(file.toString());
+            result.recordError(0, "读取文件失败：" + e);
+            return result;
+        }
+    }
+
+    /**
+     * 导入一个脚本
+     *
+     * @param name   脚本名称
+     * @param reader 脚本内容
+     * @return 导入结果
+     * @throws IOException 读取失败
+     */
+    public ScriptResult importScript(String name, BufferedReader reader) throws IOException {
+        ScriptResult result = new ScriptResult(name);
+        long start = System.nanoTime();
+        Game game = null;
+        //当前对局出错后跳过剩余的命令
+        boolean skip = false;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int begin = 0;
+            int end = line.length();
+            while (begin < end && Character.isWhitespace(line.charAt(begin))) {
+                begin++;
+            }
+            if (begin == end) {
+                //空行，上一局结束
+                if (game != null && !skip) {
+                    finish(game, result);
+                }
+                game = null;
+                skip = false;
+                continue;
+            }
+            if (line.charAt(begin) == '#' || skip) {
+                continue;
+            }
+            if (game == null) {
+                game = new Game(ids.getAndIncrement(), rule);
+            }
+            try {
+                Command.parse(line, begin, end).execute(game);
+                result.recordCommand();
+            } catch (RuntimeException e) {
+                result.recordError(lineNumber, e.getMessage() == null ? e.toString() : e.getMessage());
+                skip = true;
+            }
+        }
+        if (game != null && !skip) {
+            finish(game, result);
+        }
+        result.setLines(lineNumber);
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    private void finish(Game game, ScriptResult result) {
+        result.recordGame();
+        if (sink != null) {
+            sink.accept(game);
+        }
+    }
+
+    /**
+     * 参数依次为：线程数、脚本文件或目录（可以有多个）
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("参数：线程数 脚本文件或目录...");
+            return;
+        }
+        int threads = Integer.parseInt(args[0]);
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            try (Stream<Path> paths = Files.walk(Paths.get(args[i]))) {
+                files.addAll(paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+            }
+        }
+        ScriptImporter importer = new ScriptImporter(new ChangShaRule(), threads, null);
+        System.out.println(importer.importFiles(files));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leavey.mahjong.engine.script;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个脚本文件的导入结果
+ *
+ * @author Leavey
+ */
+public class ScriptResult {
+    /**
+     * 每个文件最多保留的错误数，其余只计数
+     */
+    private static final int MAX_ERRORS = 100;
+
+    private final String name;
+    private long games;
+    private long failedGames;
+    private long commands;
+    private long errorAmount;
+    private final List<Long> errorLines = new ArrayList<>();
+    private final List<String> errorMessages = new ArrayList<>();
+    /**
+     * 读取的行数，合并同一文件拆分出的多个部分时用于换算行号
+     */
+    private long lines;
+    private long elapsedNanos;
+
+    public ScriptResult(String name) {
+        this.name = name;
+    }
+
+    void recordGame() {
+        games++;
+    }
+
+    void recordCommand() {
+        commands++;
+    }
+
+    /**
+     * 记录一局中的错误，该局剩余的命令会被跳过
+     *
+     * @param line    行号，从 1 开始
+     * @param message 错误信息
+     */
+    void recordError(long line, String message) {
+        failedGames++;
+        errorAmount++;
+        if (errorLines.size() < MAX_ERRORS) {
+            errorLines.add(line);
+            errorMessages.add(message);
+        }
+    }
+
+    void setLines(long lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * 按顺序合并同一文件的下一部分，行号接在已合并的部分之后，耗时为各部分之和
+     *
+     * @param part 下一部分的导入结果
+     */
+    void merge(ScriptResult part) {
+        games += part.games;
+        failedGames += part.failedGames;
+        commands += part.commands;
+        errorAmount += part.errorAmount;
+        for (int i = 0; i < part.errorLines.size() && errorLines.size() < MAX_ERRORS; i++) {
+            long line = part.errorLines.get(i);
+            errorLines.add(line == 0 ? 0 : lines + line);
+            errorMessages.add(part.errorMessages.get(i));
+        }
+        lines += part.lines;
+        elapsedNanos += part.elapsedNanos;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 成功导入的对局数
+     */
+    public long getGames() {
+        return games;
+    }
+
+    public long getFailedGames() {
+        return failedGames;
+    }
+
+    public long getCommands() {
+        return commands;
+    }
+
+    public long getErrorAmount() {
+        return errorAmount;
+    }
+
+    public List<String> getErrors() {
+        List<String> errors = new ArrayList<>(errorLines.size());
+        for (int i = 0; i < errorLines.size(); i++) {
+            errors.add("第" + errorLines.get(i) + "行：" + errorMessages.get(i));
+        }
+        return Collections.unmodifiableList(errors);
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s 成功：%d，失败：%d，命令数：%d，耗时：%.3fs", name, games, failedGames, commands, elapsedNanos / 1e9));
+        List<String> errors = getErrors();
+        for (String error : errors) {
+            sb.append(System.lineSeparator()).append("  ").append(error);
+        }
+        if (errorAmount > errors.size()) {
+            sb.append(System.lineSeparator()).append("  ……共").append(errorAmount).append("个错误");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.analysis.DiscardRisk;
+import com.leavey.mahjong.engine.analysis.HandAnalysis;
+import com.leavey.mahjong.engine.util.Matrix;
+
+/**
+ * 防守的贪心策略
+ * <p>
+ * 有对手很可能已经听牌，而自己离听牌还远时，打出点炮风险最小的牌，风险相同时按贪心策略选择；其他时候与贪心策略相同
+ *
+ * @author Leavey
+ */
+public class DefensivePolicy extends GreedyPolicy {
+    /**
+     * 对手听牌概率超过该值时开始防守
+     */
+    private static final double TENPAI_THRESHOLD = 0.5;
+    /**
+     * 自己的向听数不小于该值时才防守
+     */
+    private static final int SHANTEN_THRESHOLD = 2;
+    /**
+     * 风险相差小于该值时视为相同
+     */
+    private static final double RISK_EPSILON = 1e-3;
+
+    @Override
+    public Tile discard(SeatView view) {
+        HandAnalysis analysis = view.getGame().getPlayers()[view.getSeat()].getAnalysis();
+        if (analysis == null || !analysis.isKnown() || analysis.getShanten() < SHANTEN_THRESHOLD) {
+            return super.discard(view);
+        }
+        DiscardRisk discardRisk = view.getDiscardRisk();
+        double[] risks = discardRisk.evaluate();
+        if (!isThreatened(view, discardRisk)) {
+            return super.discard(view);
+        }
+        int[] counts = view.getCounts();
+        int best = -1;
+        double bestRisk = Double.MAX_VALUE;
+        int bestScore = Integer.MAX_VALUE;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0) {
+                continue;
+            }
+            double risk = risks[code];
+            if (risk < bestRisk - RISK_EPSILON) {
+                best = code;
+                bestRisk = risk;
+                bestScore = score(view, code);
+            } else if (risk < bestRisk + RISK_EPSILON) {
+                int score = score(view, code);
+                if (score < bestScore) {
+                    best = code;
+                    bestRisk = Math.min(bestRisk, risk);
+                    bestScore = score;
+                }
+            }
+        }
+        if (best < 0) {
+            throw new IllegalStateException("数据异常，手牌为空");
+        }
+        return Matrix.of(best);
+    }
+
+    private boolean isThreatened(SeatView view, DiscardRisk discardRisk) {
+        for (int seat = 0; seat < view.getGame().getPlayerAmount(); seat++) {
+            if (seat != view.getSeat() && discardRisk.tenpai(seat) > TENPAI_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.util.Matrix;
+
+/**
+ * 简单的贪心策略
+ * <p>
+ * 优先打出与其他牌关联最少的牌，有对子就碰，有四张就杠，能凑成句话就吃
+ *
+ * @author Leavey
+ */
+public class GreedyPolicy implements SeatPolicy {
+
+    @Override
+    public Tile discard(SeatView view) {
+        int[] counts = view.getCounts();
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0) {
+                continue;
+            }
+            int score = score(view, code);
+            if (score < bestScore || (score == bestScore && view.getRandom().nextBoolean())) {
+                best = code;
+                bestScore = score;
+            }
+        }
+        if (best < 0) {
+            throw new IllegalStateException("数据异常，手牌为空");
+        }
+        return Matrix.of(best);
+    }
+
+    /**
+     * 计算一张牌与手牌的关联度，越小越应该打出
+     *
+     * @param view 座位视图
+     * @param code 牌的编码
+     * @return 关联度
+     */
+    protected int score(SeatView view, int code) {
+        int[] counts = view.getCounts();
+        Tile tile = Matrix.of(code);
+        //相同的牌
+        int score = (counts[code] - 1) * 4;
+        if (view.getGame().getRule().canLeader(tile)) {
+            score++;
+        }
+        if (tile.getType().isAllowDiffGroup()) {
+            //相邻、隔张的牌
+            int value = tile.getValue();
+            for (int offset = -2; offset <= 2; offset++) {
+                int neighbour = value + offset;
+                if (offset != 0 && neighbour >= 1 && neighbour <= 9 && counts[code + offset] > 0) {
+                    score += Math.abs(offset) == 1 ? 3 : 2;
+                }
+            }
+        }
+        return score;
+    }
+
+    @Override
+    public boolean pen(SeatView view, Tile tile) {
+        return true;
+    }
+
+    @Override
+    public boolean gang(SeatView view, Tile tile, boolean dark) {
+        return true;
+    }
+
+    @Override
+    public EatPosition eat(SeatView view, Tile tile) {
+        int code = tile.getCode();
+        for (EatPosition position : EatPosition.values()) {
+            //只吃不拆对子的组合
+            if (view.canEat(tile, position) && !breaksPair(view, code, position)) {
+                return position;
+            }
+        }
+        return null;
+    }
+
+    private boolean breaksPair(SeatView view, int code, EatPosition position) {
+        int[] counts = view.getCounts();
+        if (position == EatPosition.LEFT) {
+            return counts[code + 1] >= 2 || counts[code + 2] >= 2;
+        } else if (position == EatPosition.MIDDLE) {
+            return counts[code - 1] >= 2 || counts[code + 1] >= 2;
+        } else {
+            return counts[code - 2] >= 2 || counts[code - 1] >= 2;
+        }
+    }
+}
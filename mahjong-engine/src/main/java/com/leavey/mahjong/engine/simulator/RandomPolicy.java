@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.util.Matrix;
+
+/**
+ * 随机打牌，能胡就胡，不吃碰杠
+ * <p>
+ * 作为其他策略的对照组
+ *
+ * @author Leavey
+ */
+public class RandomPolicy implements SeatPolicy {
+
+    @Override
+    public Tile discard(SeatView view) {
+        int[] counts = view.getCounts();
+        int target = view.getRandom().nextInt(view.getSize());
+        for (int code = 0; code < counts.length; code++) {
+            target -= counts[code];
+            if (target < 0) {
+                return Matrix.of(code);
+            }
+        }
+        throw new IllegalStateException("数据异常，手牌为空");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.EatPosition;
+
+/**
+ * 模拟对局中某个座位的决策策略
+ * <p>
+ * 同一个策略实例会被多个线程、多个座位共享，实现类不应持有可变状态，随机数请使用 {@link SeatView#getRandom()}
+ *
+ * @author Leavey
+ */
+public interface SeatPolicy {
+
+    /**
+     * 选择要打出的牌
+     *
+     * @param view 座位视图
+     * @return 要打出的牌，必须在手牌中
+     */
+    Tile discard(SeatView view);
+
+    /**
+     * 手牌已经可以胡牌时，是否胡牌
+     *
+     * @param view 座位视图
+     * @param tile 胡的牌
+     * @param self 是否自摸
+     * @return 胡牌返回 true
+     */
+    default boolean win(SeatView view, Tile tile, boolean self) {
+        return true;
+    }
+
+    /**
+     * 是否碰牌
+     *
+     * @param view 座位视图
+     * @param tile 其他家打出的牌
+     * @return 碰牌返回 true
+     */
+    default boolean pen(SeatView view, Tile tile) {
+        return false;
+    }
+
+    /**
+     * 是否开杠
+     *
+     * @param view 座位视图
+     * @param tile 要杠的牌
+     * @param dark 是否暗杠
+     * @return 开杠返回 true
+     */
+    default boolean gang(SeatView view, Tile tile, boolean dark) {
+        return false;
+    }
+
+    /**
+     * 是否吃上家打出的牌
+     *
+     * @param view 座位视图
+     * @param tile 上家打出的牌
+     * @return 吃牌的位置，不吃返回 null
+     */
+    default EatPosition eat(SeatView view, Tile tile) {
+        return null;
+    }
+}
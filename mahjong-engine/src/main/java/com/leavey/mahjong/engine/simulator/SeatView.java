@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.analysis.DiscardRisk;
+import com.leavey.mahjong.engine.analysis.TileInference;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.Random;
+
+/**
+ * 模拟对局中某个座位能看到的信息
+ * <p>
+ * 模拟时每张牌都是真实发出的，因此座位的手牌完全已知，这里按牌的编码计数，避免每次决策都复制引擎中的手牌
+ *
+ * @author Leavey
+ */
+public class SeatView {
+    private final Game game;
+    private final int seat;
+    private final Random random;
+    /**
+     * 手牌，下标为牌的编码
+     */
+    private final int[] counts = new int[Matrix.CODE_BOUND];
+    /**
+     * 手牌数量
+     */
+    private int size;
+    /**
+     * 点炮风险，第一次使用时创建，之后随牌局增量更新
+     */
+    private DiscardRisk discardRisk;
+
+    SeatView(Game game, int seat, Random random) {
+        this.game = game;
+        this.seat = seat;
+        this.random = random;
+    }
+
+    void add(Tile tile) {
+        counts[tile.getCode()]++;
+        size++;
+    }
+
+    void remove(Tile tile, int amount) {
+        counts[tile.getCode()] -= amount;
+        size -= amount;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int count(Tile tile) {
+        return counts[tile.getCode()];
+    }
+
+    public int count(int code) {
+        return counts[code];
+    }
+
+    /**
+     * 手牌计数，下标为牌的编码，调用方不可修改
+     *
+     * @return 手牌计数
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * 该座位视角的点炮风险，需要调用 {@link DiscardRisk#evaluate()} 按牌局的最新状态计算
+     *
+     * @return 点炮风险
+     */
+    public DiscardRisk getDiscardRisk() {
+        if (discardRisk == null) {
+            discardRisk = new DiscardRisk(new TileInference(game, seat));
+        }
+        return discardRisk;
+    }
+
+    /**
+     * 判断手牌能否以某个位置吃牌
+     *
+     * @param tile     要吃的牌
+     * @param position 吃牌位置
+     * @return 可以吃返回 true
+     */
+    public boolean canEat(Tile tile, EatPosition position) {
+        if (!tile.getType().isAllowEat()) {
+            return false;
+        }
+        int code = tile.getCode();
+        int value = tile.getValue();
+        if (position == EatPosition.LEFT) {
+            return value <= 7 && counts[code + 1] > 0 && counts[code + 2] > 0;
+        } else if (position == EatPosition.MIDDLE) {
+            return value >= 2 && value <= 8 && counts[code - 1] > 0 && counts[code + 1] > 0;
+        } else if (position == EatPosition.RIGHT) {
+            return value >= 3 && counts[code - 2] > 0 && counts[code - 1] > 0;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.ActionRequest;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.bean.Game;
+import com.leavey.mahjong.engine.bean.Wall;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.WinTable;
+import com.leavey.mahjong.engine.util.Matrix;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 一局完整的模拟对局
+ * <p>
+ * 由引擎洗牌、发牌后由各座位的策略决策，直接驱动 {@link Game#play(ActionRequest)}，直到有人胡牌或牌堆摸完
+ *
+ * @author Leavey
+ */
+public class Simulation {
+    /**
+     * 对局结束
+     */
+    private static final int OVER = -2;
+    /**
+     * 打出的牌无人要
+     */
+    private static final int NONE = -1;
+
+    private final Game game;
+    private final Rule rule;
+    private final WinTable winTable;
+    private final SeatPolicy[] policies;
+    private final SeatView[] views;
+    private final Wall wall;
+    private Tile lastDrawn;
+    /**
+     * 开杠后摸的牌是否刚补进了手牌
+     */
+    private boolean gangDrawn;
+
+    private int winner = -1;
+    private int discarder = -1;
+    private boolean self;
+    private int actions;
+    private int draws;
+
+    /**
+     * @param id       对局ID
+     * @param rule     规则
+     * @param policies 每个座位的策略
+     * @param seed     随机种子，相同的种子发到相同的牌
+     */
+    public Simulation(long id, Rule rule, SeatPolicy[] policies, long seed) {
+        if (policies.length != rule.playerAmount()) {
+            throw new IllegalArgumentException("策略数量与参与人数不一致");
+        }
+        this.game = new Game(id, rule);
+        game.deal(seed);
+        this.wall = game.getWall();
+        this.rule = rule;
+        this.winTable = game.getTemplate().getWinTable();
+        this.policies = policies;
+        this.views = new SeatView[policies.length];
+        //策略使用的随机数与洗牌相互独立
+        Random random = new Random(~seed);
+        for (int i = 0; i < views.length; i++) {
+            views[i] = new SeatView(game, i, random);
+            game.getPlayers()[i].getHand().getOpenTiles().forEach(views[i]::add);
+        }
+    }
+
+    /**
+     * 进行对局
+     *
+     * @param dealer 庄家
+     */
+    public void run(int dealer) {
+        int seat = dealer;
+        if (!draw(seat)) {
+            return;
+        }
+        boolean drawn = true;
+        while (true) {
+            if (drawn && selfWin(seat)) {
+                return;
+            }
+            Tile darkGang = drawn ? darkGangTile(seat) : null;
+            int result;
+            if (darkGang != null) {
+                views[seat].remove(darkGang, 4);
+                result = gang(seat, darkGang);
+            } else {
+                Tile discard = policies[seat].discard(views[seat]);
+                views[seat].remove(discard, 1);
+                play(new ActionRequest(seat, Action.PLAY, List.of(discard)));
+                result = claim(seat, List.of(discard), false);
+            }
+            if (result == OVER) {
+                return;
+            }
+            if (result == NONE) {
+                //无人要牌，最后出牌人的下家摸牌
+                seat = next(game.getFocus());
+                if (!draw(seat)) {
+                    return;
+                }
+                drawn = true;
+            } else {
+                //吃碰后直接出牌，杠后补牌进手牌时与摸牌后一样
+                seat = result;
+                drawn = gangDrawn;
+                gangDrawn = false;
+            }
+        }
+    }
+
+    private boolean draw(int seat) {
+        if (wall.remaining() == 0) {
+            //流局
+            return false;
+        }
+        lastDrawn = wall.peek();
+        views[seat].add(lastDrawn);
+        play(new ActionRequest(seat, Action.DRAW));
+        draws++;
+        return true;
+    }
+
+    private boolean selfWin(int seat) {
+        SeatView view = views[seat];
+        if (WinChecker.isComplete(view.getCounts(), view.getSize(), winTable) && policies[seat].win(view, lastDrawn, true)) {
+            play(new ActionRequest(seat, Action.WIN, List.of(lastDrawn)));
+            winner = seat;
+            self = true;
+            return true;
+        }
+        return false;
+    }
+
+    private Tile darkGangTile(int seat) {
+        if (!canGangDraw()) {
+            return null;
+        }
+        int[] counts = views[seat].getCounts();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 4) {
+                Tile tile = Matrix.of(code);
+                if (policies[seat].gang(views[seat], tile, true)) {
+                    return tile;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean canGangDraw() {
+        return wall.remaining() >= rule.allowGangDrawAmount();
+    }
+
+    /**
+     * 开杠，从牌堆尾部摸杠牌并全部打出；规则要求杠后摸的牌补进手牌时，补牌后由开杠的座位继续出牌
+     *
+     * @param seat 开杠的座位，要杠的牌已经从座位视图中移除
+     * @param tile 要杠的牌
+     * @return 打出杠牌后的处理结果
+     */
+    private int gang(int seat, Tile tile) {
+        play(new ActionRequest(seat, Action.GANG, List.of(tile)));
+        List<Tile> tiles = wall.peekTail(rule.allowGangDrawAmount());
+        play(new ActionRequest(seat, Action.GANG_DRAW));
+        if (game.getTemplate().isGangDrawToHand()) {
+            lastDrawn = tiles.get(0);
+            views[seat].add(lastDrawn);
+            gangDrawn = true;
+            return seat;
+        }
+        play(new ActionRequest(seat, Action.GANG_PLAY, tiles));
+        return claim(seat, tiles, true);
+    }
+
+    /**
+     * 其他座位对打出的牌进行胡、杠、碰、吃
+     *
+     * @param seat      出牌的座位
+     * @param tiles     打出的牌
+     * @param afterGang 是否开杠后打出的牌，此时出牌人自身也可以胡牌
+     * @return 对局结束返回 {@link #OVER}，无人要牌返回 {@link #NONE}，否则返回需要出牌的座位
+     */
+    private int claim(int seat, List<Tile> tiles, boolean afterGang) {
+        int players = views.length;
+        for (int i = afterGang ? 0 : 1; i < players; i++) {
+            int other = (seat + i) % players;
+            for (Tile tile : tiles) {
+                if (WinChecker.isWin(views[other], tile, winTable) && policies[other].win(views[other], tile, other == seat)) {
+                    views[other].add(tile);
+                    play(new ActionRequest(other, Action.WIN, List.of(tile)));
+                    winner = other;
+                    self = other == seat;
+                    discarder = self ? -1 : seat;
+                    return OVER;
+                }
+            }
+        }
+        for (int i = 1; i < players; i++) {
+            int other = (seat + i) % players;
+            SeatView view = views[other];
+            for (Tile tile : tiles) {
+                if (view.count(tile) == 3 && canGangDraw() && policies[other].gang(view, tile, false)) {
+                    view.remove(tile, 3);
+                    return gang(other, tile);
+                }
+                if (view.count(tile) >= 2 && policies[other].pen(view, tile)) {
+                    view.remove(tile, 2);
+                    play(new ActionRequest(other, Action.PEN, List.of(tile)));
+                    return other;
+                }
+            }
+        }
+        if (game.getTemplate().executor(Action.EAT) == null) {
+            //规则不允许吃牌
+            return NONE;
+        }
+        int next = next(seat);
+        SeatView view = views[next];
+        for (Tile tile : tiles) {
+            if (!tile.getType().isAllowEat()) {
+                continue;
+            }
+            EatPosition position = policies[next].eat(view, tile);
+            if (position != null && view.canEat(tile, position)) {
+                removeEatTiles(view, tile, position);
+                play(new ActionRequest(next, Action.EAT, tile, position));
+                return next;
+            }
+        }
+        return NONE;
+    }
+
+    private void removeEatTiles(SeatView view, Tile tile, EatPosition position) {
+        int code = tile.getCode();
+        int first = position == EatPosition.LEFT ? code + 1 : (position == EatPosition.MIDDLE ? code - 1 : code - 2);
+        int second = position == EatPosition.RIGHT ? code - 1 : (position == EatPosition.MIDDLE ? code + 1 : code + 2);
+        view.remove(Matrix.of(first), 1);
+        view.remove(Matrix.of(second), 1);
+    }
+
+    private void play(ActionRequest actionRequest) {
+        game.play(actionRequest);
+        actions++;
+    }
+
+    private int next(int seat) {
+        return (seat + 1) % views.length;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * @return 胡牌的座位，流局返回 -1
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return 点炮的座位，自摸或流局返回 -1
+     */
+    public int getDiscarder() {
+        return discarder;
+    }
+
+    public boolean isSelf() {
+        return self;
+    }
+
+    public int getActions() {
+        return actions;
+    }
+
+    public int getDraws() {
+        return draws;
+    }
+}
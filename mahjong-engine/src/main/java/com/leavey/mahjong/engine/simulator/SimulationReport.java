@@ -0,0 +1,180 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.simulator;
+
+/**
+ * 模拟对局的汇总结果
+ * <p>
+ * 每个工作线程持有一份，结束后合并，因此本身不需要线程安全
+ *
+ * @author Leavey
+ */
+public class SimulationReport {
+    private long games;
+    /**
+     * 每个座位的胡牌次数
+     */
+    private final long[] wins;
+    /**
+     * 每个座位的点炮次数
+     */
+    private final long[] discards;
+    private long selfWins;
+    /**
+     * 流局次数
+     */
+    private long exhausted;
+    /**
+     * 对局中抛出异常的次数
+     */
+    private long errors;
+    private String firstError;
+    private long actions;
+    private long draws;
+    private long elapsedNanos;
+
+    public SimulationReport(int players) {
+        this.wins = new long[players];
+        this.discards = new long[players];
+    }
+
+    /**
+     * 记录一局的结果
+     *
+     * @param simulation 已结束的对局
+     */
+    public void record(Simulation simulation) {
+        games++;
+        actions += simulation.getActions();
+        draws += simulation.getDraws();
+        int winner = simulation.getWinner();
+        if (winner < 0) {
+            exhausted++;
+            return;
+        }
+        wins[winner]++;
+        if (simulation.isSelf()) {
+            selfWins++;
+        } else {
+            discards[simulation.getDiscarder()]++;
+        }
+    }
+
+    /**
+     * 记录一局异常的对局
+     *
+     * @param e 异常
+     */
+    public void recordError(RuntimeException e) {
+        games++;
+        errors++;
+        if (firstError == null) {
+            firstError = e.toString();
+        }
+    }
+
+    /**
+     * 合并其他线程的结果
+     *
+     * @param other 其他结果
+     */
+    public void merge(SimulationReport other) {
+        games += other.games;
+        for (int i = 0; i < wins.length; i++) {
+            wins[i] += other.wins[i];
+            discards[i] += other.discards[i];
+        }
+        selfWins += other.selfWins;
+        exhausted += other.exhausted;
+        errors += other.errors;
+        if (firstError == null) {
+            firstError = other.firstError;
+        }
+        actions += other.actions;
+        draws += other.draws;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getWins(int seat) {
+        return wins[seat];
+    }
+
+    public double getWinRate(int seat) {
+        return games == 0 ? 0 : (double) wins[seat] / games;
+    }
+
+    public double getDiscardRate(int seat) {
+        return games == 0 ? 0 : (double) discards[seat] / games;
+    }
+
+    public long getSelfWins() {
+        return selfWins;
+    }
+
+    public long getExhausted() {
+        return exhausted;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public String getFirstError() {
+        return firstError;
+    }
+
+    /**
+     * @return 平均每局的操作数
+     */
+    public double getAverageActions() {
+        return games == 0 ? 0 : (double) actions / games;
+    }
+
+    /**
+     * @return 平均每局的摸牌数
+     */
+    public double getAverageDraws() {
+        return games == 0 ? 0 : (double) draws / games;
+    }
+
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("对局数：%d，耗时：%.3fs，%.0f局/秒%n", games, elapsedNanos / 1e9, getGamesPerSecond()));
+        for (int i = 0; i < wins.length; i++) {
+            sb.append(String.format("座位%d 胡牌率：%.4f，点炮率：%.4f%n", i, getWinRate(i), getDiscardRate(i)));
+        }
+        sb.append(String.format("自摸：%d，流局：%d，异常：%d%n", selfWins, exhausted, errors));
+        sb.append(String.format("平均操作数：%.2f，平均摸牌数：%.2f", getAverageActions(), getAverageDraws()));
+        if (firstError != null) {
+            sb.append(String.format("%n首个异常：%s", firstError));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.engine.rule.ChangShaRule;
+import com.leavey.mahjong.engine.rule.Rule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 无界面的批量模拟对局
+ * <p>
+ * 每局的随机种子只由种子和对局序号决定，与线程数无关，相同的种子可以得到相同的结果
+ * <p>
+ * 使用相同的种子对比两组策略时，每局发到的牌完全一致，可以降低对比结果的方差
+ *
+ * @author Leavey
+ */
+public class Simulator {
+    /**
+     * 工作线程每次领取的对局数
+     */
+    private static final int BATCH = 64;
+
+    private final Rule rule;
+    private final SeatPolicy[] policies;
+    private final int threads;
+
+    /**
+     * @param rule     规则
+     * @param policies 每个座位的策略，数量与参与人数一致
+     * @param threads  线程数
+     */
+    public Simulator(Rule rule, SeatPolicy[] policies, int threads) {
+        if (policies.length != rule.playerAmount()) {
+            throw new IllegalArgumentException("策略数量与参与人数不一致");
+        }
+        this.rule = rule;
+        this.policies = policies.clone();
+        this.threads = threads;
+    }
+
+    /**
+     * 进行若干局模拟
+     *
+     * @param games 对局数
+     * @param seed  随机种子
+     * @return 汇总结果
+     */
+    public SimulationReport run(int games, long seed) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger cursor = new AtomicInteger();
+            long start = System.nanoTime();
+            List<Future<SimulationReport>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> work(cursor, games, seed)));
+            }
+            SimulationReport report = new SimulationReport(rule.playerAmount());
+            for (Future<SimulationReport> future : futures) {
+                report.merge(future.get());
+            }
+            report.setElapsedNanos(System.nanoTime() - start);
+            return report;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("模拟异常", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private SimulationReport work(AtomicInteger cursor, int games, long seed) {
+        SimulationReport report = new SimulationReport(rule.playerAmount());
+        int from;
+        while ((from = cursor.getAndAdd(BATCH)) < games) {
+            int to = Math.min(from + BATCH, games);
+            for (int index = from; index < to; index++) {
+                simulate(index, seed, report);
+            }
+        }
+        return report;
+    }
+
+    private void simulate(int index, long seed, SimulationReport report) {
+        Simulation simulation = new Simulation(index, rule, policies, seed ^ (index * 0x9E3779B97F4A7C15L));
+        try {
+            //轮流坐庄
+            simulation.run(index % rule.playerAmount());
+            report.record(simulation);
+        } catch (RuntimeException e) {
+            report.recordError(e);
+        }
+    }
+
+    /**
+     * 参数依次为：对局数、线程数、随机种子
+     * <p>
+     * 座位0使用贪心策略，其他座位随机打牌，模拟时所有手牌都已知，每次胡牌都按严格模式校验
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        SeatPolicy greedy = new GreedyPolicy();
+        SeatPolicy random = new RandomPolicy();
+        Simulator simulator = new Simulator(new ChangShaRule(true), new SeatPolicy[]{greedy, random, random, random}, threads);
+        System.out.println("随机种子：" + seed);
+        System.out.println(simulator.run(games, seed));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.leavey.mahjong.engine.simulator;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.engine.rule.WinTable;
+
+/**
+ * 判断手牌是否已经胡牌
+ * <p>
+ * 胡牌为若干句话加一对将，将牌是否合法由规则决定，通过规则模板中的胡牌表查表判断
+ *
+ * @author Leavey
+ */
+public class WinChecker {
+
+    /**
+     * 手牌加上一张牌后是否胡牌
+     *
+     * @param view  座位视图
+     * @param tile  加上的牌
+     * @param table 胡牌表
+     * @return 胡牌返回 true
+     */
+    public static boolean isWin(SeatView view, Tile tile, WinTable table) {
+        int[] counts = view.getCounts();
+        counts[tile.getCode()]++;
+        try {
+            return isComplete(counts, view.getSize() + 1, table);
+        } finally {
+            counts[tile.getCode()]--;
+        }
+    }
+
+    /**
+     * 手牌是否胡牌
+     *
+     * @param counts 手牌，下标为牌的编码
+     * @param size   手牌数量
+     * @param table  胡牌表
+     * @return 胡牌返回 true
+     */
+    public static boolean isComplete(int[] counts, int size, WinTable table) {
+        return size % 3 == 2 && table.isComplete(counts);
+    }
+}
@@ -20,15 +20,18 @@ import com.leavey.mahjong.common.bean.Tile;
 import com.leavey.mahjong.engine.bean.*;
 import com.leavey.mahjong.engine.factory.GameFactory;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
+ * 手工记录的文本命令，例如 {@code md 11}、{@code 2cdl 23 45}、{@code cd l 45}
+ * <p>
+ * 开头的数字为玩家，省略时为当前焦点的下一家；命令后面是涉及到的牌，吃、碰时省略要吃碰的牌表示上一手打出的牌
+ *
  * @author Leavey
  */
 public class Command {
-    private Integer player;
+    private final Integer player;
     private final String action;
     private final List<Tile> tiles;
 
@@ -38,69 +41,95 @@ public class Command {
         this.tiles = tiles;
     }
 
+    /**
+     * 通过 {@link GameFactory} 执行命令，每一步都会保存快照
+     *
+     * @param gameId 牌局id
+     * @return 执行后的牌局
+     */
     public Game execute(long gameId) {
         Game game = GameFactory.get(gameId);
-        if (player == null) {
-            if (game.getFocus() == null) {
-                throw new RuntimeException("当前无焦点，请指定玩家");
-            }
-            player = game.getFocus() + 1;
-            if (player >= game.getPlayerAmount()) {
-                player = 0;
-            }
+        for (ActionRequest request : toRequests(game)) {
+            game = GameFactory.play(gameId, request);
+        }
+        return game;
+    }
+
+    /**
+     * 直接在牌局上执行命令，不保存快照
+     *
+     * @param game 牌局
+     */
+    public void execute(Game game) {
+        for (ActionRequest request : toRequests(game)) {
+            game.play(request);
         }
+    }
+
+    /**
+     * 把命令转换为操作请求
+     *
+     * @param game 当前牌局，用于确定玩家以及上一手打出的牌
+     * @return 按顺序执行的操作请求
+     */
+    public List<ActionRequest> toRequests(Game game) {
+        int player = resolvePlayer(game);
         if ("md".equals(action)) {
             //摸打
-            ActionRequest draw = new ActionRequest(player, Action.DRAW);
-            GameFactory.play(game.getId(), draw);
-            return GameFactory.play(game.getId(), new ActionRequest(player, Action.PLAY, List.of(tiles.get(0))));
+            return List.of(new ActionRequest(player, Action.DRAW), new ActionRequest(player, Action.PLAY, List.of(tile(0))));
         } else if (action.startsWith("cd")) {
             //吃打
-            Tile eatTile;
-            Tile playTile;
-            if (tiles.size() == 1) {
-                //上一手打出的牌
-                eatTile = game.getPrevOperation().getKeyTiles().get(0);
-                playTile = tiles.get(0);
-            } else {
-                eatTile = tiles.get(0);
-                playTile = tiles.get(1);
-            }
-            ActionRequest eatAction = new ActionRequest(player, Action.EAT, List.of(eatTile));
-            eatAction.setEatPosition(parseEatPosition(action.charAt(2)));
-            GameFactory.play(game.getId(), eatAction);
-            return GameFactory.play(game.getId(), new ActionRequest(player, Action.PLAY, List.of(playTile)));
-        } else if (action.equals("pd")) {
+            ActionRequest eatAction = new ActionRequest(player, Action.EAT, List.of(tiles.size() == 1 ? prevTile(game) : tile(0)));
+            eatAction.setEatPosition(parseEatPosition(action, 2));
+            return List.of(eatAction, new ActionRequest(player, Action.PLAY, List.of(tile(tiles.size() - 1))));
+        } else if ("pd".equals(action)) {
             //碰打
-            Tile penTile;
-            Tile playTile;
-            if (tiles.size() == 1) {
-                //上一手打出的牌
-                penTile = game.getPrevOperation().getKeyTiles().get(0);
-                playTile = tiles.get(0);
-            } else {
-                penTile = tiles.get(0);
-                playTile = tiles.get(1);
-            }
-            GameFactory.play(game.getId(), new ActionRequest(player, Action.PEN, List.of(penTile)));
-            return GameFactory.play(game.getId(), new ActionRequest(player, Action.PLAY, List.of(playTile)));
+            Tile penTile = tiles.size() == 1 ? prevTile(game) : tile(0);
+            return List.of(new ActionRequest(player, Action.PEN, List.of(penTile)), new ActionRequest(player, Action.PLAY, List.of(tile(tiles.size() - 1))));
         } else if ("m".equals(action)) {
             //摸
-            return GameFactory.play(game.getId(), new ActionRequest(player, Action.DRAW));
-        } else if ("c".startsWith(action)) {
+            return List.of(new ActionRequest(player, Action.DRAW));
+        } else if (action.startsWith("c")) {
             //吃
-            ActionRequest eatAction = new ActionRequest(player, Action.EAT, List.of(tiles.get(0)));
-            eatAction.setEatPosition(parseEatPosition(action.charAt(1)));
-            return GameFactory.play(game.getId(), eatAction);
+            ActionRequest eatAction = new ActionRequest(player, Action.EAT, List.of(tiles.isEmpty() ? prevTile(game) : tile(0)));
+            eatAction.setEatPosition(parseEatPosition(action, 1));
+            return List.of(eatAction);
         } else if ("p".equals(action)) {
             //碰
-            return GameFactory.play(game.getId(), new ActionRequest(player, Action.PEN, List.of(tiles.get(0))));
+            return List.of(new ActionRequest(player, Action.PEN, List.of(tiles.isEmpty() ? prevTile(game) : tile(0))));
         } else {
             throw new RuntimeException("不支持的命令：" + action);
         }
     }
 
-    private EatPosition parseEatPosition(char c) {
+    private int resolvePlayer(Game game) {
+        if (player != null) {
+            return player;
+        }
+        if (game.getFocus() == null) {
+            throw new RuntimeException("当前无焦点，请指定玩家");
+        }
+        int next = game.getFocus() + 1;
+        return next >= game.getPlayerAmount() ? 0 : next;
+    }
+
+    private Tile tile(int index) {
+        if (index < 0 || index >= tiles.size()) {
+            throw new RuntimeException("命令缺少牌：" + action);
+        }
+        return tiles.get(index);
+    }
+
+    private Tile prevTile(Game game) {
+        Operation prev = game.getPrevOperation();
+        if (prev == null || prev.getKeyTiles() == null || prev.getKeyTiles().isEmpty()) {
+            throw new RuntimeException("找不到上一手打出的牌");
+        }
+        return prev.getKeyTiles().get(0);
+    }
+
+    private static EatPosition parseEatPosition(String action, int index) {
+        char c = index < action.length() ? action.charAt(index) : ' ';
         if (c == 'l') {
             return EatPosition.LEFT;
         } else if (c == 'm') {
@@ -111,17 +140,78 @@ public class Command {
         throw new RuntimeException("未知的吃牌位置");
     }
 
+    public Integer getPlayer() {
+        return player;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public List<Tile> getTiles() {
+        return tiles;
+    }
+
+    /**
+     * 解析一条命令
+     *
+     * @param command 命令文本
+     * @return 命令
+     */
     public static Command parse(String command) {
-        System.out.println("命令：" + command);
+        return parse(command, 0, command.length());
+    }
+
+    /**
+     * 解析一条命令，逐字符扫描，不创建中间字符串数组
+     *
+     * @param text  文本
+     * @param start 命令开始的位置
+     * @param end   命令结束的位置（不包含）
+     * @return 命令
+     */
+    public static Command parse(CharSequence text, int start, int end) {
+        int i = skipSpace(text, start, end);
         Integer player = null;
-        try {
-            player = Integer.parseInt(command.substring(0, 1));
-            command = command.substring(1);
-        } catch (NumberFormatException ignored) {
+        if (i < end && Character.isDigit(text.charAt(i))) {
+            player = text.charAt(i) - '0';
+            i++;
+        }
+        int actionEnd = i;
+        while (actionEnd < end && !Character.isWhitespace(text.charAt(actionEnd))) {
+            actionEnd++;
+        }
+        if (actionEnd == i) {
+            throw new RuntimeException("命令为空");
+        }
+        String action = text.subSequence(i, actionEnd).toString();
+        i = skipSpace(text, actionEnd, end);
+        if (("c".equals(action) || "cd".equals(action)) && i < end && !Character.isDigit(text.charAt(i))) {
+            //吃牌位置与命令之间有空格，例如 cd l 23 45
+            action = action + text.charAt(i);
+            i = skipSpace(text, i + 1, end);
+        }
+        List<Tile> tiles = new ArrayList<>(2);
+        while (i < end) {
+            if (i + 1 >= end || !Character.isDigit(text.charAt(i)) || !Character.isDigit(text.charAt(i + 1))
+                    || (i + 2 < end && !Character.isWhitespace(text.charAt(i + 2)))) {
+                throw new RuntimeException("无法解析的牌：" + text.subSequence(i, end));
+            }
+            int code = (text.charAt(i) - '0') * 10 + (text.charAt(i + 1) - '0');
+            Tile tile = code < Matrix.CODE_BOUND ? Matrix.of(code) : null;
+            if (tile == null) {
+                throw new RuntimeException("不存在的牌：" + code);
+            }
+            tiles.add(tile);
+            i = skipSpace(text, i + 2, end);
         }
-        List<String> list = Arrays.stream(command.split(" ")).collect(Collectors.toList());
-        String action = list.remove(0);
-        List<Tile> tiles = list.stream().map(Matrix::parse).collect(Collectors.toList());
         return new Command(player, action, tiles);
     }
-}
\ No newline at end of file
+
+    private static int skipSpace(CharSequence text, int i, int end) {
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -24,6 +24,11 @@ import com.leavey.mahjong.common.bean.Type;
  */
 public class Matrix {
 
+    /**
+     * 牌编码的上界，可直接作为按编码计数的数组长度
+     */
+    public static final int CODE_BOUND = (Type.values().length + 1) * 10;
+
     private static final Tile[][] matrix = new Tile[Type.values().length + 1][10];
 
     static {
@@ -42,4 +47,14 @@ public class Matrix {
     public static Tile parse(int type, int value) {
         return matrix[type][value];
     }
+
+    /**
+     * 根据牌的编码获取牌
+     *
+     * @param code 牌的编码
+     * @return 牌
+     */
+    public static Tile of(int code) {
+        return matrix[code / 10][code % 10];
+    }
 }
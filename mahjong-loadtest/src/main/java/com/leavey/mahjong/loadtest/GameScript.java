@@ -0,0 +1,240 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.loadtest;
+
+import com.leavey.mahjong.common.bean.Tile;
+import com.leavey.mahjong.common.bean.Type;
+import com.leavey.mahjong.engine.bean.Action;
+import com.leavey.mahjong.engine.bean.EatPosition;
+import com.leavey.mahjong.engine.bean.Operation;
+import com.leavey.mahjong.engine.rule.Rule;
+import com.leavey.mahjong.engine.rule.RuleRegistry;
+import com.leavey.mahjong.engine.simulator.GreedyPolicy;
+import com.leavey.mahjong.engine.simulator.SeatPolicy;
+import com.leavey.mahjong.engine.simulator.Simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一局牌的请求脚本
+ * <p>
+ * 由引擎按随机种子模拟一局完整的对局，再把对局的操作翻译成前端发给 {@code PUT /games} 的请求体。
+ * 翻译方式与前端一致：摸牌、碰牌、吃牌后的打牌合并在同一个请求中，开杠时服务端自动摸杠牌，杠后打牌随开杠一起提交。
+ * 相同的规则和种子总是得到相同的脚本
+ *
+ * @author Leavey
+ */
+public final class GameScript {
+    private static final String EMPTY_SELECTORS = selectors(Collections.emptyList());
+
+    private final String rule;
+    private final long seed;
+    /**
+     * 请求体中牌局id之后的部分，发送时拼接牌局id
+     */
+    private final List<String> steps;
+    private final List<Action> actions;
+
+    private GameScript(String rule, long seed, List<String> steps, List<Action> actions) {
+        this.rule = rule;
+        this.seed = seed;
+        this.steps = steps;
+        this.actions = actions;
+    }
+
+    /**
+     * 模拟一局牌并生成脚本，所有座位使用贪心策略，吃碰杠胡都会出现
+     *
+     * @param ruleId 规则名称
+     * @param seed   随机种子
+     * @return 脚本
+     */
+    public static GameScript generate(String ruleId, long seed) {
+        Rule rule = RuleRegistry.get(ruleId);
+        SeatPolicy[] policies = new SeatPolicy[rule.playerAmount()];
+        Arrays.fill(policies, new GreedyPolicy());
+        Simulation simulation = new Simulation(seed, rule, policies, seed);
+        simulation.run((int) Math.floorMod(seed, (long) rule.playerAmount()));
+        List<Operation> operations = simulation.getGame().getOperations();
+        List<String> steps = new ArrayList<>();
+        List<Action> actions = new ArrayList<>();
+        int i = 0;
+        while (i < operations.size()) {
+            Operation operation = operations.get(i++);
+            Action action = operation.getAction();
+            String selectors = EMPTY_SELECTORS;
+            String drawSelectors = EMPTY_SELECTORS;
+            String playSelectors = EMPTY_SELECTORS;
+            String eatGroups = "null";
+            switch (action) {
+                case DRAW:
+                    drawSelectors = selectors(operation.getDrawTile() == null ? Collections.emptyList() : List.of(operation.getDrawTile()));
+                    break;
+                case GANG_PLAY:
+                    //杠后打牌没有随开杠提交时单独提交，服务端根据上一次操作识别
+                    action = Action.PLAY;
+                    playSelectors = selectors(operation.getKeyTiles());
+                    break;
+                case PLAY:
+                    playSelectors = selectors(operation.getKeyTiles());
+                    break;
+                case PEN:
+                case WIN:
+                    selectors = selectors(operation.getKeyTiles().subList(0, 1));
+                    break;
+                case GANG:
+                    selectors = selectors(operation.getKeyTiles().subList(0, 1));
+                    //服务端开杠后自动摸杠牌
+                    if (i < operations.size() && operations.get(i).getAction() == Action.GANG_DRAW) {
+                        i++;
+                    }
+                    break;
+                case EAT:
+                    eatGroups = eatGroups(operation.getKeyTiles().get(0), operation.getEatPosition());
+                    break;
+                default:
+                    //其他操作前端不会发起
+                    continue;
+            }
+            if (i < operations.size() && mergesPlay(operation, operations.get(i))) {
+                playSelectors = selectors(operations.get(i++).getKeyTiles());
+            }
+            steps.add(",\"player\":" + operation.getPlayer()
+                    + ",\"action\":\"" + action.name()
+                    + "\",\"eatGroups\":" + eatGroups
+                    + ",\"selectors\":" + selectors
+                    + ",\"drawSelectors\":" + drawSelectors
+                    + ",\"playSelectors\":" + playSelectors + "}");
+            actions.add(action);
+        }
+        return new GameScript(ruleId, seed, Collections.unmodifiableList(steps), Collections.unmodifiableList(actions));
+    }
+
+    /**
+     * 前端在摸牌、吃碰后直接选择要打的牌，开杠后直接选择杠后要打的牌
+     */
+    private static boolean mergesPlay(Operation operation, Operation next) {
+        if (next.getPlayer() != operation.getPlayer()) {
+            return false;
+        }
+        switch (operation.getAction()) {
+            case DRAW:
+            case PEN:
+            case EAT:
+                return next.getAction() == Action.PLAY;
+            case GANG:
+                //杠后摸的牌补进手牌的规则中，杠后与摸牌后一样打牌
+                return next.getAction() == Action.GANG_PLAY || next.getAction() == Action.PLAY;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 吃牌的组合，服务端按组合中第二张牌与前后两张牌的大小关系判断吃牌的位置
+     */
+    private static String eatGroups(Tile tile, EatPosition position) {
+        int code = tile.getCode();
+        int[] codes;
+        if (position == EatPosition.LEFT) {
+            codes = new int[]{code + 1, code, code + 2};
+        } else if (position == EatPosition.RIGHT) {
+            codes = new int[]{code - 2, code, code - 1};
+        } else {
+            codes = new int[]{code - 1, code, code + 1};
+        }
+        StringBuilder builder = new StringBuilder("{\"selected\":0,\"groups\":[{\"tiles\":[");
+        for (int k = 0; k < codes.length; k++) {
+            if (k > 0) {
+                builder.append(',');
+            }
+            tile(builder, codes[k], 1);
+        }
+        return builder.append("]}]}").toString();
+    }
+
+    /**
+     * 选择区，按花色分组，同一张牌选择多次时数量累加
+     */
+    private static String selectors(List<Tile> tiles) {
+        StringBuilder builder = new StringBuilder("{");
+        String[] names = {"character", "dot", "bamboo", "wind", "dragon"};
+        Type[] types = {Type.CHARACTER, Type.DOT, Type.BAMBOO, Type.WIND, Type.DRAGON};
+        for (int t = 0; t < types.length; t++) {
+            if (t > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(names[t]).append("\":[");
+            int[] amounts = new int[types[t].getMaxValue() + 1];
+            for (Tile tile : tiles) {
+                if (tile.getType() == types[t]) {
+                    amounts[tile.getValue()]++;
+                }
+            }
+            boolean first = true;
+            for (int value = 1; value < amounts.length; value++) {
+                if (amounts[value] == 0) {
+                    continue;
+                }
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                tile(builder, types[t].getBase() + value, amounts[value]);
+            }
+            builder.append(']');
+        }
+        return builder.append('}').toString();
+    }
+
+    private static void tile(StringBuilder builder, int code, int amount) {
+        builder.append("{\"code\":").append(code).append(",\"behavior\":\"incr-amount\",\"amount\":").append(amount).append('}');
+    }
+
+    /**
+     * @param gameId 牌局id
+     * @param index  第几步
+     * @return 请求体
+     */
+    public String body(long gameId, int index) {
+        return "{\"gameId\":" + gameId + steps.get(index);
+    }
+
+    /**
+     * @param index 第几步
+     * @return 该步的操作
+     */
+    public Action action(int index) {
+        return actions.get(index);
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
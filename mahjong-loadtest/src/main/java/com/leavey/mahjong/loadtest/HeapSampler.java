@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 通过被测实例的 actuator 采样堆内存
+ * <p>
+ * 堆内存随垃圾回收上下波动，每个采样窗口只保留最小值，窗口最小值随操作数的增长才反映真实的内存增长。
+ * 结束时对窗口最小值按操作数做最小二乘拟合，得到每百万次操作的堆增长
+ *
+ * @author Leavey
+ */
+public class HeapSampler {
+    private static final Pattern VALUE = Pattern.compile("\"value\"\\s*:\\s*([-0-9.Ee+]+)");
+
+    private final HttpClient client;
+    private final String url;
+    private final List<long[]> windows = new ArrayList<>();
+    private long windowMin = Long.MAX_VALUE;
+
+    public HeapSampler(HttpClient client, String url) {
+        this.client = client;
+        this.url = url;
+    }
+
+    /**
+     * 采样一次，计入当前窗口
+     */
+    public void sample() {
+        long heap = (long) metric("jvm.memory.used?tag=area:heap");
+        if (heap >= 0) {
+            windowMin = Math.min(windowMin, heap);
+        }
+    }
+
+    /**
+     * 结束当前窗口
+     *
+     * @param actions 到目前为止的操作数
+     * @return 窗口内堆内存的最小值，字节，没有采样成功时为 -1
+     */
+    public long closeWindow(long actions) {
+        if (windowMin == Long.MAX_VALUE) {
+            return -1;
+        }
+        long min = windowMin;
+        windows.add(new long[]{actions, min});
+        windowMin = Long.MAX_VALUE;
+        return min;
+    }
+
+    /**
+     * @param name 指标名称及标签
+     * @return 指标的值，获取失败时为 -1
+     */
+    public double metric(String name) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/actuator/metrics/" + name))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return -1;
+            }
+            Matcher matcher = VALUE.matcher(response.body());
+            return matcher.find() ? Double.parseDouble(matcher.group(1)) : -1;
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * @return 每百万次操作的堆增长，字节，窗口少于两个时为 0
+     */
+    public double growthPerMillion() {
+        int n = windows.size();
+        if (n < 2) {
+            return 0;
+        }
+        double meanX = 0;
+        double meanY = 0;
+        for (long[] window : windows) {
+            meanX += window[0];
+            meanY += window[1];
+        }
+        meanX /= n;
+        meanY /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (long[] window : windows) {
+            covariance += (window[0] - meanX) * (window[1] - meanY);
+            variance += (window[0] - meanX) * (window[0] - meanX);
+        }
+        return variance == 0 ? 0 : covariance / variance * 1_000_000;
+    }
+
+    /**
+     * @return 第一个和最后一个窗口的最小堆内存，字节，没有窗口时为空数组
+     */
+    public long[] range() {
+        if (windows.isEmpty()) {
+            return new long[0];
+        }
+        return new long[]{windows.get(0)[1], windows.get(windows.size() - 1)[1]};
+    }
+}
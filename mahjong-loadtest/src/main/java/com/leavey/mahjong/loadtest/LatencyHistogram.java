@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图，单位微秒
+ * <p>
+ * 小于 1024 微秒的值逐个计数，更大的值按二进制数量级分段，每段再均分为 512 个桶，相对误差不超过 0.2%。
+ * 桶的数量固定，记录时不分配内存，可以被多个线程同时记录
+ *
+ * @author Leavey
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 1024;
+    private static final int SUB_BITS = 9;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param nanos 延迟，纳秒
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(micros));
+        total.increment();
+        sum.add(micros);
+    }
+
+    private static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        int sub = (int) (micros >>> shift) - SUB_BUCKETS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return 桶的上界
+     */
+    private static long upper(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * @param quantile 分位，0 到 1 之间
+     * @return 该分位的延迟，微秒，没有记录时为 0
+     */
+    public long percentile(double quantile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upper(i);
+            }
+        }
+        return max();
+    }
+
+    /**
+     * @return 最大延迟，微秒
+     */
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return upper(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return 平均延迟，微秒
+     */
+    public long mean() {
+        long count = total.sum();
+        return count == 0 ? 0 : sum.sum() / count;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.loadtest;
+
+import lombok.Data;
+
+/**
+ * 压测参数，命令行以 {@code --名称=值} 的形式指定
+ *
+ * @author Leavey
+ */
+@Data
+public class LoadOptions {
+    /**
+     * 被测实例的地址
+     */
+    private String url = "http://localhost:8080";
+    /**
+     * 规则名称
+     */
+    private String rule = "changsha";
+    /**
+     * 同时进行的牌局数，每局牌由一个线程依次发送请求
+     */
+    private int tables = 32;
+    /**
+     * 目标速率，每秒请求数，0 表示不限速，每局牌收到响应后立即发送下一个请求
+     */
+    private int rate = 0;
+    /**
+     * 预热时长，秒，预热期间的请求不计入结果
+     */
+    private int warmup = 10;
+    /**
+     * 测量时长，秒，指定了 {@link #actions} 时以请求数为准
+     */
+    private int duration = 60;
+    /**
+     * 测量的请求数，0 表示按时长结束
+     */
+    private long actions = 0;
+    /**
+     * 预先生成的对局脚本数量，各牌局依次循环使用
+     */
+    private int scripts = 256;
+    /**
+     * 生成脚本的随机种子，相同的种子在每次运行中得到相同的对局
+     */
+    private long seed = 1;
+    /**
+     * 浸泡模式：长时间运行，并定期采样被测实例的堆内存
+     */
+    private boolean soak;
+    /**
+     * 进度报告与堆内存采样的间隔，秒
+     */
+    private int interval = 10;
+
+    /**
+     * @param args 命令行参数
+     * @return 参数
+     */
+    public static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("参数格式错误：" + arg);
+            }
+            int split = arg.indexOf('=');
+            String name = split < 0 ? arg.substring(2) : arg.substring(2, split);
+            String value = split < 0 ? "true" : arg.substring(split + 1);
+            switch (name) {
+                case "url":
+                    options.url = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                    break;
+                case "rule":
+                    options.rule = value;
+                    break;
+                case "tables":
+                    options.tables = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    options.rate = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    options.warmup = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    options.duration = Integer.parseInt(value);
+                    break;
+                case "actions":
+                    options.actions = Long.parseLong(value);
+                    break;
+                case "scripts":
+                    options.scripts = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                case "soak":
+                    options.soak = Boolean.parseBoolean(value);
+                    break;
+                case "interval":
+                    options.interval = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的参数：" + name);
+            }
+        }
+        if (options.soak && options.actions == 0) {
+            //浸泡模式默认运行五百万次操作
+            options.actions = 5_000_000;
+        }
+        if (options.tables <= 0 || options.scripts <= 0 || options.interval <= 0 || options.rate < 0) {
+            throw new IllegalArgumentException("牌局数、脚本数、采样间隔必须大于0，速率不能小于0");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.leavey.mahjong.loadtest;
+
+import com.leavey.mahjong.engine.bean.Action;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * api-vue 的压测与浸泡测试
+ * <p>
+ * 预先按固定的种子模拟出一批对局脚本，每局牌由一个线程按脚本依次调用 {@code POST /games} 与 {@code PUT /games}，
+ * 脚本用完后换下一个脚本开新局。指定速率时按固定间隔发放请求时间片，延迟从计划发送的时刻算起，
+ * 被测实例变慢时排队的时间同样计入延迟，不会因为少发请求而低估尾部延迟。
+ * <p>
+ * 被限流拒绝（429、503）的请求与失败的请求分开统计，请求失败后放弃该局，换下一个脚本。
+ * 参数见 {@link LoadOptions}，相同的参数与种子在每次运行中发送完全相同的请求序列
+ *
+ * @author Leavey
+ */
+public class LoadTest {
+    private static final Pattern GAME_ID = Pattern.compile("\"gameId\"\\s*:\\s*(\\d+)");
+    private static final String JSON = "application/json";
+
+    private final LoadOptions options;
+    private final HttpClient client;
+    private final List<GameScript> scripts;
+    private final LatencyHistogram creates = new LatencyHistogram();
+    private final LatencyHistogram moves = new LatencyHistogram();
+    private final Map<Action, LatencyHistogram> actions = new EnumMap<>(Action.class);
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final AtomicLong measured = new AtomicLong();
+    private final AtomicReference<String> firstError = new AtomicReference<>();
+    private final AtomicLong nextSlot = new AtomicLong();
+    private volatile boolean stopped;
+    private long measureStart;
+    private long slotNanos;
+
+    public LoadTest(LoadOptions options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.scripts = scripts(options);
+        for (Action action : Action.values()) {
+            actions.put(action, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * 生成对局脚本，模拟异常的种子跳过，跳过的种子同样是确定的
+     */
+    private static List<GameScript> scripts(LoadOptions options) {
+        List<GameScript> scripts = new ArrayList<>(options.getScripts());
+        long seed = options.getSeed();
+        while (scripts.size() < options.getScripts()) {
+            try {
+                scripts.add(GameScript.generate(options.getRule(), seed));
+            } catch (RuntimeException e) {
+                //模拟中出现的异常只影响这一个种子
+            }
+            seed++;
+        }
+        return scripts;
+    }
+
+    /**
+     * 运行压测并打印结果
+     *
+     * @throws InterruptedException 被中断
+     */
+    public void run() throws InterruptedException {
+        int steps = scripts.stream().mapToInt(GameScript::size).sum();
+        System.out.printf("目标：%s，规则：%s，牌局：%d，速率：%s，脚本：%d（平均每局 %.1f 个请求），种子：%d%n",
+                options.getUrl(), options.getRule(), options.getTables(),
+                options.getRate() == 0 ? "不限" : options.getRate() + "/s",
+                scripts.size(), (double) steps / scripts.size(), options.getSeed());
+        HeapSampler heap = options.isSoak() ? new HeapSampler(client, options.getUrl()) : null;
+        long start = System.nanoTime();
+        measureStart = start + TimeUnit.SECONDS.toNanos(options.getWarmup());
+        long end = options.getActions() > 0 ? Long.MAX_VALUE : measureStart + TimeUnit.SECONDS.toNanos(options.getDuration());
+        slotNanos = options.getRate() == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        nextSlot.set(start);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.getTables(); i++) {
+            int table = i;
+            Thread thread = new Thread(() -> table(table), "mahjong-load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        long lastReport = start;
+        long lastMeasured = 0;
+        int seconds = 0;
+        while (!stopped) {
+            Thread.sleep(1000);
+            long now = System.nanoTime();
+            if (now >= end) {
+                stopped = true;
+            }
+            if (heap != null) {
+                heap.sample();
+            }
+            if (++seconds % options.getInterval() == 0 || stopped) {
+                long count = measured.get();
+                double rate = (count - lastMeasured) * 1e9 / (now - lastReport);
+                StringBuilder line = new StringBuilder(String.format("[%5ds] 请求：%d，%.0f/s，p99：%s，拒绝：%d，失败：%d",
+                        seconds, count, rate, millis(moves.percentile(0.99)), rejected.sum(), errors.sum()));
+                if (heap != null) {
+                    long min = heap.closeWindow(count);
+                    line.append(String.format("，堆最小值：%s，牌局：%.0f，历史：%s",
+                            megabytes(min), heap.metric("mahjong.games.live"), megabytes((long) heap.metric("mahjong.history.bytes"))));
+                }
+                System.out.println(line);
+                lastReport = now;
+                lastMeasured = count;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        report(System.nanoTime() - Math.min(measureStart, System.nanoTime()), heap);
+    }
+
+    private void table(int table) {
+        int index = table;
+        while (!stopped) {
+            GameScript script = scripts.get(index % scripts.size());
+            index += options.getTables();
+            String created = send(HttpRequest.newBuilder(URI.create(options.getUrl() + "/games?rule=" + script.getRule()))
+                    .POST(HttpRequest.BodyPublishers.noBody()), creates, null);
+            if (created == null) {
+                continue;
+            }
+            Matcher matcher = GAME_ID.matcher(created);
+            if (!matcher.find()) {
+                recordError("创建牌局的响应中没有牌局id：" + created);
+                continue;
+            }
+            long gameId = Long.parseLong(matcher.group(1));
+            games.increment();
+            for (int i = 0; i < script.size() && !stopped; i++) {
+                String body = script.body(gameId, i);
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(options.getUrl() + "/games"))
+                        .header("Content-Type", JSON)
+                        .PUT(HttpRequest.BodyPublishers.ofString(body));
+                if (send(request, moves, actions.get(script.action(i))) == null) {
+                    //牌局状态已经与脚本不一致，换下一局
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 等到分配的时间片后发送请求，并记录从计划发送时刻到收到响应的延迟
+     *
+     * @return 响应体，请求被拒绝或失败时为 null
+     */
+    private String send(HttpRequest.Builder builder, LatencyHistogram histogram, LatencyHistogram detail) {
+        long planned = acquireSlot();
+        HttpResponse<String> response;
+        try {
+            response = client.send(builder.header("Accept", JSON).timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            recordError(e.toString());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+            return null;
+        }
+        long latency = System.nanoTime() - planned;
+        boolean measuring = planned >= measureStart;
+        int status = response.statusCode();
+        if (status == 429 || status == 503) {
+            if (measuring) {
+                rejected.increment();
+            }
+            return null;
+        }
+        if (status / 100 != 2) {
+            if (measuring) {
+                recordError(status + " " + response.body());
+            }
+            return null;
+        }
+        if (measuring) {
+            histogram.record(latency);
+            if (detail != null) {
+                detail.record(latency);
+            }
+            if (histogram == moves && measured.incrementAndGet() >= options.getActions() && options.getActions() > 0) {
+                stopped = true;
+            }
+        }
+        return response.body();
+    }
+
+    /**
+     * @return 计划发送的时刻，不限速时为当前时刻
+     */
+    private long acquireSlot() {
+        if (slotNanos == 0) {
+            return System.nanoTime();
+        }
+        long slot = nextSlot.getAndAdd(slotNanos);
+        long wait;
+        while ((wait = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return slot;
+    }
+
+    private void recordError(String message) {
+        errors.increment();
+        firstError.compareAndSet(null, message);
+    }
+
+    private void report(long nanos, HeapSampler heap) {
+        double seconds = nanos / 1e9;
+        System.out.println();
+        System.out.printf("测量时长：%.1fs，开局：%d，操作：%d，吞吐：%.0f/s，拒绝：%d，失败：%d%n",
+                seconds, creates.count(), moves.count(), moves.count() / seconds, rejected.sum(), errors.sum());
+        if (options.getRate() > 0 && moves.count() / seconds < options.getRate() * 0.95) {
+            System.out.println("未达到目标速率，被测实例或牌局数不足，延迟中包含排队时间");
+        }
+        if (firstError.get() != null) {
+            System.out.println("首个错误：" + firstError.get());
+        }
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "请求", "次数", "平均", "p50", "p99", "p999", "最大");
+        line("POST", creates);
+        line("PUT", moves);
+        for (Map.Entry<Action, LatencyHistogram> entry : actions.entrySet()) {
+            if (entry.getValue().count() > 0) {
+                line("  " + entry.getKey().name(), entry.getValue());
+            }
+        }
+        if (heap != null) {
+            long[] range = heap.range();
+            if (range.length > 0) {
+                System.out.printf("堆最小值：%s -> %s，每百万次操作增长：%s%n",
+                        megabytes(range[0]), megabytes(range[1]), megabytes((long) heap.growthPerMillion()));
+            }
+        }
+        //单行汇总，便于多次运行之间比较
+        System.out.printf("RESULT rule=%s tables=%d rate=%d seed=%d throughput=%.0f p50=%d p99=%d p999=%d max=%d rejected=%d errors=%d%n",
+                options.getRule(), options.getTables(), options.getRate(), options.getSeed(), moves.count() / seconds,
+                moves.percentile(0.5), moves.percentile(0.99), moves.percentile(0.999), moves.max(), rejected.sum(), errors.sum());
+    }
+
+    private static void line(String name, LatencyHistogram histogram) {
+        System.out.printf("%-10s %10d %10s %10s %10s %10s %10s%n", name, histogram.count(), millis(histogram.mean()),
+                millis(histogram.percentile(0.5)), millis(histogram.percentile(0.99)),
+                millis(histogram.percentile(0.999)), millis(histogram.max()));
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2fms", micros / 1000.0);
+    }
+
+    private static String megabytes(long bytes) {
+        return bytes < 0 ? "-" : String.format("%.1fMB", bytes / 1024.0 / 1024.0);
+    }
+
+    /**
+     * 例如：{@code --url=http://localhost:8080 --tables=64 --rate=2000 --duration=60}，
+     * 浸泡测试：{@code --soak --actions=5000000 --interval=30}
+     */
+    public static void main(String[] args) throws InterruptedException {
+        new LoadTest(LoadOptions.parse(args)).run();
+    }
+}